@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Tests that weather art is loaded at the size of the surface it is for, that the memory cache
+    is bounded by what the art needs, and that loads are counted, and compares the time until
+    an image is ready when it has to be decoded with when the cache was warmed.
+ */
+public class TestArtCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestArtCache.class.getSimpleName();
+
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    private String mArtUrl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // A local copy of the clear sky art stands in for an art pack's, so no network is needed.
+        File file = new File(mContext.getCacheDir(), "test_art_clear.png");
+        Bitmap art = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            art.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+        }
+        mArtUrl = Uri.fromFile(file).toString();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearMemory();
+        new File(mContext.getCacheDir(), "test_art_clear.png").delete();
+        super.tearDown();
+    }
+
+    // Glide only clears its memory cache on the main thread.
+    private void clearMemory() throws InterruptedException {
+        final CountDownLatch cleared = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                Glide.get(mContext).clearMemory();
+                cleared.countDown();
+            }
+        });
+        assertTrue("Error: The memory cache wasn't cleared", cleared.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testSurfaceSizes() {
+        int listIcon = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        int todayIcon = mContext.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        assertEquals(listIcon, ArtCache.getWidth(mContext, ArtCache.SURFACE_LIST));
+        assertEquals(todayIcon, ArtCache.getHeight(mContext, ArtCache.SURFACE_TODAY));
+        assertEquals(listIcon, ArtCache.getWidth(mContext, ArtCache.SURFACE_WIDGET));
+        assertTrue(ArtCache.getWidth(mContext, ArtCache.SURFACE_NOTIFICATION) > 0);
+
+        Bitmap bitmap = ArtCache.getBitmap(mContext, ArtCache.SURFACE_WIDGET, mArtUrl);
+        assertNotNull("Error: The art wasn't loaded", bitmap);
+        assertTrue("Error: The art is larger than the widget's icon",
+                bitmap.getWidth() <= listIcon && bitmap.getHeight() <= listIcon);
+        assertTrue("Error: The art wasn't fitted to the widget's icon",
+                bitmap.getWidth() == listIcon || bitmap.getHeight() == listIcon);
+    }
+
+    public void testMemoryCacheBound() {
+        int budget = ArtCache.getMemoryBudget(mContext);
+        int listIcon = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        assertTrue("Error: The budget doesn't hold every kind in the list",
+                budget >= listIcon * listIcon * 4 * WeatherConditions.getArtKindCount());
+
+        int size = ArtGlideModule.getMemoryCacheSize(mContext);
+        assertTrue(size <= budget);
+        assertTrue(size <= new MemorySizeCalculator(mContext).getMemoryCacheSize());
+    }
+
+    public void testCountsLoads() throws InterruptedException {
+        ArtCache.Stats stats = ArtCache.getStats(ArtCache.SURFACE_NOTIFICATION);
+        long loads = stats.getLoads();
+        long memoryHits = stats.getMemoryHits();
+        long failures = stats.getFailures();
+
+        clearMemory();
+        assertNotNull(ArtCache.getBitmap(mContext, ArtCache.SURFACE_NOTIFICATION, mArtUrl));
+        assertNotNull(ArtCache.getBitmap(mContext, ArtCache.SURFACE_NOTIFICATION, mArtUrl));
+        assertNull(ArtCache.getBitmap(mContext, ArtCache.SURFACE_NOTIFICATION,
+                mArtUrl + ".missing"));
+
+        assertEquals(loads + 3, stats.getLoads());
+        assertEquals("Error: The second load wasn't from memory",
+                memoryHits + 1, stats.getMemoryHits());
+        assertEquals(failures + 1, stats.getFailures());
+        assertTrue(stats.getMaxMicros() >= stats.getAverageMicros());
+    }
+
+    public void testBenchmarkTimeToImage() throws InterruptedException {
+        // The first load decodes the source and writes the resized art to the disk cache.
+        assertNotNull(ArtCache.getBitmap(mContext, ArtCache.SURFACE_WIDGET, mArtUrl));
+
+        long cold = 0;
+        long warm = 0;
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            clearMemory();
+            long start = System.nanoTime();
+            assertNotNull(ArtCache.getBitmap(mContext, ArtCache.SURFACE_WIDGET, mArtUrl));
+            cold += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            assertNotNull(ArtCache.getBitmap(mContext, ArtCache.SURFACE_WIDGET, mArtUrl));
+            warm += System.nanoTime() - start;
+        }
+
+        Log.d(LOG_TAG, "Time to widget art: from disk=" + cold / BENCHMARK_ROUNDS / 1000
+                + "us warmed=" + warm / BENCHMARK_ROUNDS / 1000 + "us; "
+                + ArtCache.statsToString());
+    }
+}
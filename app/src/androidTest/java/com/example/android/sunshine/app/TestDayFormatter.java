@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/*
+    Tests that the memoized date labels read as they did when every call built its own
+    formatters, that they follow the locale and the time zone, and compares the cost of binding
+    a forecast list's dates before and after.
+ */
+public class TestDayFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayFormatter.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_BINDS = 5000;
+
+    private Locale mLocale;
+    private TimeZone mZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLocale = Locale.getDefault();
+        mZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mLocale);
+        TimeZone.setDefault(mZone);
+        WeatherContract.onTimeZoneChanged();
+        super.tearDown();
+    }
+
+    // What Utility.getFriendlyDayString did before: a Time and new formatters per call.
+    private String friendlyDayWithFormatters(long dateInMillis, boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today),
+                    new SimpleDateFormat("MMMM dd").format(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            if (julianDay == currentJulianDay) {
+                return mContext.getString(R.string.today);
+            } else if (julianDay == currentJulianDay + 1) {
+                return mContext.getString(R.string.tomorrow);
+            }
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        }
+        return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+    }
+
+    private long day(int offset) {
+        return WeatherContract.normalizeDate(System.currentTimeMillis()) + offset * DAY_IN_MILLIS
+                + DAY_IN_MILLIS / 2;
+    }
+
+    public void testMatchesFormatters() {
+        for (int i = -1; i < DAYS; i++) {
+            long date = WeatherContract.normalizeDate(day(i));
+            assertEquals("Error: Wrong label for day " + i, friendlyDayWithFormatters(date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals("Error: Wrong label for day " + i, friendlyDayWithFormatters(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals(new SimpleDateFormat("MMMM dd").format(date),
+                    Utility.getFormattedMonthDay(mContext, date));
+        }
+        // Memoized: the second time is the same string.
+        long date = WeatherContract.normalizeDate(day(10));
+        assertSame(Utility.getFriendlyDayString(mContext, date, false),
+                Utility.getFriendlyDayString(mContext, date, false));
+    }
+
+    public void testFollowsLocaleAndZone() {
+        long date = WeatherContract.normalizeDate(day(10));
+
+        Locale.setDefault(Locale.US);
+        String english = Utility.getFriendlyDayString(mContext, date, false);
+        Locale.setDefault(Locale.GERMANY);
+        String german = Utility.getFriendlyDayString(mContext, date, false);
+        assertEquals(new SimpleDateFormat("EEE MMM dd", Locale.GERMANY).format(date), german);
+        assertFalse("Error: The label didn't follow the locale", english.equals(german));
+
+        // Far enough round the world that the stored midnight falls on another day.
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone(
+                mZone.getRawOffset() >= 0 ? "Pacific/Honolulu" : "Pacific/Kiritimati"));
+        WeatherContract.onTimeZoneChanged();
+        String moved = Utility.getFormattedMonthDay(mContext, date);
+        assertEquals(new SimpleDateFormat("MMMM dd").format(date), moved);
+    }
+
+    public void testBenchmarkBind() {
+        long[] dates = new long[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            dates[i] = WeatherContract.normalizeDate(day(i));
+        }
+
+        long check = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            check += friendlyDayWithFormatters(dates[i % DAYS], i % DAYS == 0).length();
+        }
+        long before = System.nanoTime() - start;
+        int[] beforeAllocs = countAllocations(dates, false);
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            check -= Utility.getFriendlyDayString(mContext, dates[i % DAYS], i % DAYS == 0).length();
+        }
+        long after = System.nanoTime() - start;
+        int[] afterAllocs = countAllocations(dates, true);
+        assertEquals("Error: The labels differ", 0, check);
+
+        Log.d(LOG_TAG, "Date label per row bind: formatters per call=" + before / BENCHMARK_BINDS
+                + "ns (" + beforeAllocs[0] + " objects, " + beforeAllocs[1] + " bytes) memoized="
+                + after / BENCHMARK_BINDS + "ns (" + afterAllocs[0] + " objects, "
+                + afterAllocs[1] + " bytes)");
+    }
+
+    // Objects and bytes allocated on this thread per row.
+    @SuppressWarnings("deprecation")
+    private int[] countAllocations(long[] dates, boolean memoized) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            if (memoized) {
+                Utility.getFriendlyDayString(mContext, dates[i % DAYS], i % DAYS == 0);
+            } else {
+                friendlyDayWithFormatters(dates[i % DAYS], i % DAYS == 0);
+            }
+        }
+        Debug.stopAllocCounting();
+        return new int[]{Debug.getThreadAllocCount() / BENCHMARK_BINDS,
+                Debug.getThreadAllocSize() / BENCHMARK_BINDS};
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Tests the differences worked out between two forecasts, and compares how many rows the
+    forecast list binds, and how long it takes to lay them out, after a sync that changes one
+    day of fourteen when it is told just that and when it is told everything changed.
+ */
+public class TestForecastDiff extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastDiff.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int CHANGED_DAY = 5;
+    private static final int BENCHMARK_ROUNDS = 50;
+
+    // The columns of ForecastFragment's projection.
+    private static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // Days from today + first on, with the high of day warmerDay (if any) up by 5 degrees.
+    private Cursor forecast(int first, int count, int warmerDay) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        int today = WeatherContract.getTodayJulianDay();
+        for (int day = first; day < first + count; day++) {
+            cursor.addRow(new Object[]{
+                    day + 1,
+                    WeatherContract.getStartOfJulianDay(today + day),
+                    "Clouds",
+                    20.0 + day + (day == warmerDay ? 5 : 0),
+                    10.0 - day,
+                    "94043",
+                    800 + day % 5,
+                    37.4,
+                    -122.1});
+        }
+        return cursor;
+    }
+
+    private List<ForecastRow> rows(Cursor cursor) {
+        List<ForecastRow> rows = new ArrayList<>();
+        ForecastRow.addRows(mContext, cursor, true, rows);
+        cursor.close();
+        return rows;
+    }
+
+    // The loader's cursor over the pages, as a load today would deliver it.
+    private static ForecastPageLoader.PagedCursor paged(Cursor[] pages, List<ForecastRow> rows,
+                                                        ForecastDiff diff) {
+        return new ForecastPageLoader.PagedCursor(pages, rows, diff, 0, 0, false, false,
+                WeatherContract.getTodayJulianDay(), Locale.getDefault(),
+                WeatherContract.getTimeZone());
+    }
+
+    public void testUnchanged() {
+        ForecastDiff diff = ForecastDiff.compute(rows(forecast(0, DAYS, -1)),
+                rows(forecast(0, DAYS, -1)));
+        assertEquals("", diff.toString());
+        assertEquals(0, diff.getRowCount());
+    }
+
+    public void testOneDayChanged() {
+        ForecastDiff diff = ForecastDiff.compute(rows(forecast(0, DAYS, -1)),
+                rows(forecast(0, DAYS, CHANGED_DAY)));
+        assertEquals("~" + CHANGED_DAY + "x1", diff.toString());
+    }
+
+    public void testDayRolledOver() {
+        // Yesterday is gone from the top and a new last day is at the bottom.
+        ForecastDiff diff = ForecastDiff.compute(rows(forecast(-1, DAYS, -1)),
+                rows(forecast(0, DAYS, -1)));
+        assertEquals("-0x1 ~0x1 +" + (DAYS - 1) + "x1", diff.toString());
+    }
+
+    public void testGapsAndEnds() {
+        List<ForecastRow> all = rows(forecast(0, DAYS, -1));
+        List<ForecastRow> some = new ArrayList<>(all);
+        // Drop days 2, 3 and 9, and the last two.
+        some.remove(DAYS - 1);
+        some.remove(DAYS - 2);
+        some.remove(9);
+        some.remove(3);
+        some.remove(2);
+        assertEquals("-2x2 -7x1 -9x2", ForecastDiff.compute(all, some).toString());
+        assertEquals("+2x2 +9x1 +12x2", ForecastDiff.compute(some, all).toString());
+        assertEquals("+0x" + DAYS,
+                ForecastDiff.compute(new ArrayList<ForecastRow>(), all).toString());
+    }
+
+    public void testPageAppended() {
+        List<ForecastRow> firstPage = rows(forecast(0, DAYS, -1));
+        List<ForecastRow> twoPages = new ArrayList<>(firstPage);
+        List<ForecastRow> secondPage = new ArrayList<>();
+        ForecastRow.addRows(mContext, forecast(DAYS, DAYS, -1), false, secondPage);
+        twoPages.addAll(secondPage);
+        assertEquals("+" + DAYS + "x" + DAYS,
+                ForecastDiff.compute(firstPage, twoPages).toString());
+    }
+
+    public void testKeepsSelectionAcrossRemovedRows() {
+        ForecastAdapter adapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_SINGLE);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.mCheckStates.put(4, true);
+        icm.mCheckedIdStates.put(1234L, 4);
+        icm.offsetCheckedPositions(0, 1, 0);
+        assertEquals(3, icm.getSelectedItemPosition());
+        assertEquals(Integer.valueOf(3), icm.mCheckedIdStates.get(1234L));
+        icm.offsetCheckedPositions(3, 1, 0);
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+        assertEquals(0, icm.mCheckedIdStates.size());
+    }
+
+    public void testBenchmarkSyncChangingOneRow() throws Throwable {
+        final List<ForecastRow> before = rows(forecast(0, DAYS, -1));
+        final List<ForecastRow> after = rows(forecast(0, DAYS, CHANGED_DAY));
+        final ForecastDiff diff = ForecastDiff.compute(before, after);
+        final Cursor[] pages = {forecast(0, DAYS, CHANGED_DAY)};
+        final long[] results = new long[4];
+
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                Context context = new ContextThemeWrapper(mContext, R.style.AppTheme);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                // Animations only run in a window; without one, the views they would fade
+                // out stay behind and skew the later rounds.
+                recyclerView.setItemAnimator(null);
+                ForecastAdapter adapter = new ForecastAdapter(context, null, new View(context),
+                        AbsListView.CHOICE_MODE_NONE);
+                recyclerView.setAdapter(adapter);
+                ListMetrics metrics = adapter.getMetrics();
+
+                for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+                    // The list as it was before the sync, every row bound.
+                    adapter.swapCursor(paged(pages, before, null));
+                    layout(recyclerView);
+
+                    // Told everything changed, as it was before.
+                    int binds = metrics.getBindCount();
+                    long start = System.nanoTime();
+                    adapter.swapCursor(paged(pages, after, null));
+                    layout(recyclerView);
+                    results[1] += System.nanoTime() - start;
+                    results[0] += metrics.getBindCount() - binds;
+
+                    adapter.swapCursor(paged(pages, before, null));
+                    layout(recyclerView);
+
+                    // Told which row changed.
+                    binds = metrics.getBindCount();
+                    start = System.nanoTime();
+                    adapter.swapCursor(paged(pages, after, diff));
+                    layout(recyclerView);
+                    results[3] += System.nanoTime() - start;
+                    results[2] += metrics.getBindCount() - binds;
+                }
+            }
+        });
+        pages[0].close();
+
+        assertTrue("Error: Every row should have been bound again",
+                results[0] >= (long) DAYS * BENCHMARK_ROUNDS);
+        assertEquals("Error: Only the changed row should have been bound again",
+                BENCHMARK_ROUNDS, results[2]);
+        Log.d(LOG_TAG, "After a sync changing 1 of " + DAYS + " rows: notifyDataSetChanged binds="
+                + results[0] / BENCHMARK_ROUNDS + " layout=" + results[1] / BENCHMARK_ROUNDS / 1000
+                + "us, diff binds=" + results[2] / BENCHMARK_ROUNDS + " layout="
+                + results[3] / BENCHMARK_ROUNDS / 1000 + "us");
+    }
+
+    // A layout pass tall enough for every row, as the frame after the swap would do.
+    private static void layout(RecyclerView recyclerView) {
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(10000, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 10000);
+    }
+
+    private static void runOnMainThread(final Runnable runnable) throws Throwable {
+        final Throwable[] thrown = new Throwable[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        assertTrue("Error: Timed out on the main thread", done.await(60, TimeUnit.SECONDS));
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.Collections;
+import java.util.Locale;
+
+/*
+    Tests how the forecast loader hands its pages from one delivered cursor to the next.
+ */
+public class TestForecastPageLoader extends AndroidTestCase {
+
+    private static final String[] COLUMNS = {"_id"};
+
+    // The loader's cursor over the pages, as a load today would deliver it.
+    private static ForecastPageLoader.PagedCursor paged(Cursor[] pages) {
+        return new ForecastPageLoader.PagedCursor(pages, Collections.<ForecastRow>emptyList(),
+                null, 0, 0, false, false, WeatherContract.getTodayJulianDay(), Locale.getDefault(),
+                WeatherContract.getTimeZone());
+    }
+
+    public void testReleasedCursorsLeaveSharedPagesClean() {
+        final int[] observers = new int[1];
+        MatrixCursor page = new MatrixCursor(COLUMNS) {
+            @Override
+            public void registerDataSetObserver(DataSetObserver observer) {
+                super.registerDataSetObserver(observer);
+                observers[0]++;
+            }
+
+            @Override
+            public void unregisterDataSetObserver(DataSetObserver observer) {
+                super.unregisterDataSetObserver(observer);
+                observers[0]--;
+            }
+        };
+        Cursor[] pages = {page};
+
+        // Each sync delivers a new cursor over the same page, and the loader releases the last.
+        ForecastPageLoader.PagedCursor last = paged(pages);
+        for (int i = 0; i < 10; i++) {
+            ForecastPageLoader.PagedCursor next = paged(pages);
+            last.release();
+            last = next;
+        }
+        assertEquals("Error: Released cursors still observe the page", 1, observers[0]);
+        assertFalse("Error: Releasing a cursor closed the shared page", page.isClosed());
+
+        last.close();
+        assertTrue(page.isClosed());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Tests that the forecast list's rows show what binding from the cursor showed, that the list
+    metrics count missed frames, and compares the cost of binding a row from the cursor with
+    binding it from its ForecastRow.
+ */
+public class TestForecastRow extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRow.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_ROUNDS = 500;
+    private static final int[] WEATHER_IDS = {800, 801, 500, 211, 300, 804, 600, 701, 999};
+
+    // The columns of ForecastFragment's projection.
+    private static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private Cursor forecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        int today = WeatherContract.getTodayJulianDay();
+        for (int i = 0; i < DAYS; i++) {
+            cursor.addRow(new Object[]{
+                    i + 1,
+                    WeatherContract.getStartOfJulianDay(today + i),
+                    "Clear",
+                    21.3 + i * 0.7,
+                    9.6 - i * 1.1,
+                    "94043",
+                    WEATHER_IDS[i % WEATHER_IDS.length],
+                    37.4,
+                    -122.1});
+        }
+        return cursor;
+    }
+
+    public void testMatchesCursor() {
+        Cursor cursor = forecastCursor();
+        List<ForecastRow> rows = new ArrayList<>();
+        ForecastRow.addRows(mContext, cursor, true, rows);
+        assertEquals(DAYS, rows.size());
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            ForecastRow row = rows.get(cursor.getPosition());
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            assertEquals(date, row.getDate());
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId),
+                    row.getIconResource());
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId),
+                    row.getArtResource());
+            if (Utility.usingLocalGraphics(mContext)) {
+                assertNull(row.getArtUrl());
+            } else {
+                assertEquals(Utility.getArtUrlForWeatherCondition(mContext, weatherId),
+                        row.getArtUrl());
+            }
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false),
+                    row.getDayLabel(false));
+            assertEquals(Utility.getFriendlyDayString(mContext, date, cursor.isFirst()),
+                    row.getDayLabel(true));
+            String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+            assertEquals(description, row.getDescription());
+            assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                    row.getDescriptionA11y());
+            String high = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            assertEquals(high, row.getHigh());
+            assertEquals(mContext.getString(R.string.a11y_high_temp, high), row.getHighA11y());
+            String low = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            assertEquals(low, row.getLow());
+            assertEquals(mContext.getString(R.string.a11y_low_temp, low), row.getLowA11y());
+        }
+        cursor.close();
+    }
+
+    public void testCountsDroppedFrames() {
+        ListMetrics metrics = new ListMetrics(mContext);
+        long interval = metrics.getFrameIntervalNanos();
+        long time = 1000 * interval;
+        // On time, on time, a little late, one missed, then two missed.
+        long[] gaps = {interval, interval, interval * 13 / 10, interval * 2, interval * 34 / 10};
+        metrics.onFrame(time);
+        for (long gap : gaps) {
+            time += gap;
+            metrics.onFrame(time);
+        }
+        assertEquals(gaps.length + 1, metrics.getFrameCount());
+        assertEquals(3, metrics.getDroppedFrameCount());
+
+        metrics.recordBind(metrics.startBind());
+        assertEquals(1, metrics.getBindCount());
+    }
+
+    public void testBenchmarkBindRow() {
+        Cursor cursor = forecastCursor();
+        long check = 0;
+        long fromCursor = 0;
+        long building = 0;
+        long fromRows = 0;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            long start = System.nanoTime();
+            check += bindFromCursor(cursor);
+            fromCursor += System.nanoTime() - start;
+
+            // Done on the loader's thread, once per load.
+            start = System.nanoTime();
+            List<ForecastRow> rows = new ArrayList<>(DAYS);
+            ForecastRow.addRows(mContext, cursor, true, rows);
+            building += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            check -= bindFromRows(rows);
+            fromRows += System.nanoTime() - start;
+        }
+        cursor.close();
+        assertEquals("Error: The rows show different text", 0, check);
+
+        long binds = (long) BENCHMARK_ROUNDS * DAYS;
+        Log.d(LOG_TAG, "Per row bind on the main thread: from the cursor="
+                + fromCursor / binds + "ns from ForecastRow=" + fromRows / binds
+                + "ns, building the row in the background=" + building / binds + "ns");
+    }
+
+    // What onBindViewHolder worked out per row before, returning a checksum of the text.
+    private long bindFromCursor(Cursor cursor) {
+        long sum = 0;
+        for (int position = 0; position < DAYS; position++) {
+            cursor.moveToPosition(position);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            sum += position == 0 ? Utility.getArtResourceForWeatherCondition(weatherId)
+                    : Utility.getIconResourceForWeatherCondition(weatherId);
+            if (!Utility.usingLocalGraphics(mContext)) {
+                sum += Utility.getArtUrlForWeatherCondition(mContext, weatherId).length();
+            }
+            long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            sum += Utility.getFriendlyDayString(mContext, dateInMillis, position == 0).length();
+            String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+            sum += description.length();
+            sum += mContext.getString(R.string.a11y_forecast, description).length();
+            String high = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            sum += high.length();
+            sum += mContext.getString(R.string.a11y_high_temp, high).length();
+            String low = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            sum += low.length();
+            sum += mContext.getString(R.string.a11y_low_temp, low).length();
+        }
+        return sum;
+    }
+
+    private long bindFromRows(List<ForecastRow> rows) {
+        long sum = 0;
+        for (int position = 0; position < DAYS; position++) {
+            ForecastRow row = rows.get(position);
+            sum += position == 0 ? row.getArtResource() : row.getIconResource();
+            if (row.getArtUrl() != null) {
+                sum += row.getArtUrl().length();
+            }
+            sum += row.getDayLabel(position == 0).length();
+            sum += row.getDescription().length();
+            sum += row.getDescriptionA11y().length();
+            sum += row.getHigh().length();
+            sum += row.getHighA11y().length();
+            sum += row.getLow().length();
+            sum += row.getLowA11y().length();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SyncStatus;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Tests that the settings snapshot reads what the preferences hold and follows their changes,
+    and compares the cost of the settings a forecast list and the detail widget read per row
+    with reading the preferences every time.
+ */
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSettingsSnapshot.class.getSimpleName();
+
+    private static final int ROWS = 14;
+    private static final int BENCHMARK_BINDS = 500;
+
+    private SharedPreferences mPrefs;
+    private String mUnits;
+    private String mArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key), null);
+        mArtPack = mPrefs.getString(mContext.getString(R.string.pref_art_pack_key), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        putOrRemove(editor, R.string.pref_units_key, mUnits);
+        putOrRemove(editor, R.string.pref_art_pack_key, mArtPack);
+        editor.commit();
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    private void putOrRemove(SharedPreferences.Editor editor, int key, String value) {
+        if (value == null) {
+            editor.remove(mContext.getString(key));
+        } else {
+            editor.putString(mContext.getString(key), value);
+        }
+    }
+
+    // What Utility.isMetric did before.
+    private boolean isMetricFromPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric))
+                .equals(mContext.getString(R.string.pref_units_metric));
+    }
+
+    // What Utility.usingLocalGraphics did before.
+    private boolean usingLocalGraphicsFromPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String sunshineArtPack = mContext.getString(R.string.pref_art_pack_sunshine);
+        return prefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+    }
+
+    // What Utility.getPreferredLocation did before.
+    private String locationFromPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default));
+    }
+
+    public void testMatchesPreferences() {
+        SettingsSnapshot settings = SettingsSnapshot.refresh(mContext);
+        assertEquals(locationFromPreferences(), settings.getLocation());
+        assertEquals(isMetricFromPreferences(), settings.isMetric());
+        assertEquals(usingLocalGraphicsFromPreferences(), settings.usingLocalGraphics());
+        assertEquals(mPrefs.getInt(mContext.getString(R.string.pref_location_status_key),
+                SyncStatus.LOCATION_STATUS_UNKNOWN), settings.getLocationStatus());
+        assertSame("Error: Reading the settings again built a new snapshot", settings,
+                SettingsSnapshot.get(mContext));
+    }
+
+    public void testFollowsChanges() {
+        SettingsSnapshot.get(mContext);
+        final boolean metric = isMetricFromPreferences();
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key), mContext.getString(
+                metric ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+        // The listener runs on the main thread, not this one.
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) != metric;
+            }
+        }.run();
+
+        mPrefs.edit().putString(mContext.getString(R.string.pref_art_pack_key),
+                mContext.getString(R.string.pref_art_pack_cute_dogs)).commit();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return !Utility.usingLocalGraphics(mContext);
+            }
+        }.run();
+        assertTrue(Utility.getArtUrlForWeatherCondition(mContext, 800).startsWith(
+                mContext.getString(R.string.pref_art_pack_cute_dogs).substring(0, 20)));
+
+        // Our own writes are seen straight away.
+        Utility.resetLocationStatus(mContext);
+        assertEquals(SyncStatus.LOCATION_STATUS_UNKNOWN,
+                Utility.getLocationStatus(mContext));
+    }
+
+    public void testBenchmarkBindRows() {
+        double[] temps = new double[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            temps[i] = -10 + 3.5 * i;
+        }
+
+        long check = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            check += bindListFromPreferences(temps);
+        }
+        long listBefore = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            check -= bindList(temps);
+        }
+        long listAfter = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            check += bindWidgetFromPreferences(temps);
+        }
+        long widgetBefore = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            check -= bindWidget(temps);
+        }
+        long widgetAfter = System.nanoTime() - start;
+        assertEquals("Error: The rows differ", 0, check);
+
+        Log.d(LOG_TAG, "Settings and temperatures per " + ROWS + "-row bind: list preferences="
+                + listBefore / BENCHMARK_BINDS / 1000 + "us snapshot="
+                + listAfter / BENCHMARK_BINDS / 1000 + "us, widget preferences="
+                + widgetBefore / BENCHMARK_BINDS / 1000 + "us snapshot="
+                + widgetAfter / BENCHMARK_BINDS / 1000 + "us");
+    }
+
+    private String formatTemperatureFromPreferences(double temperature) {
+        if (!isMetricFromPreferences()) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(mContext.getString(R.string.format_temperature), temperature);
+    }
+
+    // The settings ForecastAdapter reads per row: the art pack and the units, twice.
+    private int bindListFromPreferences(double[] temps) {
+        int length = 0;
+        for (int i = 0; i < ROWS; i++) {
+            length += usingLocalGraphicsFromPreferences() ? 1 : 0;
+            length += formatTemperatureFromPreferences(temps[i]).length();
+            length += formatTemperatureFromPreferences(temps[ROWS - 1 - i]).length();
+        }
+        return length;
+    }
+
+    private int bindList(double[] temps) {
+        int length = 0;
+        for (int i = 0; i < ROWS; i++) {
+            length += Utility.usingLocalGraphics(mContext) ? 1 : 0;
+            length += Utility.formatTemperature(mContext, temps[i]).length();
+            length += Utility.formatTemperature(mContext, temps[ROWS - 1 - i]).length();
+        }
+        return length;
+    }
+
+    // The detail widget's getViewAt also reads the location for the row's click.
+    private int bindWidgetFromPreferences(double[] temps) {
+        int length = bindListFromPreferences(temps);
+        for (int i = 0; i < ROWS; i++) {
+            length += locationFromPreferences().length();
+        }
+        return length;
+    }
+
+    private int bindWidget(double[] temps) {
+        int length = bindList(temps);
+        for (int i = 0; i < ROWS; i++) {
+            length += SettingsSnapshot.get(mContext).getLocation().length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Tests that MainActivity sets up the sync account once its first frame is drawn rather than
+    before, and reports how long a start takes until the first frame and the first forecast
+    row, for the first start of the activity in the test process and for starts after it.
+ */
+public class TestStartup extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public static final String LOG_TAG = TestStartup.class.getSimpleName();
+
+    private static final int BENCHMARK_STARTS = 5;
+    private static final long FIRST_ROW_TIMEOUT = 5000;
+
+    public TestStartup() {
+        super(MainActivity.class);
+    }
+
+    private MainActivity startActivity() {
+        final MainActivity activity = getActivity();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return activity.getStartup().getFirstFrameMillis() != -1;
+            }
+        }.run();
+        return activity;
+    }
+
+    // Finishes the activity, so that the next getActivity() starts another.
+    private void finishActivity(MainActivity activity) {
+        activity.finish();
+        setActivity(null);
+        getInstrumentation().waitForIdleSync();
+    }
+
+    // -1 if there are no forecast rows to show yet.
+    private long waitForFirstRow(StartupTasks startup) {
+        long deadline = SystemClock.uptimeMillis() + FIRST_ROW_TIMEOUT;
+        while (startup.getFirstRowMillis() == -1 && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(20);
+        }
+        return startup.getFirstRowMillis();
+    }
+
+    public void testInitializesAfterFirstFrame() throws InterruptedException {
+        MainActivity activity = startActivity();
+        assertTrue("Error: The startup tasks didn't finish",
+                StartupTasks.awaitTasks(10000));
+
+        Context context = getInstrumentation().getTargetContext();
+        Account account = new Account(context.getString(R.string.app_name),
+                context.getString(R.string.sync_account_type));
+        AccountManager accountManager =
+                (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
+        assertNotNull("Error: The sync account wasn't set up",
+                accountManager.getPassword(account));
+        finishActivity(activity);
+    }
+
+    public void testBenchmarkStartup() throws InterruptedException {
+        MainActivity activity = startActivity();
+        long firstFrame = activity.getStartup().getFirstFrameMillis();
+        long firstRow = waitForFirstRow(activity.getStartup());
+        StartupTasks.awaitTasks(10000);
+        finishActivity(activity);
+
+        long frames = 0;
+        long rows = 0;
+        int rowStarts = 0;
+        for (int i = 0; i < BENCHMARK_STARTS; i++) {
+            activity = startActivity();
+            frames += activity.getStartup().getFirstFrameMillis();
+            long row = waitForFirstRow(activity.getStartup());
+            if (row != -1) {
+                rows += row;
+                rowStarts++;
+            }
+            StartupTasks.awaitTasks(10000);
+            finishActivity(activity);
+        }
+
+        Log.d(LOG_TAG, "Start to first frame: first=" + firstFrame + "ms again="
+                + frames / BENCHMARK_STARTS + "ms; to first forecast row: first="
+                + (firstRow == -1 ? "none" : firstRow + "ms") + " again="
+                + (rowStarts == 0 ? "none" : rows / rowStarts + "ms"));
+    }
+}
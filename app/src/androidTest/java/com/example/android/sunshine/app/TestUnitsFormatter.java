@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Tests that the memoized temperatures and winds read as String.format made them, in both
+    units and across a locale change, and compares the cost of 10,000 formats.
+ */
+public class TestUnitsFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestUnitsFormatter.class.getSimpleName();
+
+    private static final int BENCHMARK_FORMATS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mUnits;
+    private Locale mLocale;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key), null);
+        mLocale = Locale.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Locale.setDefault(mLocale);
+        if (mUnits == null) {
+            mPrefs.edit().remove(mContext.getString(R.string.pref_units_key)).commit();
+        } else {
+            mPrefs.edit().putString(mContext.getString(R.string.pref_units_key), mUnits).commit();
+        }
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    private void setUnits(int units) {
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(units)).commit();
+        SettingsSnapshot.refresh(mContext);
+    }
+
+    // What Utility.formatTemperature did before.
+    private static String legacyTemperature(Context context, double temperature) {
+        if (!Utility.isMetric(context)) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    private void checkTemperatures() {
+        // Twice, so the second time is answered from the table.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int tenths = -800; tenths <= 800; tenths++) {
+                double celsius = tenths / 10.0;
+                assertEquals("Error: " + celsius + "C", legacyTemperature(mContext, celsius),
+                        Utility.formatTemperature(mContext, celsius));
+            }
+        }
+        for (double celsius : new double[]{-0.0, -0.2, 0.5, -0.5, 2.5, -2.5, 12.4999999,
+                -17.5, 1e6, -1e6, Double.NaN, Double.POSITIVE_INFINITY}) {
+            assertEquals("Error: " + celsius + "C", legacyTemperature(mContext, celsius),
+                    Utility.formatTemperature(mContext, celsius));
+        }
+    }
+
+    private void checkWinds() {
+        for (int pass = 0; pass < 2; pass++) {
+            for (int quarters = 0; quarters <= 200; quarters += 3) {
+                float speed = quarters / 4f;
+                // Beyond a full turn each way, in steps that land on every sector boundary.
+                for (int halves = -90; halves <= 810; halves += 5) {
+                    float direction = halves / 2f;
+                    assertEquals("Error: " + speed + " from " + direction,
+                            legacyWind(mContext, speed, direction),
+                            Utility.getFormattedWind(mContext, speed, direction));
+                }
+            }
+        }
+        assertEquals(legacyWind(mContext, 10, Float.NaN),
+                Utility.getFormattedWind(mContext, 10, Float.NaN));
+        assertEquals(legacyWind(mContext, 1000, 90), Utility.getFormattedWind(mContext, 1000, 90));
+        assertEquals(legacyWind(mContext, -0.2f, 90), Utility.getFormattedWind(mContext, -0.2f, 90));
+    }
+
+    public void testMatchesStringFormat() {
+        setUnits(R.string.pref_units_metric);
+        checkTemperatures();
+        checkWinds();
+
+        setUnits(R.string.pref_units_imperial);
+        checkTemperatures();
+        checkWinds();
+    }
+
+    public void testFollowsUnitsAndLocale() {
+        setUnits(R.string.pref_units_metric);
+        assertEquals(legacyTemperature(mContext, 20), Utility.formatTemperature(mContext, 20));
+        setUnits(R.string.pref_units_imperial);
+        assertEquals(legacyTemperature(mContext, 20), Utility.formatTemperature(mContext, 20));
+        assertTrue(Utility.getFormattedWind(mContext, 10, 0).contains("mph"));
+
+        // Arabic formats with its own digits.
+        Locale.setDefault(new Locale("ar"));
+        String arabic = Utility.formatTemperature(mContext, 20);
+        assertEquals(legacyTemperature(mContext, 20), arabic);
+        Locale.setDefault(Locale.US);
+        assertEquals(legacyTemperature(mContext, 20), Utility.formatTemperature(mContext, 20));
+    }
+
+    public void testBenchmarkFormat() {
+        double[] temperatures = new double[64];
+        float[] speeds = new float[64];
+        float[] directions = new float[64];
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = -15 + i * 0.73;
+            speeds[i] = i * 0.61f;
+            directions[i] = i * 17.3f;
+        }
+
+        long check = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FORMATS; i++) {
+            check += legacyTemperature(mContext, temperatures[i % 64]).length();
+        }
+        long temperatureBefore = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FORMATS; i++) {
+            check -= Utility.formatTemperature(mContext, temperatures[i % 64]).length();
+        }
+        long temperatureAfter = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FORMATS; i++) {
+            check += legacyWind(mContext, speeds[i % 64], directions[i % 64]).length();
+        }
+        long windBefore = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_FORMATS; i++) {
+            check -= Utility.getFormattedWind(mContext, speeds[i % 64], directions[i % 64]).length();
+        }
+        long windAfter = System.nanoTime() - start;
+        assertEquals("Error: The strings differ", 0, check);
+
+        Log.d(LOG_TAG, BENCHMARK_FORMATS + " formats: temperature String.format="
+                + temperatureBefore / 1000 + "us memoized=" + temperatureAfter / 1000
+                + "us, wind String.format=" + windBefore / 1000 + "us memoized="
+                + windAfter / 1000 + "us");
+    }
+
+    // What Utility.getFormattedWind did before.
+    private static String legacyWind(Context context, float windSpeed, float degrees) {
+        int windFormat;
+        if (Utility.isMetric(context)) {
+            windFormat = R.string.format_wind_kmh;
+        } else {
+            windFormat = R.string.format_wind_mph;
+            windSpeed = .621371192237334f * windSpeed;
+        }
+
+        // From wind direction in degrees, determine compass direction as a string (e.g NW)
+        // You know what's fun, writing really long if/else statements with tons of possible
+        // conditions.  Seriously, try it!
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return String.format(context.getString(windFormat), windSpeed, direction);
+    }
+}
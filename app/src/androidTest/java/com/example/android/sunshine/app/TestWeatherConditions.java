@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.util.Locale;
+
+/*
+    Tests that the condition table answers what the chains of range checks it replaced did, for
+    every code and in both art packs, and compares the cost of looking up a row's condition.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConditions.class.getSimpleName();
+
+    private static final int BENCHMARK_LOOKUPS = 10000;
+
+    // The codes Utility.getStringForWeatherCondition had a case for, besides 2xx and 3xx.
+    private static final int[] LEGACY_STRING_CODES = {
+            500, 501, 502, 503, 504, 511, 520, 531, 600, 601, 602, 611, 612, 615, 616, 620, 621,
+            622, 701, 711, 721, 731, 741, 751, 761, 762, 771, 781, 800, 801, 802, 803, 804, 900,
+            901, 902, 903, 904, 905, 906, 951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961,
+            962
+    };
+
+    // What a forecast is mostly made of.
+    private static final int[] COMMON_CODES = {
+            800, 801, 802, 803, 804, 500, 501, 502, 300, 211, 600, 601, 701, 741
+    };
+
+    private SparseIntArray mLegacyStringIds;
+    private String mArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mLegacyStringIds = new SparseIntArray();
+        for (int code = 200; code <= 232; code++) {
+            mLegacyStringIds.put(code, R.string.condition_2xx);
+        }
+        for (int code = 300; code <= 321; code++) {
+            mLegacyStringIds.put(code, R.string.condition_3xx);
+        }
+        for (int code : LEGACY_STRING_CODES) {
+            int id = mContext.getResources().getIdentifier("condition_" + code, "string",
+                    mContext.getPackageName());
+            assertTrue("Error: No string for " + code, id != 0);
+            mLegacyStringIds.put(code, id);
+        }
+        mArtPack = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mContext.getString(R.string.pref_art_pack_key), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        if (mArtPack == null) {
+            editor.remove(mContext.getString(R.string.pref_art_pack_key));
+        } else {
+            editor.putString(mContext.getString(R.string.pref_art_pack_key), mArtPack);
+        }
+        editor.commit();
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    private String legacyString(Context context, int weatherId) {
+        int stringId = mLegacyStringIds.get(weatherId);
+        if (stringId == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
+        }
+        return context.getString(stringId);
+    }
+
+    private void checkAllCodes() {
+        for (int code = -1; code <= 1000; code++) {
+            assertEquals("Error: Icon of " + code, legacyIcon(code),
+                    Utility.getIconResourceForWeatherCondition(code));
+            assertEquals("Error: Art of " + code, legacyArt(code),
+                    Utility.getArtResourceForWeatherCondition(code));
+            assertEquals("Error: Image of " + code, legacyImageUrl(code),
+                    Utility.getImageUrlForWeatherCondition(code));
+            assertEquals("Error: Art url of " + code, legacyArtUrl(mContext, code),
+                    Utility.getArtUrlForWeatherCondition(mContext, code));
+            assertEquals("Error: Description of " + code, legacyString(mContext, code),
+                    Utility.getStringForWeatherCondition(mContext, code));
+        }
+    }
+
+    public void testMatchesChains() {
+        checkAllCodes();
+
+        // The art urls follow the art pack.
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_art_pack_key),
+                        mContext.getString(R.string.pref_art_pack_cute_dogs))
+                .commit();
+        SettingsSnapshot.refresh(mContext);
+        checkAllCodes();
+    }
+
+    public void testUnknownCodes() {
+        for (int code : new int[]{Integer.MIN_VALUE, 0, 199, 233, 521, 805, 963, Integer.MAX_VALUE}) {
+            assertEquals(mContext.getString(R.string.condition_unknown, code),
+                    Utility.getStringForWeatherCondition(mContext, code));
+            assertNull(Utility.getImageUrlForWeatherCondition(code));
+        }
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(963));
+        assertEquals(-1, Utility.getArtResourceForWeatherCondition(-5));
+        assertNull(Utility.getArtUrlForWeatherCondition(mContext, 100));
+        // Known descriptions are kept.
+        assertSame(Utility.getStringForWeatherCondition(mContext, 800),
+                Utility.getStringForWeatherCondition(mContext, 800));
+    }
+
+    public void testBenchmarkLookup() {
+        long check = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+            int code = COMMON_CODES[i % COMMON_CODES.length];
+            check += legacyIcon(code) + legacyArt(code);
+            check += legacyString(mContext, code).length();
+            check += legacyArtUrl(mContext, code).length();
+        }
+        long chains = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_LOOKUPS; i++) {
+            int code = COMMON_CODES[i % COMMON_CODES.length];
+            check -= Utility.getIconResourceForWeatherCondition(code)
+                    + Utility.getArtResourceForWeatherCondition(code);
+            check -= Utility.getStringForWeatherCondition(mContext, code).length();
+            check -= Utility.getArtUrlForWeatherCondition(mContext, code).length();
+        }
+        long table = System.nanoTime() - start;
+        assertEquals("Error: The lookups differ", 0, check);
+
+        Log.d(LOG_TAG, "Icon, art, description and art url per row: chains="
+                + chains / BENCHMARK_LOOKUPS + "ns table=" + table / BENCHMARK_LOOKUPS + "ns");
+    }
+
+    // What Utility did before, from here on.
+
+    private static int legacyIcon(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtUrl(Context context, int weatherId) {
+        String formatArtUrl = SettingsSnapshot.get(context).getArtPack();
+
+        if (weatherId >= 200 && weatherId <= 232) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return String.format(Locale.US, formatArtUrl, "light_rain");
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId == 511) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return String.format(Locale.US, formatArtUrl, "rain");
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return String.format(Locale.US, formatArtUrl, "snow");
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return String.format(Locale.US, formatArtUrl, "fog");
+        } else if (weatherId == 761 || weatherId == 781) {
+            return String.format(Locale.US, formatArtUrl, "storm");
+        } else if (weatherId == 800) {
+            return String.format(Locale.US, formatArtUrl, "clear");
+        } else if (weatherId == 801) {
+            return String.format(Locale.US, formatArtUrl, "light_clouds");
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return String.format(Locale.US, formatArtUrl, "clouds");
+        }
+        return null;
+    }
+
+    private static String legacyImageUrl(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+}
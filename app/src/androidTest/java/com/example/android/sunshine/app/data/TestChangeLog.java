@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests the order of the changes uri, that consumers keep what they still need and notice
+    when they have missed changes, and compares following the log with reading everything again.
+ */
+public class TestChangeLog extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestChangeLog.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_ROUNDS = 200;
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private long mLocationId;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        mDates = new long[DAYS];
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        helper.getWritableDatabase().delete(ChangeEntry.CONSUMER_TABLE_NAME, null, null);
+        helper.close();
+    }
+
+    private void insertWeather(double maxTemp) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, mDates[i]);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private void updateDay(int day, double maxTemp) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp);
+        assertEquals(1, mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(mDates[day])}));
+    }
+
+    private Cursor changes(long since, String consumer) {
+        return mContext.getContentResolver().query(
+                ChangeEntry.buildChangesSince(since, consumer), null, null, null, null);
+    }
+
+    // Where a consumer starting over goes on from.
+    private long start(String consumer) {
+        Cursor cursor = changes(0, consumer);
+        assertTrue("Error: Starting over should always mean reading everything",
+                ChangeEntry.hasGap(cursor, 0));
+        long head = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return head;
+    }
+
+    public void testChangesInOrder() {
+        long since = start("ordering");
+        insertWeather(10);
+        updateDay(3, 40);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(mDates[5])});
+
+        Cursor cursor = changes(since, "ordering");
+        assertFalse("Error: A registered consumer found a gap", ChangeEntry.hasGap(cursor, since));
+        assertEquals(1 + DAYS + 2, cursor.getCount());
+
+        int tableIndex = cursor.getColumnIndex(ChangeEntry.COLUMN_TABLE);
+        int locationIndex = cursor.getColumnIndex(ChangeEntry.COLUMN_LOC_KEY);
+        int dateIndex = cursor.getColumnIndex(ChangeEntry.COLUMN_DATE);
+        int operationIndex = cursor.getColumnIndex(ChangeEntry.COLUMN_OPERATION);
+        long sequence = since;
+        for (int i = 0; i < DAYS + 2; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals("Error: The sequence skipped or repeated", sequence + 1, cursor.getLong(0));
+            sequence = cursor.getLong(0);
+            assertEquals(WeatherEntry.TABLE_NAME, cursor.getString(tableIndex));
+            assertEquals(mLocationId, cursor.getLong(locationIndex));
+
+            int operation = cursor.getInt(operationIndex);
+            long date = cursor.getLong(dateIndex);
+            if (i < DAYS) {
+                assertEquals(ChangeEntry.OP_INSERT, operation);
+                assertEquals(mDates[i], date);
+            } else if (i == DAYS) {
+                assertEquals(ChangeEntry.OP_UPDATE, operation);
+                assertEquals(mDates[3], date);
+            } else {
+                assertEquals(ChangeEntry.OP_DELETE, operation);
+                assertEquals(mDates[5], date);
+            }
+        }
+        cursor.close();
+
+        // Nothing since the last change.
+        cursor = changes(sequence, "ordering");
+        assertFalse(ChangeEntry.hasGap(cursor, sequence));
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testGapDetection() {
+        long first = start("ahead");
+        long behind = start("behind");
+        assertEquals(first, behind);
+        insertWeather(10);
+
+        // Both consumers are still owed every change.
+        Cursor cursor = changes(first, "ahead");
+        assertFalse(ChangeEntry.hasGap(cursor, first));
+        cursor.moveToLast();
+        long last = cursor.getLong(0);
+        cursor.close();
+        cursor = changes(last, "ahead");
+        cursor.close();
+
+        cursor = changes(behind, "behind");
+        assertFalse("Error: The log dropped changes a consumer hadn't seen",
+                ChangeEntry.hasGap(cursor, behind));
+        assertEquals(1 + DAYS, cursor.getCount());
+        cursor.close();
+
+        // Once both have caught up, the older changes go, and anyone still asking for them
+        // finds the gap.
+        changes(last, "behind").close();
+        insertWeather(20);
+        cursor = changes(first, "late");
+        assertTrue("Error: A missing change wasn't reported as a gap",
+                ChangeEntry.hasGap(cursor, first));
+        cursor.close();
+
+        // A sequence from a log that has been cleared is a gap too.
+        cursor = changes(Long.MAX_VALUE, "cleared");
+        assertTrue(ChangeEntry.hasGap(cursor, Long.MAX_VALUE));
+        cursor.close();
+    }
+
+    public void testLogStaysBounded() {
+        // A consumer that never comes back mustn't hold on to the log forever.
+        long stalled = start("stalled");
+        for (int round = 0; round * DAYS < ChangeEntry.MAX_ROWS + 2 * DAYS; round++) {
+            insertWeather(round);
+        }
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        long rows = DatabaseUtils.queryNumEntries(helper.getReadableDatabase(),
+                ChangeEntry.TABLE_NAME);
+        helper.close();
+        assertTrue("Error: The log holds " + rows + " changes", rows <= ChangeEntry.MAX_ROWS);
+
+        Cursor cursor = changes(stalled, "stalled");
+        assertTrue("Error: The stalled consumer didn't find its gap",
+                ChangeEntry.hasGap(cursor, stalled));
+        cursor.close();
+    }
+
+    public void testBenchmarkIncrementalVersusFullRefresh() {
+        insertWeather(10);
+        long since = start("benchmark");
+
+        long full = 0;
+        long incremental = 0;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            updateDay(round % DAYS, round);
+
+            long begin = System.nanoTime();
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                    FORECAST_COLUMNS, null, null, null);
+            assertEquals(DAYS, readAll(cursor));
+            cursor.close();
+            full += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            cursor = changes(since, "benchmark");
+            assertFalse(ChangeEntry.hasGap(cursor, since));
+            int dateIndex = cursor.getColumnIndex(ChangeEntry.COLUMN_DATE);
+            int read = 0;
+            while (cursor.moveToNext()) {
+                since = cursor.getLong(0);
+                Cursor day = mContext.getContentResolver().query(
+                        WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                                cursor.getLong(dateIndex)),
+                        FORECAST_COLUMNS, null, null, null);
+                read += readAll(day);
+                day.close();
+            }
+            cursor.close();
+            incremental += System.nanoTime() - begin;
+            assertEquals(1, read);
+        }
+
+        Log.d(LOG_TAG, "One changed day of " + DAYS + ", per refresh: full="
+                + full / BENCHMARK_ROUNDS / 1000 + "us incremental="
+                + incremental / BENCHMARK_ROUNDS / 1000 + "us");
+    }
+
+    // Reads every value of every row, as a consumer rebuilding its copy would.
+    private static int readAll(Cursor cursor) {
+        int rows = 0;
+        while (cursor.moveToNext()) {
+            cursor.getLong(0);
+            cursor.getInt(1);
+            cursor.getString(2);
+            cursor.getDouble(3);
+            cursor.getDouble(4);
+            rows++;
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests that a ColumnarCursor reads back what the query returned, and compares the cost of
+    binding a whole forecast list from it with binding from the SQLiteCursor.
+ */
+public class TestColumnarCursor extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestColumnarCursor.class.getSimpleName();
+
+    private static final int DAYS = 50;
+    private static final int BENCHMARK_DAYS = 1000;
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    // The forecast list's projection and column types.
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+    private static final int[] TYPES = {
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_STRING,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_STRING,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE
+    };
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private void insertDays(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+            for (int i = 0; i < days; i++) {
+                long date = calendar.getTimeInMillis();
+                values.put(WeatherEntry.COLUMN_DATE, date);
+                values.put(WeatherEntry.COLUMN_JULIAN_DAY, WeatherContract.getJulianDay(date));
+                values.put(WeatherEntry.COLUMN_MAX_TEMP, 20 + i % 17 * 0.5);
+                values.put(WeatherEntry.COLUMN_WEATHER_ID, 200 + i % 600);
+                db.insert(WeatherEntry.TABLE_NAME, null, values);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        helper.close();
+    }
+
+    private Cursor query() {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testCopyMatchesQuery() {
+        insertDays(DAYS);
+        Cursor source = query();
+        ColumnarCursor copy = ColumnarCursor.copyOf(source, TYPES);
+        assertEquals(DAYS, copy.getCount());
+        assertEquals(source.getColumnCount(), copy.getColumnCount());
+        assertEquals(source.getColumnIndex(WeatherEntry.COLUMN_DATE),
+                copy.getColumnIndex(WeatherEntry.COLUMN_DATE));
+
+        source.moveToPosition(-1);
+        while (source.moveToNext()) {
+            assertTrue(copy.moveToPosition(source.getPosition()));
+            for (int i = 0; i < COLUMNS.length; i++) {
+                String where = "column " + i + " of row " + source.getPosition();
+                switch (TYPES[i]) {
+                    case ColumnarCursor.TYPE_LONG:
+                        assertEquals("Error: long of " + where, source.getLong(i), copy.getLong(i));
+                        assertEquals("Error: int of " + where, source.getInt(i), copy.getInt(i));
+                        assertEquals("Error: string of " + where,
+                                source.getString(i), copy.getString(i));
+                        break;
+                    case ColumnarCursor.TYPE_DOUBLE:
+                        // The window formats a REAL with "%g"; the copy keeps every digit.
+                        assertEquals("Error: double of " + where,
+                                source.getDouble(i), copy.getDouble(i));
+                        break;
+                    default:
+                        assertEquals("Error: string of " + where,
+                                source.getString(i), copy.getString(i));
+                }
+                assertFalse("Error: null at " + where, copy.isNull(i));
+            }
+        }
+        source.close();
+        copy.close();
+    }
+
+    public void testNulls() {
+        MatrixCursor source = new MatrixCursor(new String[]{"a", "b", "c"});
+        source.addRow(new Object[]{1L, 2.5, "x"});
+        source.addRow(new Object[]{null, null, null});
+        ColumnarCursor copy = ColumnarCursor.copyOf(source, new int[]{ColumnarCursor.TYPE_LONG,
+                ColumnarCursor.TYPE_DOUBLE, ColumnarCursor.TYPE_STRING});
+
+        assertTrue(copy.moveToFirst());
+        assertFalse(copy.isNull(0));
+        assertEquals(1L, copy.getLong(0));
+        assertEquals(2.5, copy.getDouble(1));
+        assertEquals("x", copy.getString(2));
+
+        assertTrue(copy.moveToNext());
+        for (int i = 0; i < 3; i++) {
+            assertTrue("Error: Column " + i + " should be null", copy.isNull(i));
+            assertNull(copy.getString(i));
+        }
+        assertEquals(0L, copy.getLong(0));
+        assertEquals(0.0, copy.getDouble(1));
+        copy.close();
+    }
+
+    public void testBenchmarkBind() {
+        insertDays(BENCHMARK_DAYS);
+
+        long sqlite = 0;
+        long copying = 0;
+        long columnar = 0;
+        long check = 0;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            Cursor cursor = query();
+            // Fill the window first, as the loader does, so only the binding is timed.
+            cursor.getCount();
+            long start = System.nanoTime();
+            check += bindAll(cursor);
+            sqlite += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ColumnarCursor copy = ColumnarCursor.copyOf(cursor, TYPES);
+            copying += System.nanoTime() - start;
+            cursor.close();
+
+            start = System.nanoTime();
+            check -= bindAll(copy);
+            columnar += System.nanoTime() - start;
+            copy.close();
+        }
+        assertEquals("Error: The copy bound different values", 0, check);
+
+        Log.d(LOG_TAG, "Binding " + BENCHMARK_DAYS + " rows: SQLiteCursor="
+                + sqlite / BENCHMARK_ROUNDS / 1000 + "us ColumnarCursor="
+                + columnar / BENCHMARK_ROUNDS / 1000 + "us, making the copy="
+                + copying / BENCHMARK_ROUNDS / 1000 + "us");
+    }
+
+    // Reads every row the way ForecastAdapter binds one, returning a checksum of the values.
+    private long bindAll(Cursor cursor) {
+        long sum = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            sum += cursor.getInt(6);
+            sum += cursor.getLong(1);
+            sum += cursor.getString(2).length();
+            sum += (long) (cursor.getDouble(3) * 10);
+            sum += (long) (cursor.getDouble(4) * 10);
+            sum += cursor.getLong(0);
+        }
+        return sum;
+    }
+}
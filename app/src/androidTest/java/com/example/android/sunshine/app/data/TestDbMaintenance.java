@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests METHOD_MAINTAIN_DATABASE, and soaks the database with half a year of daily syncs to
+    check that the file stays bounded when it is maintained once a week.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class TestDbMaintenance extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMaintenance.class.getSimpleName();
+
+    private static final int LOCATIONS = 3;
+    private static final int FORECAST_DAYS = 14;
+    private static final int SOAK_DAYS = 180;
+    private static final int MAINTENANCE_INTERVAL_DAYS = 7;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(HistoryEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private Bundle maintain() {
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_MAINTAIN_DATABASE, null, null);
+        assertNotNull("Error: No result from maintenance", result);
+        return result;
+    }
+
+    public void testNewDatabaseStartsInIncrementalVacuum() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals("Error: A new database isn't in incremental auto-vacuum mode",
+                WeatherDbMaintenance.AUTO_VACUUM_INCREMENTAL, WeatherDbMaintenance.getAutoVacuum(db));
+        helper.close();
+    }
+
+    public void testMaintenanceLeavesIncrementalVacuumOn() {
+        Bundle result = maintain();
+        assertTrue(result.getLong(WeatherContract.EXTRA_DB_PAGE_SIZE) > 0);
+        assertTrue(result.getLong(WeatherContract.EXTRA_DB_PAGES_AFTER) > 0);
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getReadableDatabase();
+        assertEquals("Error: The database isn't in incremental auto-vacuum mode",
+                WeatherDbMaintenance.AUTO_VACUUM_INCREMENTAL, WeatherDbMaintenance.getAutoVacuum(db));
+        helper.close();
+    }
+
+    public void testSoakStaysBounded() {
+        long[] locationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues location = TestUtilities.createNorthPoleLocationValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "soak" + i);
+            locationIds[i] = ContentUris.parseId(mContext.getContentResolver().insert(
+                    LocationEntry.CONTENT_URI, location));
+        }
+        // Start from a packed file so the first month's size is what the data needs.
+        maintain();
+
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        day.add(Calendar.DAY_OF_MONTH, -SOAK_DAYS);
+
+        long firstMonthPages = 0;
+        long lastPages = 0;
+        long lastFree = 0;
+        for (int d = 1; d <= SOAK_DAYS; d++) {
+            sync(locationIds, day, d);
+            if (d % MAINTENANCE_INTERVAL_DAYS == 0) {
+                Bundle result = maintain();
+                lastPages = result.getLong(WeatherContract.EXTRA_DB_PAGES_AFTER);
+                lastFree = result.getLong(WeatherContract.EXTRA_DB_FREE_PAGES_AFTER);
+                if (firstMonthPages == 0 && d >= 30) {
+                    firstMonthPages = lastPages;
+                }
+                Log.d(LOG_TAG, "Day " + d + ": pages "
+                        + result.getLong(WeatherContract.EXTRA_DB_PAGES_BEFORE) + " -> " + lastPages
+                        + ", free " + result.getLong(WeatherContract.EXTRA_DB_FREE_PAGES_BEFORE)
+                        + " -> " + lastFree + " in "
+                        + result.getLong(WeatherContract.EXTRA_DB_MAINTENANCE_US) + "us");
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        // Raw days are rolled up into a handful of history rows, so five more months may add a
+        // little, but the file must not keep growing with the churn.
+        assertTrue("Error: The database grew from " + firstMonthPages + " pages after a month to "
+                + lastPages + " after " + SOAK_DAYS + " days", lastPages <= firstMonthPages * 2);
+        // A file this small is released in one bounded run, or needed none.
+        assertTrue("Error: " + lastFree + " of " + lastPages + " pages left free",
+                lastFree * 100 < lastPages * WeatherDbMaintenance.MIN_FREE_PERCENT);
+    }
+
+    // What one daily sync writes: the next two weeks for every location, replacing the days
+    // stored by the last sync, then the history compaction.
+    private void sync(long[] locationIds, Calendar today, int seed) {
+        Calendar calendar = (Calendar) today.clone();
+        ContentValues[] values = new ContentValues[locationIds.length * FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            for (int l = 0; l < locationIds.length; l++) {
+                ContentValues day = TestUtilities.createWeatherValues(locationIds[l]);
+                day.put(WeatherEntry.COLUMN_DATE, calendar.getTimeInMillis());
+                day.put(WeatherEntry.COLUMN_MAX_TEMP, (seed + i + l) % 35);
+                day.put(WeatherEntry.COLUMN_WEATHER_ID, 200 + (seed * 7 + i) % 600);
+                values[i * locationIds.length + l] = day;
+            }
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMPACT_HISTORY, Long.toString(today.getTimeInMillis()),
+                null);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Builds every historic schema WeatherDbMigrations knows about, fills it with a year of weather
+    for a few dozen locations, upgrades it through WeatherDbHelper and checks that nothing was
+    lost and that the result matches a freshly created database.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    private static final int LOCATIONS = 50;
+    private static final int DAYS = 365;
+    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    private SQLiteDatabase openRawDatabase() {
+        File path = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        path.getParentFile().mkdirs();
+        return SQLiteDatabase.openOrCreateDatabase(path, null);
+    }
+
+    /*
+        Creates the database file at the given historic version, the same way an older release
+        of the app would have left it.
+     */
+    private SQLiteDatabase createDatabaseAtVersion(int version) {
+        SQLiteDatabase db = openRawDatabase();
+        db.beginTransaction();
+        try {
+            WeatherDbHelper.createBaseSchema(db);
+            WeatherDbMigrations.migrate(db, WeatherDbMigrations.BASE_VERSION, version);
+            db.setVersion(version);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return db;
+    }
+
+    /*
+        Fills the database using only the columns that exist in the base schema, so the same
+        data can be written into every historic version.
+     */
+    private static void fill(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            for (int l = 0; l < LOCATIONS; l++) {
+                ContentValues location = new ContentValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "location-" + l);
+                location.put(LocationEntry.COLUMN_CITY_NAME, "City " + l);
+                location.put(LocationEntry.COLUMN_COORD_LAT, -60 + l * 2.5);
+                location.put(LocationEntry.COLUMN_COORD_LONG, -170 + l * 6.8);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+                assertTrue(locationId != -1);
+
+                long date = TestUtilities.TEST_DATE;
+                for (int d = 0; d < DAYS; d++, date += DAY_IN_MILLIS) {
+                    ContentValues weather = TestUtilities.createWeatherValues(locationId);
+                    weather.put(WeatherEntry.COLUMN_DATE, date);
+                    weather.put(WeatherEntry.COLUMN_MAX_TEMP, (l + d) % 40);
+                    weather.put(WeatherEntry.COLUMN_MIN_TEMP, (l + d) % 40 - 10);
+                    weather.put(WeatherEntry.COLUMN_WEATHER_ID, 200 + (d % 600));
+                    assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weather) != -1);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+        Row counts and a few column checksums; equal before and after means the rows survived.
+     */
+    private static String fingerprint(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("SELECT " +
+                "(SELECT COUNT(*) FROM " + LocationEntry.TABLE_NAME + "), " +
+                "(SELECT TOTAL(" + LocationEntry.COLUMN_COORD_LAT + ") FROM " + LocationEntry.TABLE_NAME + "), " +
+                "COUNT(*), TOTAL(" + WeatherEntry.COLUMN_MAX_TEMP + "), " +
+                "TOTAL(" + WeatherEntry.COLUMN_MIN_TEMP + "), TOTAL(" + WeatherEntry.COLUMN_WEATHER_ID + "), " +
+                "TOTAL(" + WeatherEntry.COLUMN_DATE + " / 1000) FROM " + WeatherEntry.TABLE_NAME, null);
+        try {
+            assertTrue(c.moveToFirst());
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < c.getColumnCount(); i++) {
+                sb.append(c.getString(i)).append('|');
+            }
+            return sb.toString();
+        } finally {
+            c.close();
+        }
+    }
+
+    /*
+        Every table, index and trigger in the database, keyed by name.
+     */
+    private static Map<String, String> schema(SQLiteDatabase db) {
+        Map<String, String> schema = new HashMap<String, String>();
+        Cursor c = db.rawQuery("SELECT name, sql FROM sqlite_master " +
+                "WHERE sql NOT NULL AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'",
+                null);
+        try {
+            while (c.moveToNext()) {
+                schema.put(c.getString(0), c.getString(1));
+            }
+        } finally {
+            c.close();
+        }
+        return schema;
+    }
+
+    /*
+        Every weather row has the Julian day of its date, whoever wrote it.
+     */
+    private static void assertJulianDays(SQLiteDatabase db) {
+        Cursor c = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_JULIAN_DAY},
+                null, null, null, null, null, null);
+        try {
+            assertTrue(c.getCount() > 0);
+            while (c.moveToNext()) {
+                assertFalse("Error: A weather row has no Julian day", c.isNull(1));
+                assertEquals("Error: Wrong Julian day for date " + c.getLong(0),
+                        WeatherContract.getJulianDay(c.getLong(0)), c.getInt(1));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    private Map<String, String> freshSchema() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        Map<String, String> schema = schema(helper.getWritableDatabase());
+        helper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        return schema;
+    }
+
+    public void testUpgradeFromEveryVersionKeepsData() {
+        Map<String, String> expectedSchema = freshSchema();
+
+        for (int version = WeatherDbMigrations.BASE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            SQLiteDatabase old = createDatabaseAtVersion(version);
+            fill(old);
+            String before = fingerprint(old);
+            old.close();
+
+            long start = SystemClock.elapsedRealtime();
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = helper.getWritableDatabase();
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            Log.d(LOG_TAG, "Upgrade from version " + version + " with " + LOCATIONS * DAYS
+                    + " weather rows took " + elapsed + "ms");
+
+            assertEquals("Error: Upgrade did not reach the current version",
+                    WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+            assertEquals("Error: Upgrade from version " + version + " lost or changed rows",
+                    before, fingerprint(db));
+            assertEquals("Error: Upgrade from version " + version +
+                    " doesn't match a freshly created schema", expectedSchema, schema(db));
+            assertJulianDays(db);
+            helper.close();
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        }
+    }
+
+    public void testUnknownOldVersionIsRebuilt() {
+        Map<String, String> expectedSchema = freshSchema();
+
+        SQLiteDatabase old = openRawDatabase();
+        old.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (_id INTEGER PRIMARY KEY)");
+        old.setVersion(WeatherDbMigrations.BASE_VERSION - 1);
+        old.close();
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals(expectedSchema, schema(db));
+        helper.close();
+    }
+
+    public void testRowsWrittenWithoutJulianDayGetOne() {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        fill(db);
+        assertJulianDays(db);
+
+        // The forecast table copies the day as well, so the row is found by day queries.
+        Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + WeatherContract.ForecastEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_JULIAN_DAY + " IS NULL", null);
+        try {
+            assertTrue(c.moveToFirst());
+            assertEquals("Error: A forecast row has no Julian day", 0, c.getInt(0));
+        } finally {
+            c.close();
+        }
+
+        ContentValues moved = new ContentValues();
+        moved.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE - 400 * DAY_IN_MILLIS);
+        db.update(WeatherEntry.TABLE_NAME, moved, WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)});
+        assertJulianDays(db);
+        helper.close();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/*
+    Tests that the forecast table answers weather/{location} queries exactly as the join does
+    through every kind of write, and compares the latency of both at 1 to 1000 locations.
+ */
+public class TestForecastReadModel extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastReadModel.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int[] BENCHMARK_LOCATIONS = {1, 10, 100, 1000};
+    private static final int BENCHMARK_QUERIES = 200;
+
+    // What the forecast list asks for.
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private ContentProviderClient mClient;
+    private WeatherProvider mProvider;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mProvider = (WeatherProvider) mClient.getLocalContentProvider();
+        mProvider.getQueryCache().setEnabled(false);
+
+        mDates = new long[DAYS];
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mProvider.setReadModelEnabled(true);
+        mProvider.getQueryCache().setEnabled(true);
+        mClient.release();
+        super.tearDown();
+    }
+
+    private List<String> rows(boolean readModel, Uri uri) {
+        mProvider.setReadModelEnabled(readModel);
+        Cursor cursor = mContext.getContentResolver().query(uri, FORECAST_COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        List<String> rows = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                row.append(cursor.getColumnName(i)).append('=').append(cursor.getString(i)).append(' ');
+            }
+            rows.add(row.toString());
+        }
+        cursor.close();
+        return rows;
+    }
+
+    private void assertSameAsJoin(String message) {
+        Uri[] uris = {
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, mDates[3]),
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, mDates[5])
+        };
+        for (Uri uri : uris) {
+            assertEquals("Error: " + message + " for " + uri, rows(false, uri), rows(true, uri));
+        }
+    }
+
+    private ContentValues[] weather(long locationId, double maxTemp) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, mDates[i]);
+            // The provider fills this in, but the benchmark writes straight to the database.
+            values[i].put(WeatherEntry.COLUMN_JULIAN_DAY, WeatherContract.getJulianDay(mDates[i]));
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp + i);
+        }
+        return values;
+    }
+
+    public void testReadModelFollowsWrites() {
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather(locationId, 10));
+        assertEquals(DAYS, rows(true,
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION)).size());
+        assertSameAsJoin("Inserted rows differ");
+
+        // The sync writes the same days again every time, which the weather table replaces.
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weather(locationId, 20));
+        assertSameAsJoin("Replaced rows differ");
+
+        ContentValues update = new ContentValues();
+        update.put(WeatherEntry.COLUMN_SHORT_DESC, "Hail");
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, update,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(mDates[5])});
+        assertSameAsJoin("Updated weather differs");
+
+        update = new ContentValues();
+        update.put(LocationEntry.COLUMN_COORD_LAT, 12.5);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, update, null, null);
+        assertSameAsJoin("Updated location differs");
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " < ?", new String[]{Long.toString(mDates[4])});
+        assertSameAsJoin("Deleted rows differ");
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        assertEquals(0, rows(true,
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION)).size());
+    }
+
+    public void testBenchmarkJoinVersusReadModel() {
+        int stored = 0;
+        for (int locations : BENCHMARK_LOCATIONS) {
+            stored = insertLocations(stored, locations);
+            long join = time(false, locations);
+            long readModel = time(true, locations);
+            Log.d(LOG_TAG, locations + " locations, " + locations * DAYS + " weather rows: join="
+                    + join + "us forecast table=" + readModel + "us per query");
+        }
+    }
+
+    // Adds locations with a forecast each until there are the given number, in one transaction.
+    private int insertLocations(int from, int to) {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = from; i < to; i++) {
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+                for (ContentValues day : weather(locationId, i % 30)) {
+                    db.insert(WeatherEntry.TABLE_NAME, null, day);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        helper.close();
+        return to;
+    }
+
+    // Average microseconds to read the forecast list of one of the stored locations.
+    private long time(boolean readModel, int locations) {
+        mProvider.setReadModelEnabled(readModel);
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithStartDate("loc" + (i % locations), mDates[0]),
+                    FORECAST_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(DAYS, cursor.getCount());
+            cursor.close();
+        }
+        return (System.nanoTime() - start) / BENCHMARK_QUERIES / 1000;
+    }
+}
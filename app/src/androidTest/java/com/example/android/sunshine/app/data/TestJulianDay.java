@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests the Julian day arithmetic against android.text.format.Time and Calendar, checks that it
+    doesn't allocate, and measures insert and query throughput with day numbers.
+ */
+public class TestJulianDay extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestJulianDay.class.getSimpleName();
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000L;
+    private static final int BENCHMARK_NORMALIZATIONS = 100000;
+    private static final int BENCHMARK_DAYS = 365;
+    private static final int BENCHMARK_QUERIES = 500;
+
+    // What normalizeDate did before: a Time per call.
+    private static long normalizeWithTime(long date) {
+        Time time = new Time();
+        time.set(date);
+        int julianDay = Time.getJulianDay(date, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    public void testMatchesTime() {
+        // Every few hours over two years, which takes in both clock changes of each year.
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2014, Calendar.JANUARY, 1, 0, 0, 0);
+        long end = calendar.getTimeInMillis() + 2 * 366 * 24 * HOUR_IN_MILLIS;
+        for (long millis = calendar.getTimeInMillis(); millis < end; millis += 5 * HOUR_IN_MILLIS) {
+            Time time = new Time();
+            time.set(millis);
+            assertEquals("Error: Wrong day for " + millis,
+                    Time.getJulianDay(millis, time.gmtoff), WeatherContract.getJulianDay(millis));
+            assertEquals("Error: Wrong start of day for " + millis,
+                    normalizeWithTime(millis), WeatherContract.normalizeDate(millis));
+        }
+    }
+
+    public void testTodayAndDayOfWeek() {
+        Time now = new Time();
+        now.setToNow();
+        assertEquals("Error: Wrong day for today",
+                Time.getJulianDay(System.currentTimeMillis(), now.gmtoff),
+                WeatherContract.getTodayJulianDay());
+        // Cached the second time round, and still the same.
+        assertEquals(WeatherContract.getJulianDay(System.currentTimeMillis()),
+                WeatherContract.getTodayJulianDay());
+        WeatherContract.onDateChanged();
+        assertEquals(WeatherContract.getJulianDay(System.currentTimeMillis()),
+                WeatherContract.getTodayJulianDay());
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2014, Calendar.JANUARY, 1, 12, 0, 0);
+        for (int i = 0; i < 2 * 366; i++) {
+            long millis = calendar.getTimeInMillis();
+            assertEquals("Error: Wrong day of the week for " + millis,
+                    calendar.get(Calendar.DAY_OF_WEEK),
+                    WeatherContract.getDayOfWeek(WeatherContract.getJulianDay(millis)));
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        Time time = new Time();
+        time.set(calendar.getTimeInMillis());
+        assertEquals(Time.getJulianDay(calendar.getTimeInMillis(), time.gmtoff),
+                WeatherContract.getJulianDay(calendar.getTimeInMillis(), (int) time.gmtoff * 1000));
+    }
+
+    // What a forecast row bind works out about its date: its day, today, and its weekday.
+    @SuppressWarnings("deprecation")
+    public void testBenchmarkDayMathAllocations() {
+        long base = System.currentTimeMillis();
+        // Warm up, so that today is cached.
+        WeatherContract.getTodayJulianDay();
+
+        long sum = 0;
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_NORMALIZATIONS; i++) {
+            int julianDay = WeatherContract.getJulianDay(base + (i % 14) * 24 * HOUR_IN_MILLIS);
+            sum += julianDay - WeatherContract.getTodayJulianDay();
+            sum += WeatherContract.getDayOfWeek(julianDay);
+            sum += WeatherContract.getStartOfJulianDay(julianDay);
+        }
+        long arithmetic = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_NORMALIZATIONS; i++) {
+            // What Utility did for every row before.
+            Time time = new Time();
+            time.setToNow();
+            int julianDay = Time.getJulianDay(base + (i % 14) * 24 * HOUR_IN_MILLIS, time.gmtoff);
+            sum += julianDay - Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        }
+        long withTime = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, "Day math for " + BENCHMARK_NORMALIZATIONS + " rows: arithmetic="
+                + arithmetic / 1000000 + "ms with " + allocations + " allocations, Time="
+                + withTime / 1000000 + "ms (checksum " + sum + ")");
+        assertEquals("Error: The day math allocated", 0, allocations);
+    }
+
+    public void testBenchmarkNormalize() {
+        long base = System.currentTimeMillis();
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_NORMALIZATIONS; i++) {
+            sum += normalizeWithTime(base + i * HOUR_IN_MILLIS);
+        }
+        long time = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_NORMALIZATIONS; i++) {
+            sum -= WeatherContract.normalizeDate(base + i * HOUR_IN_MILLIS);
+        }
+        long arithmetic = System.nanoTime() - start;
+        assertEquals(0, sum);
+
+        Log.d(LOG_TAG, "Normalizing " + BENCHMARK_NORMALIZATIONS + " dates: Time="
+                + time / 1000000 + "ms arithmetic=" + arithmetic / 1000000 + "ms");
+    }
+
+    public void testBenchmarkInsertAndQuery() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        long[] dates = new long[BENCHMARK_DAYS];
+        ContentValues[] values = new ContentValues[BENCHMARK_DAYS];
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < BENCHMARK_DAYS; i++) {
+            // Not normalized, so the provider has to do it for every row.
+            dates[i] = calendar.getTimeInMillis();
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, dates[i]);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        long start = System.nanoTime();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        long insert = System.nanoTime() - start;
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherQueryCache cache = ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        cache.setEnabled(false);
+        try {
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+                Cursor cursor = mContext.getContentResolver().query(
+                        WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                                dates[i % BENCHMARK_DAYS]),
+                        new String[]{WeatherEntry.COLUMN_DATE}, null, null, null);
+                assertEquals(1, cursor.getCount());
+                cursor.close();
+            }
+            long query = System.nanoTime() - start;
+
+            Log.d(LOG_TAG, "Inserted " + BENCHMARK_DAYS + " days in " + insert / 1000000
+                    + "ms (" + BENCHMARK_DAYS * 1000000000L / insert + " rows/s), queried one day "
+                    + BENCHMARK_QUERIES + " times at " + BENCHMARK_QUERIES * 1000000000L / query
+                    + " queries/s");
+        } finally {
+            cache.setEnabled(true);
+            client.release();
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+            mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        }
+    }
+}
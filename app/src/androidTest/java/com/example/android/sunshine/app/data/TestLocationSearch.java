@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Tests the ranking of location/search, and measures the latency of one lookup per keystroke
+    over 50k stored locations.
+ */
+public class TestLocationSearch extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationSearch.class.getSimpleName();
+
+    private static final int BENCHMARK_LOCATIONS = 50000;
+    private static final int BENCHMARK_NAMES_TYPED = 20;
+
+    private static final String[] SYLLABLES = {
+            "an", "ber", "ca", "del", "es", "fon", "gra", "ham", "is", "ka", "lin", "mor",
+            "nor", "o", "pa", "quin", "ros", "san", "ter", "ul", "ven", "wes", "yor", "zu"
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private void insertLocation(String locationSetting, String cityName) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 0.0);
+        values.put(LocationEntry.COLUMN_COORD_LONG, 0.0);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+    }
+
+    private List<String> search(String query) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationSearch(query),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        List<String> settings = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            settings.add(cursor.getString(0));
+        }
+        cursor.close();
+        return settings;
+    }
+
+    public void testSearchRanking() {
+        insertLocation("94043", "Mountain View");
+        insertLocation("sao paulo,br", "São Paulo");
+        insertLocation("new york", "New York City");
+        insertLocation("york,uk", "York");
+        insertLocation("10001", "New Paltz");
+
+        assertEquals(Arrays.asList("94043"), search("mount"));
+        assertEquals(Arrays.asList("94043"), search("9404"));
+        // Accents and punctuation don't matter.
+        assertEquals(Arrays.asList("sao paulo,br"), search("Sao"));
+        assertEquals(Arrays.asList("sao paulo,br"), search("são-pau"));
+        // An exact match beats a later word of a longer name.
+        assertEquals(Arrays.asList("york,uk", "new york"), search("york"));
+        // The rest of a name is searchable from any of its words.
+        assertEquals(Arrays.asList("new york"), search("york ci"));
+        // Equally good matches come shortest name first.
+        assertEquals(Arrays.asList("10001", "new york"), search("new"));
+        assertEquals(0, search("").size());
+        assertEquals(0, search("  ").size());
+    }
+
+    public void testSearchOtherScripts() {
+        insertLocation("moscow,ru", "Москва");
+        insertLocation("tokyo,jp", "東京都");
+        insertLocation("athens,gr", "Αθήνα");
+
+        assertEquals(Arrays.asList("moscow,ru"), search("моск"));
+        assertEquals(Arrays.asList("tokyo,jp"), search("東京"));
+        // Accents are stripped from every script, not just the Latin one.
+        assertEquals(Arrays.asList("athens,gr"), search("αθηνα"));
+        // Punctuation alone still matches nothing.
+        assertEquals(0, search("—").size());
+    }
+
+    public void testIndexFollowsWrites() {
+        insertLocation("york,uk", "York");
+
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Eboracum");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values,
+                LocationEntry.COLUMN_CITY_NAME + " = ?", new String[]{"York"});
+        assertEquals(Arrays.asList("york,uk"), search("ebor"));
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        assertEquals(0, search("ebor").size());
+        assertEquals(0, search("york").size());
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        int words = 1 + random.nextInt(2);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) name.append(' ');
+            int start = name.length();
+            int syllables = 2 + random.nextInt(3);
+            for (int i = 0; i < syllables; i++) {
+                name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+        }
+        return name.toString();
+    }
+
+    public void testBenchmarkKeystrokes() {
+        Random random = new Random(31);
+        List<String> names = new ArrayList<>();
+
+        // Written straight to the database in one transaction; going through the provider would
+        // mean 50k separate transactions.
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < BENCHMARK_LOCATIONS; i++) {
+                String name = randomName(random);
+                String setting = "loc" + i;
+                values.put(LocationEntry.COLUMN_LOCATION_SETTING, setting);
+                values.put(LocationEntry.COLUMN_CITY_NAME, name);
+                values.put(LocationEntry.COLUMN_COORD_LAT, 0.0);
+                values.put(LocationEntry.COLUMN_COORD_LONG, 0.0);
+                long id = db.insert(LocationEntry.TABLE_NAME, null, values);
+                LocationSearchIndex.index(db, id, name, setting);
+                if (i < BENCHMARK_NAMES_TYPED) names.add(name);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        helper.close();
+
+        // Time the index, not the query cache.
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherQueryCache cache = ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        cache.setEnabled(false);
+        try {
+            long total = 0;
+            long worst = 0;
+            int keystrokes = 0;
+            for (String name : names) {
+                for (int length = 1; length <= name.length(); length++) {
+                    long start = System.nanoTime();
+                    List<String> matches = search(name.substring(0, length));
+                    long elapsed = System.nanoTime() - start;
+                    assertFalse("Error: No match for a prefix of " + name, matches.isEmpty());
+                    total += elapsed;
+                    worst = Math.max(worst, elapsed);
+                    keystrokes++;
+                }
+            }
+            Log.d(LOG_TAG, "Search over " + BENCHMARK_LOCATIONS + " locations, " + keystrokes
+                    + " keystrokes: average=" + (total / keystrokes / 1000) + "us worst="
+                    + (worst / 1000) + "us");
+        } finally {
+            cache.setEnabled(true);
+            client.release();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Tests the location/near uri against a linear scan of the location table, and compares the
+    lookup latency of both at 10k and 100k stored locations.
+ */
+public class TestNearbyLocations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNearbyLocations.class.getSimpleName();
+
+    private static final int LIMIT = 10;
+    private static final double TEST_RADIUS_KM = 300;
+    private static final double BENCHMARK_RADIUS_KM = 100;
+    private static final int INDEXED_LOOKUPS = 200;
+    private static final int SCAN_LOOKUPS = 10;
+
+    private static final String[] SCAN_COLUMNS = {
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private final Random mRandom = new Random(30);
+    private ContentProviderClient mClient;
+    private WeatherQueryCache mCache;
+    private int mLocationCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        // The rows are written straight to the database below, behind the provider's back, so
+        // keep its query cache out of the way.
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mCache = ((WeatherProvider) mClient.getLocalContentProvider()).getQueryCache();
+        mCache.setEnabled(false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mCache.setEnabled(true);
+        mClient.release();
+        super.tearDown();
+    }
+
+    // Adds locations spread evenly over the inhabited latitudes.
+    private void insertRandomLocations(int count) {
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < count; i++, mLocationCount++) {
+                values.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + mLocationCount);
+                values.put(LocationEntry.COLUMN_CITY_NAME, "City " + mLocationCount);
+                values.put(LocationEntry.COLUMN_COORD_LAT, -60 + mRandom.nextDouble() * 140);
+                values.put(LocationEntry.COLUMN_COORD_LONG, -180 + mRandom.nextDouble() * 360);
+                db.insert(LocationEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        helper.close();
+    }
+
+    private List<String> queryNear(double lat, double lon, double radiusKm) {
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationNear(lat, lon, radiusKm, LIMIT),
+                new String[]{LocationEntry.COLUMN_LOCATION_SETTING}, null, null, null);
+        List<String> settings = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            settings.add(cursor.getString(0));
+        }
+        cursor.close();
+        return settings;
+    }
+
+    // What a caller would have to do without the index: read every location and measure.
+    private List<String> scanNear(final double lat, final double lon, double radiusKm) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                SCAN_COLUMNS, null, null, null);
+        final List<String> settings = new ArrayList<>();
+        final List<Double> distances = new ArrayList<>();
+        double cosLat = Math.cos(Math.toRadians(lat));
+        while (cursor.moveToNext()) {
+            double dLat = cursor.getDouble(1) - lat;
+            double absDLon = Math.abs(cursor.getDouble(2) - lon);
+            double dLon = Math.min(absDLon, 360 - absDLon) * cosLat;
+            double distanceSq = (dLat * dLat + dLon * dLon)
+                    * NearbyLocations.KM_PER_DEGREE * NearbyLocations.KM_PER_DEGREE;
+            if (distanceSq <= radiusKm * radiusKm) {
+                settings.add(cursor.getString(0));
+                distances.add(distanceSq);
+            }
+        }
+        cursor.close();
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < settings.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(distances.get(a), distances.get(b));
+            }
+        });
+        List<String> closest = new ArrayList<>();
+        for (int i = 0; i < order.size() && i < LIMIT; i++) {
+            closest.add(settings.get(order.get(i)));
+        }
+        return closest;
+    }
+
+    public void testNearMatchesLinearScan() {
+        insertRandomLocations(10000);
+
+        // Random points, plus the awkward ones: across the antimeridian and close to a pole.
+        double[][] points = new double[23][];
+        points[0] = new double[]{10, 179.9};
+        points[1] = new double[]{-20, -179.5};
+        points[2] = new double[]{88, 20};
+        for (int i = 3; i < points.length; i++) {
+            points[i] = new double[]{-60 + mRandom.nextDouble() * 140, -180 + mRandom.nextDouble() * 360};
+        }
+
+        for (double[] point : points) {
+            assertEquals("Error: Nearby locations don't match for " + point[0] + "," + point[1],
+                    scanNear(point[0], point[1], TEST_RADIUS_KM),
+                    queryNear(point[0], point[1], TEST_RADIUS_KM));
+        }
+    }
+
+    public void testNearRejectsBadParameters() {
+        String[] bad = {"lon=10", "lat=&lon=10", "lat=north&lon=10", "lat=NaN&lon=10",
+                "lat=91&lon=10", "lat=10", "lat=10&lon=-180.5",
+                "lat=10&lon=10&radius=far", "lat=10&lon=10&radius=-1",
+                "lat=10&lon=10&radius=NaN", "lat=10&lon=10&radius=Infinity",
+                "lat=10&lon=10&limit=ten", "lat=10&lon=10&limit=0", "lat=10&lon=10&limit=-5",
+                "lat=10&lon=10&limit=2.5"};
+        for (String query : bad) {
+            Uri uri = LocationEntry.CONTENT_URI.buildUpon().appendPath(WeatherContract.PATH_NEAR)
+                    .encodedQuery(query).build();
+            try {
+                Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+                if (cursor != null) {
+                    cursor.close();
+                }
+                fail("Error: location/near accepted " + query);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    public void testBenchmarkNearVersusScan() {
+        insertRandomLocations(10000);
+        benchmark();
+        insertRandomLocations(90000);
+        benchmark();
+    }
+
+    private void benchmark() {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < INDEXED_LOOKUPS; i++) {
+            queryNear(-60 + mRandom.nextDouble() * 140, -180 + mRandom.nextDouble() * 360,
+                    BENCHMARK_RADIUS_KM);
+        }
+        double indexed = (SystemClock.elapsedRealtime() - start) / (double) INDEXED_LOOKUPS;
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < SCAN_LOOKUPS; i++) {
+            scanNear(-60 + mRandom.nextDouble() * 140, -180 + mRandom.nextDouble() * 360,
+                    BENCHMARK_RADIUS_KM);
+        }
+        double scan = (SystemClock.elapsedRealtime() - start) / (double) SCAN_LOOKUPS;
+
+        Log.d(LOG_TAG, "Nearby lookup over " + mLocationCount + " locations: indexed="
+                + indexed + "ms linear scan=" + scan + "ms per lookup");
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Tests the provider metrics exposed through call() and measures what recording them costs.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class TestProviderMetrics extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestProviderMetrics.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_ROUNDS = 5;
+    private static final int BENCHMARK_ITERATIONS = 2000;
+
+    private ContentProviderClient mClient;
+    private ProviderMetrics mMetrics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mMetrics = ((WeatherProvider) mClient.getLocalContentProvider()).getMetrics();
+        mMetrics.setEnabled(true);
+
+        long locationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + i * 1000L * 60 * 60 * 24);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mMetrics.setEnabled(true);
+        mClient.release();
+        super.tearDown();
+    }
+
+    private Bundle listQueryMetrics() {
+        Bundle snapshot = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_METRICS, null, null);
+        assertNotNull(snapshot.getBundle(WeatherContract.EXTRA_METRICS_CALLERS));
+        Bundle values = snapshot.getBundle("query weather/*");
+        return values != null ? values : new Bundle();
+    }
+
+    private int queryList() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testQueriesAreCounted() {
+        Bundle before = listQueryMetrics();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(DAYS, queryList());
+        }
+        Bundle after = listQueryMetrics();
+
+        assertEquals(before.getLong(WeatherContract.EXTRA_METRICS_COUNT) + 5,
+                after.getLong(WeatherContract.EXTRA_METRICS_COUNT));
+        assertEquals(before.getLong(WeatherContract.EXTRA_METRICS_ROWS) + 5 * DAYS,
+                after.getLong(WeatherContract.EXTRA_METRICS_ROWS));
+
+        long histogramTotal = 0;
+        for (long bucket : after.getLongArray(WeatherContract.EXTRA_METRICS_HISTOGRAM)) {
+            histogramTotal += bucket;
+        }
+        assertEquals(after.getLong(WeatherContract.EXTRA_METRICS_COUNT), histogramTotal);
+        assertTrue(after.getLong(WeatherContract.EXTRA_METRICS_P50_US)
+                <= after.getLong(WeatherContract.EXTRA_METRICS_P99_US));
+    }
+
+    public void testBenchmarkOverhead() {
+        // Cached queries are the cheapest calls the provider serves, so they show the overhead
+        // at its largest.  Rounds alternate so that warm-up and background noise hit both.
+        long plain = 0;
+        long instrumented = 0;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            plain += timeQueries(false);
+            instrumented += timeQueries(true);
+        }
+        long calls = (long) BENCHMARK_ROUNDS * BENCHMARK_ITERATIONS;
+        // Logged, not asserted: on a busy device the noise is larger than the overhead itself.
+        long overheadNs = (instrumented - plain) / calls;
+        Log.d(LOG_TAG, "Cached list query x" + calls + ": uninstrumented=" + plain / 1000000
+                + "ms instrumented=" + instrumented / 1000000 + "ms overhead=" + overheadNs
+                + "ns per call");
+    }
+
+    private long timeQueries(boolean enabled) {
+        mMetrics.setEnabled(enabled);
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            queryList();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests the METHOD_TODAY record through writes, and compares its latency and allocations with
+    reading the same row through a cursor.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class TestTodayWeather extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestTodayWeather.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_CALLS = 1000;
+
+    private ContentProviderClient mClient;
+    private WeatherQueryCache mCache;
+    private long mLocationId;
+    private long[] mDates;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mCache = ((WeatherProvider) mClient.getLocalContentProvider()).getQueryCache();
+
+        mDates = new long[DAYS];
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mCache.setEnabled(true);
+        mClient.release();
+        super.tearDown();
+    }
+
+    private void insertWeather(int firstDay, double maxTemp) {
+        ContentValues[] values = new ContentValues[DAYS - firstDay];
+        for (int i = firstDay; i < DAYS; i++) {
+            values[i - firstDay] = TestUtilities.createWeatherValues(mLocationId);
+            values[i - firstDay].put(WeatherEntry.COLUMN_DATE, mDates[i]);
+            values[i - firstDay].put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp + i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private TodayWeather today() {
+        return TodayWeather.load(mContext.getContentResolver(), TestUtilities.TEST_LOCATION);
+    }
+
+    public void testTodayFollowsWrites() {
+        assertNull("Error: A record with nothing stored", today());
+
+        insertWeather(0, 10);
+        TodayWeather today = today();
+        assertNotNull("Error: No record after the sync", today);
+        assertEquals(mDates[0], today.getDate());
+        assertTrue(today.isToday());
+        assertEquals(10.0, today.getMaxTemp());
+        ContentValues expected = TestUtilities.createWeatherValues(mLocationId);
+        assertEquals((int) expected.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID), today.getWeatherId());
+        assertEquals(expected.getAsString(WeatherEntry.COLUMN_SHORT_DESC), today.getShortDesc());
+        assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP), today.getMinTemp());
+        assertEquals(TestUtilities.TEST_LOCATION, today.getLocationSetting());
+        assertEquals(TestUtilities.createNorthPoleLocationValues()
+                .getAsString(LocationEntry.COLUMN_CITY_NAME), today.getCityName());
+
+        // The next sync replaces the days.
+        insertWeather(0, 20);
+        assertEquals("Error: The record missed a bulk insert", 20.0, today().getMaxTemp());
+
+        ContentValues update = new ContentValues();
+        update.put(WeatherEntry.COLUMN_SHORT_DESC, "Hail");
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, update, null, null);
+        assertEquals("Error: The record missed an update", "Hail", today().getShortDesc());
+
+        // Without today's row the record is the first day after it, as the widget showed.
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(mDates[0])});
+        assertEquals("Error: The record missed a delete", mDates[1], today().getDate());
+        assertFalse("Error: Tomorrow taken for today", today().isToday());
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertNull("Error: A record after every day was deleted", today());
+    }
+
+    public void testTodayWithoutReadModel() {
+        insertWeather(0, 10);
+        WeatherProvider provider = (WeatherProvider) mClient.getLocalContentProvider();
+        provider.setReadModelEnabled(false);
+        try {
+            // A write moves the record on, so it is read again from the join.
+            insertWeather(0, 30);
+            TodayWeather today = today();
+            assertNotNull("Error: No record from the join", today);
+            assertEquals(mDates[0], today.getDate());
+            assertEquals(30.0, today.getMaxTemp());
+            assertEquals(TestUtilities.TEST_LOCATION, today.getLocationSetting());
+        } finally {
+            provider.setReadModelEnabled(true);
+        }
+    }
+
+    public void testBenchmarkCallVersusCursor() {
+        insertWeather(0, 10);
+        String[] projection = TodayWeather.PROJECTION;
+
+        long call = timeCalls();
+        int[] callAllocs = countAllocations(true);
+
+        long cachedQuery = timeQueries(projection);
+        int[] cachedQueryAllocs = countAllocations(false);
+
+        mCache.setEnabled(false);
+        long query = timeQueries(projection);
+        int[] queryAllocs = countAllocations(false);
+
+        Log.d(LOG_TAG, "Today's weather, per read: call=" + call + "us (" + callAllocs[0]
+                + " objects, " + callAllocs[1] + " bytes) cached query=" + cachedQuery + "us ("
+                + cachedQueryAllocs[0] + " objects, " + cachedQueryAllocs[1] + " bytes) query="
+                + query + "us (" + queryAllocs[0] + " objects, " + queryAllocs[1] + " bytes)");
+    }
+
+    private Cursor queryToday(String[] projection) {
+        return mContext.getContentResolver().query(WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, System.currentTimeMillis(), 1),
+                projection, null, null, null);
+    }
+
+    // Average microseconds to read the record through call().
+    private long timeCalls() {
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            assertNotNull(today());
+        }
+        return (System.nanoTime() - start) / BENCHMARK_CALLS / 1000;
+    }
+
+    // Average microseconds to read the same row through a cursor.
+    private long timeQueries(String[] projection) {
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            Cursor cursor = queryToday(projection);
+            assertTrue(cursor.moveToFirst());
+            TodayWeather.fromCursor(cursor);
+            cursor.close();
+        }
+        return (System.nanoTime() - start) / BENCHMARK_CALLS / 1000;
+    }
+
+    // Objects and bytes allocated on this thread per read.
+    @SuppressWarnings("deprecation")
+    private int[] countAllocations(boolean call) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            if (call) {
+                today();
+            } else {
+                Cursor cursor = queryToday(TodayWeather.PROJECTION);
+                cursor.moveToFirst();
+                TodayWeather.fromCursor(cursor);
+                cursor.close();
+            }
+        }
+        Debug.stopAllocCounting();
+        return new int[]{Debug.getThreadAllocCount() / BENCHMARK_CALLS,
+                Debug.getThreadAllocSize() / BENCHMARK_CALLS};
+    }
+}
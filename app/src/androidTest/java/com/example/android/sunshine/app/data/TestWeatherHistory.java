@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests rolling old weather up into weekly and monthly history, and simulates a year of daily
+    syncs with and without compaction.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class TestWeatherHistory extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherHistory.class.getSimpleName();
+
+    private static final int SYNC_DAYS = 14;
+    private static final int SIMULATED_DAYS = 365;
+    private static final int LIST_QUERY_ITERATIONS = 100;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(HistoryEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationId = ContentUris.parseId(uri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(HistoryEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    // Local midnight at the start of the week holding March 2nd, 2015.
+    private static Calendar startOfWeek() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2015, Calendar.MARCH, 2, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        int daysIntoWeek = (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -daysIntoWeek);
+        return calendar;
+    }
+
+    private ContentValues[] createDays(Calendar start, int days) {
+        Calendar calendar = (Calendar) start.clone();
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, calendar.getTimeInMillis());
+            values[i].put(WeatherEntry.COLUMN_MIN_TEMP, 40 + i);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 60 + i);
+            // One rainy day a week, clear skies otherwise.
+            values[i].put(WeatherEntry.COLUMN_WEATHER_ID, i % 7 == 0 ? 500 : 800);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return values;
+    }
+
+    private int compact(long now) {
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_COMPACT_HISTORY, Long.toString(now), null);
+        return result.getInt(WeatherContract.EXTRA_COMPACTED_PERIODS);
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testCompactionRollsUpCompleteWeeks() {
+        Calendar start = startOfWeek();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createDays(start, 21));
+
+        // Three weeks of raw rows, the last of which is just about to leave the raw window.
+        Calendar now = (Calendar) start.clone();
+        now.add(Calendar.DAY_OF_MONTH, 21 + WeatherHistoryCompactor.RAW_HISTORY_DAYS);
+
+        assertEquals("Error: Wrong number of weeks compacted", 3, compact(now.getTimeInMillis()));
+        assertEquals("Error: Raw rows were left behind", 0, count(WeatherEntry.CONTENT_URI));
+        assertEquals("Error: Nothing left to compact", 0, compact(now.getTimeInMillis()));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                HistoryEntry.buildHistoryLocationWithPeriod(TestUtilities.TEST_LOCATION,
+                        HistoryEntry.PERIOD_WEEK), null, null, null, null);
+        assertEquals("Error: Wrong number of weekly rows", 3, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(start.getTimeInMillis(),
+                cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_PERIOD_START)));
+        assertEquals(7, cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_DAY_COUNT)));
+        assertEquals(40.0, cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MIN_TEMP)));
+        assertEquals(66.0, cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MAX_TEMP)));
+        assertEquals(43.0, cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_AVG_MIN_TEMP)));
+        assertEquals(800, cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_WEATHER_ID)));
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_RAIN_DAYS)));
+        assertEquals(6, cursor.getInt(cursor.getColumnIndex(HistoryEntry.COLUMN_CLEAR_DAYS)));
+        cursor.close();
+    }
+
+    public void testCompactionKeepsRecentDays() {
+        Calendar start = startOfWeek();
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createDays(start, 14));
+
+        // The second week still has a day inside the raw window, so only the first one goes.
+        Calendar now = (Calendar) start.clone();
+        now.add(Calendar.DAY_OF_MONTH, 13 + WeatherHistoryCompactor.RAW_HISTORY_DAYS);
+
+        assertEquals(1, compact(now.getTimeInMillis()));
+        assertEquals(7, count(WeatherEntry.CONTENT_URI));
+        assertEquals(1, count(HistoryEntry.buildHistoryLocation(TestUtilities.TEST_LOCATION)));
+    }
+
+    public void testRetentionWindow() {
+        Calendar start = startOfWeek();
+        ContentValues[] days = createDays(start, 28);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days);
+
+        // Compact once a day, as the daily sync does, until every day has been rolled up.
+        Calendar now = (Calendar) start.clone();
+        for (int day = 0; day < 42; day++, now.add(Calendar.DAY_OF_MONTH, 1)) {
+            compact(now.getTimeInMillis());
+
+            Calendar keptFrom = (Calendar) now.clone();
+            keptFrom.add(Calendar.DAY_OF_MONTH, -WeatherHistoryCompactor.RAW_HISTORY_DAYS);
+            Calendar goneBefore = (Calendar) now.clone();
+            goneBefore.add(Calendar.DAY_OF_MONTH, -WeatherHistoryCompactor.RAW_HISTORY_DAYS - 6);
+            int recent = 0;
+            for (ContentValues values : days) {
+                if (values.getAsLong(WeatherEntry.COLUMN_DATE) >= keptFrom.getTimeInMillis()) {
+                    recent++;
+                }
+            }
+
+            // The last seven days are always raw, and nothing older than thirteen days is.
+            assertEquals("Error: A recent day was rolled up on day " + day, recent,
+                    countRaw(WeatherEntry.COLUMN_DATE + " >= ?", keptFrom));
+            assertEquals("Error: An old day was left raw on day " + day, 0,
+                    countRaw(WeatherEntry.COLUMN_DATE + " < ?", goneBefore));
+        }
+        assertEquals(0, count(WeatherEntry.CONTENT_URI));
+        assertEquals(4, count(HistoryEntry.buildHistoryLocation(TestUtilities.TEST_LOCATION)));
+    }
+
+    private int countRaw(String selection, Calendar date) {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI, null,
+                selection, new String[]{Long.toString(date.getTimeInMillis())}, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testBenchmarkYearOfSyncs() {
+        String withCompaction = simulateYear(true);
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(HistoryEntry.CONTENT_URI, null, null);
+        String rawOnly = simulateYear(false);
+        Log.d(LOG_TAG, "Year of daily syncs, compacted: " + withCompaction);
+        Log.d(LOG_TAG, "Year of daily syncs, raw rows kept: " + rawOnly);
+    }
+
+    private String simulateYear(boolean compact) {
+        Calendar day = startOfWeek();
+        long syncTime = 0;
+        int compacted = 0;
+        for (int i = 0; i < SIMULATED_DAYS; i++) {
+            long start = SystemClock.elapsedRealtime();
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                    createDays(day, SYNC_DAYS));
+            if (compact) {
+                compacted += compact(day.getTimeInMillis());
+            }
+            syncTime += SystemClock.elapsedRealtime() - start;
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        // Time the list query against SQLite itself, not the query cache.
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherQueryCache cache = ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        cache.setEnabled(false);
+        Uri listUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < LIST_QUERY_ITERATIONS; i++) {
+            mContext.getContentResolver().query(listUri, null, null, null, null).close();
+        }
+        long listTime = SystemClock.elapsedRealtime() - start;
+        cache.setEnabled(true);
+        client.release();
+
+        return "weatherRows=" + count(WeatherEntry.CONTENT_URI)
+                + " historyRows=" + count(HistoryEntry.CONTENT_URI)
+                + " periodsCompacted=" + compacted
+                + " syncTime=" + syncTime + "ms"
+                + " listQuery x" + LIST_QUERY_ITERATIONS + "=" + listTime + "ms";
+    }
+}
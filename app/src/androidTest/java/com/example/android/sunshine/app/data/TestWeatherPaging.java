@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests keyset paging of the weather/{location} uri, and compares the latency and memory of the
+    first page with those of the whole forecast at 100k stored days.
+ */
+public class TestWeatherPaging extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherPaging.class.getSimpleName();
+
+    private static final int PAGE_SIZE = 20;
+    private static final int BENCHMARK_DAYS = 100000;
+    private static final int BENCHMARK_ROUNDS = 10;
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private ContentProviderClient mClient;
+    private WeatherQueryCache mCache;
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        // Rows are written straight to the database, behind the provider's back, and the
+        // benchmark should time the database rather than the query cache.
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mCache = ((WeatherProvider) mClient.getLocalContentProvider()).getQueryCache();
+        mCache.setEnabled(false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mCache.setEnabled(true);
+        mClient.release();
+        super.tearDown();
+    }
+
+    // Inserts the given number of consecutive days from TEST_DATE on, returning their dates.
+    private long[] insertDays(int days) {
+        long[] dates = new long[days];
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+            for (int i = 0; i < days; i++) {
+                dates[i] = calendar.getTimeInMillis();
+                values.put(WeatherEntry.COLUMN_DATE, dates[i]);
+                values.put(WeatherEntry.COLUMN_JULIAN_DAY, WeatherContract.getJulianDay(dates[i]));
+                values.put(WeatherEntry.COLUMN_MAX_TEMP, i % 40);
+                db.insert(WeatherEntry.TABLE_NAME, null, values);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        helper.close();
+        return dates;
+    }
+
+    private Cursor query(Uri uri) {
+        return mContext.getContentResolver().query(uri, COLUMNS, null, null, null);
+    }
+
+    public void testPagesCoverEveryDayOnce() {
+        int days = PAGE_SIZE * 4 + 7;
+        long[] dates = insertDays(days);
+
+        int seen = 0;
+        int pages = 0;
+        long after = 0;
+        while (true) {
+            Cursor cursor = query(WeatherEntry.buildWeatherLocationPage(
+                    TestUtilities.TEST_LOCATION, after, PAGE_SIZE));
+            int count = cursor.getCount();
+            assertTrue("Error: Page larger than its limit", count <= PAGE_SIZE);
+            while (cursor.moveToNext()) {
+                assertEquals("Error: Day " + seen + " out of order", dates[seen], cursor.getLong(1));
+                after = cursor.getLong(1);
+                seen++;
+            }
+            cursor.close();
+            if (count < PAGE_SIZE) break;
+            pages++;
+        }
+        assertEquals(days, seen);
+        assertEquals(days / PAGE_SIZE, pages);
+
+        // The first page from a start date begins at that day.
+        Cursor cursor = query(WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, dates[10], PAGE_SIZE));
+        assertEquals(PAGE_SIZE, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(dates[10], cursor.getLong(1));
+        cursor.close();
+
+        // Without a limit the uri still returns every day.
+        cursor = query(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        assertEquals(days, cursor.getCount());
+        cursor.close();
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    public void testBenchmarkFirstPage() {
+        long[] dates = insertDays(BENCHMARK_DAYS);
+        long lastPageAfter = dates[BENCHMARK_DAYS - PAGE_SIZE - 1];
+
+        long firstPage = 0;
+        long lastPage = 0;
+        long everything = 0;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            firstPage += time(WeatherEntry.buildWeatherLocationPage(
+                    TestUtilities.TEST_LOCATION, 0, PAGE_SIZE));
+            lastPage += time(WeatherEntry.buildWeatherLocationPage(
+                    TestUtilities.TEST_LOCATION, lastPageAfter, PAGE_SIZE));
+            everything += time(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        }
+
+        // Memory held while the cursor is open.  Cursor windows live outside the java heap, so
+        // this is the process's proportional set size.
+        long pagePss = pssWhileOpen(WeatherEntry.buildWeatherLocationPage(
+                TestUtilities.TEST_LOCATION, 0, PAGE_SIZE));
+        long everythingPss = pssWhileOpen(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+
+        Log.d(LOG_TAG, BENCHMARK_DAYS + " days: first page=" + firstPage / BENCHMARK_ROUNDS / 1000
+                + "us last page=" + lastPage / BENCHMARK_ROUNDS / 1000
+                + "us everything=" + everything / BENCHMARK_ROUNDS / 1000 + "us; memory first page="
+                + pagePss + "kB everything=" + everythingPss + "kB");
+        // A keyset page is a seek, so the last page costs about what the first one does.
+        assertTrue("Error: The last page took " + lastPage + "ns against " + everything
+                + "ns for every day", lastPage < everything);
+    }
+
+    // The time to query the uri and read every row of the result.
+    private long time(Uri uri) {
+        long start = System.nanoTime();
+        Cursor cursor = query(uri);
+        while (cursor.moveToNext()) {
+            cursor.getLong(1);
+        }
+        cursor.close();
+        return System.nanoTime() - start;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private long pssWhileOpen(Uri uri) {
+        Runtime.getRuntime().gc();
+        long before = Debug.getPss();
+        Cursor cursor = query(uri);
+        // Walk to the end so every window the cursor needs has been filled.
+        cursor.moveToLast();
+        long after = Debug.getPss();
+        cursor.close();
+        return after - before;
+    }
+}
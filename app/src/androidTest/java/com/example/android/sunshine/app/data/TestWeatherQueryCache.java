@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Tests the query result cache in WeatherProvider, and times the queries the widgets and the
+    forecast list repeat all day with the cache on and off.
+ */
+public class TestWeatherQueryCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherQueryCache.class.getSimpleName();
+
+    private static final String OTHER_LOCATION = "10001";
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_ITERATIONS = 500;
+
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String[] TODAY_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    private ContentProviderClient mClient;
+    private WeatherQueryCache mCache;
+    private long mNorthPoleId;
+    private long mOtherId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        mClient = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        mCache = ((WeatherProvider) mClient.getLocalContentProvider()).getQueryCache();
+        mCache.setEnabled(true);
+
+        mNorthPoleId = insertLocation(TestUtilities.createNorthPoleLocationValues());
+        ContentValues other = TestUtilities.createNorthPoleLocationValues();
+        other.put(LocationEntry.COLUMN_LOCATION_SETTING, OTHER_LOCATION);
+        mOtherId = insertLocation(other);
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createDays(mNorthPoleId));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createDays(mOtherId));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCache.setEnabled(true);
+        mClient.release();
+        super.tearDown();
+    }
+
+    private long insertLocation(ContentValues values) {
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private static ContentValues[] createDays(long locationRowId) {
+        ContentValues[] values = new ContentValues[DAYS];
+        long date = TestUtilities.TEST_DATE;
+        for (int i = 0; i < DAYS; i++, date += 1000 * 60 * 60 * 24) {
+            values[i] = TestUtilities.createWeatherValues(locationRowId);
+            values[i].put(WeatherEntry.COLUMN_DATE, date);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+        }
+        return values;
+    }
+
+    private int queryList(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, TestUtilities.TEST_DATE),
+                LIST_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private int queryToday(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(locationSetting, TestUtilities.TEST_DATE),
+                TODAY_COLUMNS, null, null, null);
+        int count = 0;
+        if (cursor.moveToFirst()) {
+            count = cursor.getInt(0) > 0 ? 1 : 0;
+        }
+        cursor.close();
+        return count;
+    }
+
+    public void testCachedCursorMatchesDatabase() {
+        ContentValues expected = TestUtilities.createWeatherValues(mNorthPoleId);
+        int hits = mCache.hitCount();
+
+        // The first query fills the cache, the second one is served from it.
+        for (int i = 0; i < 2; i++) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                            TestUtilities.TEST_DATE), null, null, null, null);
+            TestUtilities.validateCursor("testCachedCursorMatchesDatabase, pass " + i,
+                    cursor, expected);
+        }
+        assertEquals("Error: Second query should have been a cache hit", hits + 1,
+                mCache.hitCount());
+    }
+
+    public void testWriteOnlyInvalidatesAffectedLocation() {
+        assertEquals(DAYS, queryList(TestUtilities.TEST_LOCATION));
+        assertEquals(DAYS, queryList(OTHER_LOCATION));
+        int hits = mCache.hitCount();
+
+        // Writing weather for the other location must not drop the North Pole result.
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createDays(mOtherId));
+        assertEquals(DAYS, queryList(TestUtilities.TEST_LOCATION));
+        assertEquals("Error: Unrelated write dropped a cached result", hits + 1, mCache.hitCount());
+
+        int misses = mCache.missCount();
+        assertEquals(DAYS, queryList(OTHER_LOCATION));
+        assertEquals("Error: Write did not invalidate its own location", misses + 1,
+                mCache.missCount());
+
+        // A change to the location table drops everything.
+        ContentValues update = new ContentValues();
+        update.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, update,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mNorthPoleId)});
+        assertEquals(0, mCache.size());
+    }
+
+    public void testLocationLookupsAreNotCached() {
+        int size = mCache.size();
+        Uri[] lookups = {
+                LocationEntry.buildLocationSearch("North"),
+                LocationEntry.buildLocationNear(64.7488, -147.353, 25)
+        };
+        for (Uri lookup : lookups) {
+            for (int i = 0; i < 2; i++) {
+                Cursor cursor = mContext.getContentResolver().query(lookup, null, null, null, null);
+                assertTrue("Error: No location found for " + lookup, cursor.getCount() > 0);
+                cursor.close();
+            }
+        }
+        assertEquals("Error: A location lookup was cached", size, mCache.size());
+    }
+
+    public void testBenchmarkRepeatedQueries() {
+        long uncached = timeRepeatedQueries(false);
+        long cached = timeRepeatedQueries(true);
+        Log.d(LOG_TAG, "Repeated widget/list queries x" + BENCHMARK_ITERATIONS
+                + ": uncached=" + uncached + "ms cached=" + cached + "ms " + mCache);
+    }
+
+    private long timeRepeatedQueries(boolean enabled) {
+        mCache.setEnabled(enabled);
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            assertEquals(DAYS, queryList(TestUtilities.TEST_LOCATION));
+            assertEquals(1, queryToday(TestUtilities.TEST_LOCATION));
+        }
+        return SystemClock.elapsedRealtime() - start;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/*
+    Tests that WeatherRepository reads and writes what the ContentResolver calls do, notifies the
+    same observers, and measures what a call saves over the resolver.
+ */
+public class TestWeatherRepository extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherRepository.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_CALLS = 1000;
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private WeatherRepository mRepository;
+    private long mLocationId;
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mRepository = WeatherRepository.get(mContext);
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private ContentValues[] createDays(double maxTemp) {
+        ContentValues[] values = new ContentValues[DAYS];
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(mToday);
+        // The first day is yesterday, which the forecast from today leaves out.
+        calendar.add(Calendar.DAY_OF_MONTH, -1);
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, calendar.getTimeInMillis());
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp + i);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return values;
+    }
+
+    private Cursor queryForecast() {
+        return mContext.getContentResolver().query(WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, mToday), COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    public void testMatchesResolver() {
+        assertNull("Error: Today's weather with nothing stored",
+                mRepository.todayFor(TestUtilities.TEST_LOCATION));
+
+        assertEquals(DAYS, mRepository.upsertForecast(createDays(10)));
+        // Upserting the same days again replaces them.
+        assertEquals(DAYS, mRepository.upsertForecast(createDays(20)));
+
+        Cursor expected = queryForecast();
+        Cursor actual = mRepository.forecast(TestUtilities.TEST_LOCATION, mToday, COLUMNS);
+        assertEquals(DAYS - 1, expected.getCount());
+        assertEquals(expected.getCount(), actual.getCount());
+        while (expected.moveToNext()) {
+            assertTrue(actual.moveToNext());
+            String where = " of row " + expected.getPosition();
+            assertEquals("Error: id" + where, expected.getLong(0), actual.getLong(0));
+            assertEquals("Error: date" + where, expected.getLong(1), actual.getLong(1));
+            assertEquals("Error: weather id" + where, expected.getInt(2), actual.getInt(2));
+            assertEquals("Error: description" + where, expected.getString(3), actual.getString(3));
+            assertEquals("Error: max" + where, expected.getDouble(4), actual.getDouble(4));
+            assertEquals("Error: min" + where, expected.getDouble(5), actual.getDouble(5));
+        }
+        expected.close();
+        actual.close();
+
+        TodayWeather today = mRepository.todayFor(TestUtilities.TEST_LOCATION);
+        TodayWeather loaded = TodayWeather.load(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION);
+        assertNotNull(today);
+        assertEquals(mToday, today.getDate());
+        assertEquals(21.0, today.getMaxTemp());
+        assertEquals(loaded.getDate(), today.getDate());
+        assertEquals(loaded.getMaxTemp(), today.getMaxTemp());
+        assertEquals(loaded.getCityName(), today.getCityName());
+    }
+
+    public void testUpsertNotifiesObservers() {
+        TestUtilities.TestContentObserver observer = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                observer);
+        mRepository.upsertForecast(createDays(10));
+        observer.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(observer);
+
+        // A forecast cursor from the repository is told about writes made through the resolver.
+        Cursor cursor = mRepository.forecast(TestUtilities.TEST_LOCATION, mToday, COLUMNS);
+        observer = TestUtilities.getTestContentObserver();
+        cursor.registerContentObserver(observer);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, createDays(20));
+        observer.waitForNotificationOrFail();
+        cursor.unregisterContentObserver(observer);
+        cursor.close();
+    }
+
+    public void testBenchmarkRepositoryVersusResolver() {
+        mRepository.upsertForecast(createDays(10));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            assertNotNull(mRepository.todayFor(TestUtilities.TEST_LOCATION));
+        }
+        long repositoryToday = (System.nanoTime() - start) / BENCHMARK_CALLS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            assertNotNull(TodayWeather.load(mContext.getContentResolver(),
+                    TestUtilities.TEST_LOCATION));
+        }
+        long resolverToday = (System.nanoTime() - start) / BENCHMARK_CALLS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            Cursor cursor = mRepository.forecast(TestUtilities.TEST_LOCATION, mToday, COLUMNS);
+            assertEquals(DAYS - 1, cursor.getCount());
+            cursor.close();
+        }
+        long repositoryForecast = (System.nanoTime() - start) / BENCHMARK_CALLS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            Cursor cursor = queryForecast();
+            assertEquals(DAYS - 1, cursor.getCount());
+            cursor.close();
+        }
+        long resolverForecast = (System.nanoTime() - start) / BENCHMARK_CALLS;
+
+        // The resolver's forecast query may be answered from the provider's query cache, which
+        // the repository doesn't use, so compare the today reads for the per-call overhead.
+        Log.d(LOG_TAG, "Per call: todayFor=" + repositoryToday + "ns TodayWeather.load="
+                + resolverToday + "ns, forecast=" + repositoryForecast + "ns query="
+                + resolverForecast + "ns");
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentProviderClient;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+import java.util.Random;
+
+/*
+    Tests the weather/{location}/stats uri against the same statistics computed over the rows
+    in Java, and compares the time each approach takes over a long history.  The days start a
+    week before today, as a sync leaves them.
+ */
+public class TestWeatherStats extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherStats.class.getSimpleName();
+
+    private static final int DAYS = 60;
+    // Days stored before today.
+    private static final int PAST_DAYS = 7;
+    private static final int BENCHMARK_DAYS = 3 * 365;
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    private static final int[] WEATHER_IDS = {200, 300, 500, 600, 701, 800, 802, 900, 800, 500};
+
+    private static final String[] CLIENT_COLUMNS = {
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    private static final String[] STATS_COLUMNS = {
+            StatsEntry.COLUMN_DAY_COUNT,
+            StatsEntry.COLUMN_MIN_TEMP,
+            StatsEntry.COLUMN_MAX_TEMP,
+            StatsEntry.COLUMN_AVG_MAX_TEMP,
+            StatsEntry.COLUMN_RAIN_DAYS
+    };
+
+    private long mLocationId;
+    private Calendar mStart;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationId = ContentUris.parseId(uri);
+
+        mStart = Calendar.getInstance();
+        mStart.set(Calendar.HOUR_OF_DAY, 0);
+        mStart.set(Calendar.MINUTE, 0);
+        mStart.set(Calendar.SECOND, 0);
+        mStart.set(Calendar.MILLISECOND, 0);
+        mStart.add(Calendar.DAY_OF_MONTH, -PAST_DAYS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private void insertDays(int days) {
+        Calendar calendar = (Calendar) mStart.clone();
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            values[i] = TestUtilities.createWeatherValues(mLocationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, calendar.getTimeInMillis());
+            values[i].put(WeatherEntry.COLUMN_MIN_TEMP, 30 + i % 20);
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 50 + i % 30);
+            values[i].put(WeatherEntry.COLUMN_HUMIDITY, i % 100);
+            values[i].put(WeatherEntry.COLUMN_WEATHER_ID, WEATHER_IDS[i % WEATHER_IDS.length]);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private long day(int index) {
+        Calendar calendar = (Calendar) mStart.clone();
+        calendar.add(Calendar.DAY_OF_MONTH, index);
+        return calendar.getTimeInMillis();
+    }
+
+    // The stats a feature would otherwise compute itself: day count, lowest min, highest max,
+    // average max and rainy days.
+    private static double[] aggregate(Cursor cursor) {
+        double count = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE, sumMax = 0, rain = 0;
+        while (cursor.moveToNext()) {
+            count++;
+            min = Math.min(min, cursor.getDouble(0));
+            max = Math.max(max, cursor.getDouble(1));
+            sumMax += cursor.getDouble(1);
+            int weatherId = cursor.getInt(2);
+            if (weatherId >= 500 && weatherId <= 599) rain++;
+        }
+        cursor.close();
+        return new double[]{count, min, max, sumMax / count, rain};
+    }
+
+    // Pulls every row from fromDate on through the list uri and aggregates it in Java.  The
+    // test data ends on the last day of each range, so no end date is needed.
+    private double[] aggregateInJava(long fromDate) {
+        return aggregate(mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, fromDate),
+                CLIENT_COLUMNS, null, null, null));
+    }
+
+    private double[] queryStats(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri, STATS_COLUMNS, null, null, null);
+        assertEquals("Error: Stats should always be a single row", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        double[] stats = new double[STATS_COLUMNS.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = cursor.getDouble(i);
+        }
+        cursor.close();
+        return stats;
+    }
+
+    private static void assertStatsEqual(String error, double[] expected, double[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(error + " (" + STATS_COLUMNS[i] + ")", expected[i], actual[i], 0.0001);
+        }
+    }
+
+    public void testStatsMatchClientSideAggregation() {
+        insertDays(DAYS);
+
+        // Every stored day, answered from the summary row and the days before today.
+        assertStatsEqual("Error: Whole range stats don't match",
+                aggregateInJava(day(0)),
+                queryStats(WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION)));
+
+        // The tail of the history, aggregated over the index.
+        assertStatsEqual("Error: Partial range stats don't match",
+                aggregateInJava(day(DAYS / 2)),
+                queryStats(WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION,
+                        day(DAYS / 2), day(DAYS - 1))));
+
+        // Nothing stored in the range.
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION, day(DAYS), day(DAYS + 7)),
+                STATS_COLUMNS, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(0, cursor.getInt(0));
+        assertTrue(cursor.isNull(1));
+        cursor.close();
+    }
+
+    public void testSummaryFollowsWrites() {
+        insertDays(DAYS);
+        Uri statsUri = WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION);
+        assertEquals(DAYS, (int) queryStats(statsUri)[0]);
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_DATE + " < ?", new String[]{Long.toString(day(10))});
+        assertStatsEqual("Error: Summary is stale after a delete",
+                aggregateInJava(day(10)), queryStats(statsUri));
+
+        ContentValues hot = new ContentValues();
+        hot.put(WeatherEntry.COLUMN_MAX_TEMP, 200);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, hot,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(day(20))});
+        assertStatsEqual("Error: Summary is stale after an update",
+                aggregateInJava(day(10)), queryStats(statsUri));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        assertEquals(0, (int) queryStats(statsUri)[0]);
+    }
+
+    public void testAverageStaysExactOverManyWrites() {
+        insertDays(DAYS);
+        Uri statsUri = WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION);
+
+        // Each write takes a day out of the summary and adds it back with a new value.
+        Random random = new Random(29);
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < 500; i++) {
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, random.nextDouble() * 100);
+            mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                    WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[]{Long.toString(day(PAST_DAYS + random.nextInt(DAYS - PAST_DAYS)))});
+        }
+        int avg = 3;
+        assertEquals("Error: Average drifted from the rows", aggregateInJava(day(0))[avg],
+                queryStats(statsUri)[avg], 1e-9);
+    }
+
+    public void testForecastWindowIsAnsweredFromSummary() {
+        insertDays(DAYS);
+        WeatherQueryCache cache = getQueryCache();
+        cache.setEnabled(false);
+        try {
+            // From today to the last day stored, which is what the forecast shows.
+            int summaryReads = WeatherStats.getSummaryReads();
+            assertStatsEqual("Error: Forecast window stats don't match",
+                    aggregateInJava(day(PAST_DAYS)),
+                    queryStats(WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION,
+                            day(PAST_DAYS), day(DAYS - 1))));
+            assertEquals("Error: Forecast window wasn't answered from the summary",
+                    summaryReads + 1, WeatherStats.getSummaryReads());
+
+            // The days a sync writes again replace the ones stored, and the summary follows.
+            insertDays(DAYS);
+            summaryReads = WeatherStats.getSummaryReads();
+            assertStatsEqual("Error: Summary is stale after the days were written again",
+                    aggregateInJava(day(PAST_DAYS)),
+                    queryStats(WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION,
+                            day(PAST_DAYS), day(DAYS - 1))));
+            assertEquals(summaryReads + 1, WeatherStats.getSummaryReads());
+
+            // Starting later leaves out days the summary covers.
+            summaryReads = WeatherStats.getSummaryReads();
+            queryStats(WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION,
+                    day(PAST_DAYS + 1), day(DAYS - 1)));
+            assertEquals(summaryReads, WeatherStats.getSummaryReads());
+        } finally {
+            cache.setEnabled(true);
+        }
+    }
+
+    private WeatherQueryCache getQueryCache() {
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            return ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        } finally {
+            client.release();
+        }
+    }
+
+    public void testBenchmarkAggregation() {
+        insertDays(BENCHMARK_DAYS);
+        Uri wholeRange = WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION);
+        // Starts a day late, so it can't be served from the summary.
+        Uri partialRange = WeatherEntry.buildWeatherStats(TestUtilities.TEST_LOCATION,
+                day(1), day(BENCHMARK_DAYS - 1));
+
+        // Time the queries, not the query cache.
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherQueryCache cache = ((WeatherProvider) client.getLocalContentProvider()).getQueryCache();
+        cache.setEnabled(false);
+        try {
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                aggregateInJava(day(0));
+            }
+            long clientSide = SystemClock.elapsedRealtime() - start;
+
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                queryStats(partialRange);
+            }
+            long sql = SystemClock.elapsedRealtime() - start;
+
+            start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                queryStats(wholeRange);
+            }
+            long summary = SystemClock.elapsedRealtime() - start;
+
+            Log.d(LOG_TAG, "Stats over " + BENCHMARK_DAYS + " days x" + BENCHMARK_ITERATIONS
+                    + ": client-side=" + clientSide + "ms sql=" + sql + "ms summary=" + summary + "ms");
+        } finally {
+            cache.setEnabled(true);
+            client.release();
+        }
+    }
+}
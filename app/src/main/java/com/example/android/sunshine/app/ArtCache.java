@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.FutureTarget;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the weather art of an art pack for each place it is shown, and keeps it ready.
+ *
+ * An art pack has one image per kind of weather, so a forecast needs only a handful, but each
+ * surface shows them at its own size and Glide caches each size separately.  Every load here
+ * asks for the surface's exact size, fitted the same way, so the images {@link #warm} decodes
+ * after a sync are the ones the list, the detail view, the widget and the notification then
+ * find in the memory cache; the source images go to the disk cache as well, so a size that was
+ * evicted is decoded again without the network.  {@link ArtGlideModule} bounds the memory cache
+ * to every kind at every size.
+ *
+ * The share of loads answered from memory and the time until each image was ready are kept per
+ * surface; the sync logs them under this tag at DEBUG.
+ */
+public final class ArtCache {
+
+    public static final String LOG_TAG = ArtCache.class.getSimpleName();
+
+    // The list's rows after the first.
+    public static final int SURFACE_LIST = 0;
+    // The first row of the list in the today layout, and the detail view.
+    public static final int SURFACE_TODAY = 1;
+    // The rows of the detail widget.
+    public static final int SURFACE_WIDGET = 2;
+    // The large icon of the daily notification.
+    public static final int SURFACE_NOTIFICATION = 3;
+    private static final String[] SURFACE_NAMES = {"list", "today", "widget", "notification"};
+
+    private static final Stats[] sStats = new Stats[SURFACE_NAMES.length];
+    // Width and height of each surface, in pixels.
+    private static volatile int[] sSizes;
+
+    private static Handler sMainHandler;
+
+    static {
+        for (int i = 0; i < sStats.length; i++) {
+            sStats[i] = new Stats();
+        }
+    }
+
+    private ArtCache() {
+    }
+
+    static final class Stats {
+        final AtomicLong mLoads = new AtomicLong();
+        final AtomicLong mMemoryHits = new AtomicLong();
+        final AtomicLong mFailures = new AtomicLong();
+        final AtomicLong mTotalNanos = new AtomicLong();
+        final AtomicLong mMaxNanos = new AtomicLong();
+
+        void record(long start, boolean fromMemory, boolean failed) {
+            long nanos = System.nanoTime() - start;
+            mLoads.incrementAndGet();
+            if (fromMemory) mMemoryHits.incrementAndGet();
+            if (failed) mFailures.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = mMaxNanos.get()) && !mMaxNanos.compareAndSet(max, nanos)) {
+                // Lost the race to another thread; try again against its value.
+            }
+        }
+
+        long getLoads() {
+            return mLoads.get();
+        }
+
+        long getMemoryHits() {
+            return mMemoryHits.get();
+        }
+
+        long getFailures() {
+            return mFailures.get();
+        }
+
+        long getAverageMicros() {
+            long loads = mLoads.get();
+            return loads == 0 ? 0 : mTotalNanos.get() / loads / 1000;
+        }
+
+        long getMaxMicros() {
+            return mMaxNanos.get() / 1000;
+        }
+    }
+
+    // Records each load of a surface, timed from when it was asked for.
+    private static final class Timer<R> implements RequestListener<String, R> {
+        private final Stats mStats;
+        private final long mStart = System.nanoTime();
+
+        Timer(int surface) {
+            mStats = sStats[surface];
+        }
+
+        @Override
+        public boolean onException(Exception e, String model, Target<R> target,
+                                   boolean isFirstResource) {
+            mStats.record(mStart, false, true);
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(R resource, String model, Target<R> target,
+                                       boolean isFromMemoryCache, boolean isFirstResource) {
+            mStats.record(mStart, isFromMemoryCache, false);
+            return false;
+        }
+    }
+
+    @SuppressLint("InlinedApi")
+    private static int[] getSizes(Context context) {
+        int[] sizes = sSizes;
+        if (sizes == null) {
+            Resources resources = context.getResources();
+            int listIcon = resources.getDimensionPixelSize(R.dimen.list_icon);
+            int todayIcon = resources.getDimensionPixelSize(R.dimen.today_icon);
+            // On Honeycomb and higher devices, we can retrieve the size of the large icon
+            // Prior to that, we use a fixed size
+            int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+            int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+            sizes = new int[]{
+                    listIcon, listIcon,
+                    todayIcon, todayIcon,
+                    listIcon, listIcon,
+                    largeIconWidth, largeIconHeight
+            };
+            sSizes = sizes;
+        }
+        return sizes;
+    }
+
+    static int getWidth(Context context, int surface) {
+        return getSizes(context)[surface * 2];
+    }
+
+    static int getHeight(Context context, int surface) {
+        return getSizes(context)[surface * 2 + 1];
+    }
+
+    /**
+     * @return how many bytes of decoded art the memory cache needs to hold every kind of
+     * weather at every surface's size
+     */
+    static int getMemoryBudget(Context context) {
+        int[] sizes = getSizes(context);
+        int pixels = 0;
+        for (int i = 0; i < sizes.length; i += 2) {
+            pixels += sizes[i] * sizes[i + 1];
+        }
+        // The art has transparency, so it is decoded at four bytes a pixel.
+        return pixels * 4 * WeatherConditions.getArtKindCount();
+    }
+
+    private static DrawableRequestBuilder<String> drawableRequest(RequestManager glide,
+                                                                  Context context, int surface,
+                                                                  String artUrl) {
+        return glide.load(artUrl)
+                .override(getWidth(context, surface), getHeight(context, surface))
+                .fitCenter()
+                .diskCacheStrategy(DiskCacheStrategy.ALL);
+    }
+
+    private static FutureTarget<Bitmap> bitmapFuture(Context context, int surface,
+                                                     String artUrl, Timer<Bitmap> timer) {
+        int width = getWidth(context, surface);
+        int height = getHeight(context, surface);
+        return Glide.with(context.getApplicationContext())
+                .load(artUrl)
+                .asBitmap()
+                .override(width, height)
+                .fitCenter()
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .listener(timer)
+                .into(width, height);
+    }
+
+    /**
+     * Starts a load of art for an ImageView of the list or the detail view; add any animation
+     * and call into().
+     */
+    public static DrawableRequestBuilder<String> load(RequestManager glide, Context context,
+                                                      int surface, String artUrl,
+                                                      int errorResource) {
+        return drawableRequest(glide, context, surface, artUrl)
+                .error(errorResource)
+                .listener(new Timer<GlideDrawable>(surface));
+    }
+
+    /**
+     * Loads art for a surface that takes a Bitmap, waiting for it.  Not on the main thread.
+     *
+     * @return a copy of the art for the caller to keep, or null if it couldn't be loaded
+     */
+    public static Bitmap getBitmap(Context context, int surface, String artUrl) {
+        FutureTarget<Bitmap> future = bitmapFuture(context, surface, artUrl,
+                new Timer<Bitmap>(surface));
+        try {
+            // The bitmap goes into RemoteViews or a notification, which keep it after Glide
+            // would have recycled its own; that one goes back to the memory cache instead.
+            Bitmap bitmap = future.get();
+            return bitmap.copy(bitmap.getConfig() != null
+                    ? bitmap.getConfig() : Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+            return null;
+        } finally {
+            future.clear();
+        }
+    }
+
+    /**
+     * Decodes the art of every condition of a newly synced forecast at the sizes it is about to
+     * be shown at, so the list, the widget and the notification find it in memory.  Waits for
+     * the network and the disk, so not on the main thread.
+     *
+     * @param weatherIds the forecast's conditions, today's first
+     * @param notificationDue whether the sync is about to post the daily notification; the
+     * notification's size is only decoded for it
+     */
+    public static void warm(Context context, int[] weatherIds, boolean notificationDue) {
+        if (weatherIds.length == 0) return;
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+        long start = System.nanoTime();
+        int loads = 0;
+        try {
+            if (!settings.usingLocalGraphics()) {
+                Set<String> artUrls = new LinkedHashSet<>();
+                for (int weatherId : weatherIds) {
+                    String artUrl = WeatherConditions.getArtUrl(context, weatherId);
+                    if (artUrl != null) artUrls.add(artUrl);
+                }
+                RequestManager glide = Glide.with(context.getApplicationContext());
+                for (String artUrl : artUrls) {
+                    warmDrawable(glide, context, SURFACE_LIST, artUrl);
+                    warmDrawable(glide, context, SURFACE_TODAY, artUrl);
+                    warmBitmap(context, SURFACE_WIDGET, artUrl);
+                    loads += 3;
+                }
+            }
+            // The notification shows the art pack's art even when the app uses its own.
+            String todayUrl = WeatherConditions.getArtUrl(context, weatherIds[0]);
+            if (notificationDue && todayUrl != null) {
+                warmBitmap(context, SURFACE_NOTIFICATION, todayUrl);
+                loads++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Warmed " + loads + " images in "
+                    + (System.nanoTime() - start) / 1000000 + "ms; " + statsToString());
+        }
+    }
+
+    private static void warmDrawable(RequestManager glide, Context context, int surface,
+                                     String artUrl) throws InterruptedException {
+        int width = getWidth(context, surface);
+        int height = getHeight(context, surface);
+        FutureTarget<GlideDrawable> future =
+                drawableRequest(glide, context, surface, artUrl).into(width, height);
+        waitAndRelease(future, artUrl);
+    }
+
+    private static void warmBitmap(Context context, int surface, String artUrl)
+            throws InterruptedException {
+        // Not counted in the stats, which are of the loads a surface waits for.
+        waitAndRelease(bitmapFuture(context, surface, artUrl, null), artUrl);
+    }
+
+    // Clearing the target hands the image to the memory cache.
+    private static void waitAndRelease(FutureTarget<?> future, String artUrl)
+            throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Log.w(LOG_TAG, "Couldn't warm the cache with " + artUrl, e);
+        } finally {
+            future.clear();
+        }
+    }
+
+    /**
+     * Starts loading art for a list row that is about to scroll into view, if it isn't already
+     * in memory.  On the main thread.
+     */
+    public static void prefetch(Context context, int surface, String artUrl) {
+        int width = getWidth(context, surface);
+        int height = getHeight(context, surface);
+        drawableRequest(Glide.with(context.getApplicationContext()), context, surface, artUrl)
+                .into(new PrefetchTarget(width, height));
+    }
+
+    // Lets go of the image as soon as it is ready, which leaves it in the memory cache.
+    private static final class PrefetchTarget extends SimpleTarget<GlideDrawable> {
+        PrefetchTarget(int width, int height) {
+            super(width, height);
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Not from inside Glide's own callback.
+            if (sMainHandler == null) {
+                sMainHandler = new Handler(Looper.getMainLooper());
+            }
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    Glide.clear(PrefetchTarget.this);
+                }
+            });
+        }
+    }
+
+    static Stats getStats(int surface) {
+        return sStats[surface];
+    }
+
+    static String statsToString() {
+        StringBuilder sb = new StringBuilder();
+        for (int surface = 0; surface < sStats.length; surface++) {
+            Stats stats = sStats[surface];
+            long loads = stats.getLoads();
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(SURFACE_NAMES[surface]).append(": loads=").append(loads);
+            if (loads > 0) {
+                sb.append(" memory=").append(stats.getMemoryHits() * 100 / loads).append('%')
+                        .append(" failed=").append(stats.getFailures())
+                        .append(" avg=").append(stats.getAverageMicros()).append("us")
+                        .append(" max=").append(stats.getMaxMicros()).append("us");
+            }
+        }
+        return sb.toString();
+    }
+}
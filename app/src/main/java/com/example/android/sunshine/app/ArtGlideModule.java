@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Sizes Glide's memory cache for what the app shows: the art of every kind of weather at the
+ * size of every surface, as {@link ArtCache} loads it, or Glide's own budget for the device if
+ * that is smaller.  Glide would otherwise keep a couple of screens' worth of pixels, many times
+ * what the art needs, for as long as the process lives.
+ */
+public final class ArtGlideModule implements GlideModule {
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        builder.setMemoryCache(new LruResourceCache(getMemoryCacheSize(context)));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+
+    static int getMemoryCacheSize(Context context) {
+        int deviceSize = new MemorySizeCalculator(context).getMemoryCacheSize();
+        return Math.min(deviceSize, ArtCache.getMemoryBudget(context));
+    }
+}
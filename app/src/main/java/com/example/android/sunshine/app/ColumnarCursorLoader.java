@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import com.example.android.sunshine.app.data.ColumnarCursor;
+
+/**
+ * A CursorLoader that hands out a {@link ColumnarCursor} copy of its result, so the rows are
+ * read into primitive columns on the loader's thread and the query's cursor window is released
+ * right away.  It still reloads when the uri's data changes.
+ */
+public class ColumnarCursorLoader extends CursorLoader {
+
+    private final int[] mColumnTypes;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+
+    public ColumnarCursorLoader(Context context, Uri uri, String[] projection, int[] columnTypes,
+                                String selection, String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+        mColumnTypes = columnTypes;
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        ColumnarCursor copy;
+        try {
+            copy = ColumnarCursor.copyOf(cursor, mColumnTypes);
+        } finally {
+            // Also drops the observer CursorLoader registered on it; the copy gets its own.
+            cursor.close();
+        }
+        copy.setNotificationUri(getContext().getContentResolver(), getUri());
+        copy.registerContentObserver(mObserver);
+        return copy;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The date labels of the forecast list, the detail view and the detail widget.
+ *
+ * A forecast shows the same handful of days over and over, so each label is built once per day
+ * and style and then looked up by the day number.  The labels say "Today" and "Tomorrow" and
+ * are in the user's language and time zone, so they are all dropped when the day, the locale
+ * or the zone changes.  Those are checked on every call by comparing what the labels were made
+ * for with the current values, which costs no allocation and needs no broadcast receiver.
+ *
+ * SimpleDateFormat isn't thread safe, and the labels are built on the main thread and on the
+ * widget's binder threads, so each thread formats with its own formatters.
+ */
+public final class DayFormatter {
+
+    // "Wednesday", "Today, June 24" for today when long, and "Mon Jun 3" from a week out
+    public static final int STYLE_FRIENDLY = 0;
+    public static final int STYLE_FRIENDLY_LONG_TODAY = 1;
+    // "Wednesday, June 24", or "Today, June 24"
+    public static final int STYLE_FULL_FRIENDLY = 2;
+    // "Today", "Tomorrow" or "Wednesday"
+    public static final int STYLE_DAY_NAME = 3;
+    // "June 24"
+    public static final int STYLE_MONTH_DAY = 4;
+    private static final int STYLE_COUNT = 5;
+
+    private static final String[] PATTERNS = {"EEE MMM dd", "EEEE", "MMMM dd"};
+    private static final int PATTERN_SHORT = 0;
+    private static final int PATTERN_DAY_NAME = 1;
+    private static final int PATTERN_MONTH_DAY = 2;
+
+    // A few weeks of days in every style is far more than any screen shows.
+    private static final int MAX_LABELS = 128;
+
+    private static final class Formatters {
+        final Locale mLocale;
+        final TimeZone mZone;
+        final SimpleDateFormat[] mFormats = new SimpleDateFormat[PATTERNS.length];
+
+        Formatters(Locale locale, TimeZone zone) {
+            mLocale = locale;
+            mZone = zone;
+        }
+
+        String format(int pattern, long millis) {
+            SimpleDateFormat format = mFormats[pattern];
+            if (format == null) {
+                format = new SimpleDateFormat(PATTERNS[pattern], mLocale);
+                format.setTimeZone(mZone);
+                mFormats[pattern] = format;
+            }
+            return format.format(millis);
+        }
+    }
+
+    private static final ThreadLocal<Formatters> sFormatters = new ThreadLocal<>();
+
+    // Keyed by julianDay * STYLE_COUNT + style, for the locale, zone and day below.
+    private static final LongSparseArray<String> sLabels = new LongSparseArray<>();
+    private static Locale sLabelsLocale;
+    private static TimeZone sLabelsZone;
+    private static int sLabelsToday;
+
+    private DayFormatter() {
+    }
+
+    public static String format(Context context, long dateInMillis, int style) {
+        int julianDay = WeatherContract.getJulianDay(dateInMillis);
+        Locale locale = Locale.getDefault();
+        TimeZone zone = WeatherContract.getTimeZone();
+        int today = WeatherContract.getTodayJulianDay();
+        long key = (long) julianDay * STYLE_COUNT + style;
+
+        synchronized (sLabels) {
+            if (today != sLabelsToday || zone != sLabelsZone || !locale.equals(sLabelsLocale)) {
+                sLabels.clear();
+                sLabelsToday = today;
+                sLabelsZone = zone;
+                sLabelsLocale = locale;
+            }
+            String label = sLabels.get(key);
+            if (label != null) {
+                return label;
+            }
+        }
+
+        String label = build(context, getFormatters(locale, zone), julianDay, today, style);
+        synchronized (sLabels) {
+            // Unless the day, zone or locale moved on while the label was built.
+            if (today == sLabelsToday && zone == sLabelsZone && locale.equals(sLabelsLocale)) {
+                if (sLabels.size() >= MAX_LABELS) {
+                    sLabels.clear();
+                }
+                sLabels.put(key, label);
+            }
+        }
+        return label;
+    }
+
+    private static Formatters getFormatters(Locale locale, TimeZone zone) {
+        Formatters formatters = sFormatters.get();
+        if (formatters == null || formatters.mZone != zone || !formatters.mLocale.equals(locale)) {
+            formatters = new Formatters(locale, zone);
+            sFormatters.set(formatters);
+        }
+        return formatters;
+    }
+
+    private static String build(Context context, Formatters formatters, int julianDay, int today,
+                                int style) {
+        long millis = WeatherContract.getStartOfJulianDay(julianDay);
+        switch (style) {
+            case STYLE_FRIENDLY:
+            case STYLE_FRIENDLY_LONG_TODAY:
+                if (style == STYLE_FRIENDLY_LONG_TODAY && julianDay == today) {
+                    return context.getString(R.string.format_full_friendly_date,
+                            context.getString(R.string.today),
+                            formatters.format(PATTERN_MONTH_DAY, millis));
+                } else if (julianDay < today + 7) {
+                    return build(context, formatters, julianDay, today, STYLE_DAY_NAME);
+                }
+                return formatters.format(PATTERN_SHORT, millis);
+            case STYLE_FULL_FRIENDLY:
+                return context.getString(R.string.format_full_friendly_date,
+                        build(context, formatters, julianDay, today, STYLE_DAY_NAME),
+                        formatters.format(PATTERN_MONTH_DAY, millis));
+            case STYLE_DAY_NAME:
+                if (julianDay == today) {
+                    return context.getString(R.string.today);
+                } else if (julianDay == today + 1) {
+                    return context.getString(R.string.tomorrow);
+                }
+                return formatters.format(PATTERN_DAY_NAME, millis);
+            case STYLE_MONTH_DAY:
+                return formatters.format(PATTERN_MONTH_DAY, millis);
+            default:
+                throw new IllegalArgumentException("Unknown style " + style);
+        }
+    }
+}
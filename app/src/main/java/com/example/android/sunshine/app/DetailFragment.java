@@ -21,7 +21,6 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
@@ -38,6 +37,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.ColumnarCursor;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -87,6 +87,21 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     public static final int COL_WEATHER_DEGREES = 8;
     public static final int COL_WEATHER_CONDITION_ID = 9;
 
+    // The type of each of DETAIL_COLUMNS, for the copy the loader makes.
+    private static final int[] DETAIL_COLUMN_TYPES = {
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_STRING,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_STRING
+    };
+
     private ImageView mIconView;
     private TextView mDateView;
     private TextView mDescriptionView;
@@ -173,10 +188,11 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         if ( null != mUri ) {
             // Now create and return a CursorLoader that will take care of
             // creating a Cursor for the data being displayed.
-            return new CursorLoader(
+            return new ColumnarCursorLoader(
                     getActivity(),
                     mUri,
                     DETAIL_COLUMNS,
+                    DETAIL_COLUMN_TYPES,
                     null,
                     null,
                     null
@@ -204,9 +220,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
             } else {
                 // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                ArtCache.load(Glide.with(this), getActivity(), ArtCache.SURFACE_TODAY,
+                        Utility.getArtUrlForWeatherCondition(getActivity(), weatherId),
+                        Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
             }
@@ -228,8 +244,6 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
 
             // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
             double high = data.getDouble(COL_WEATHER_MAX_TEMP);
             String highString = Utility.formatTemperature(getActivity(), high);
             mHighTempView.setText(highString);
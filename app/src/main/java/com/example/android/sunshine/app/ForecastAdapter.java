@@ -30,25 +30,40 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ *
+ * The rows are bound from the {@link ForecastRow}s the loader built alongside the cursor, so a
+ * bind only sets what is already formatted.  A new cursor is announced with the
+ * {@link ForecastDiff} the loader worked out, so only the rows that changed are bound again,
+ * and each row's id is its date, which stays put while the rows around it come and go.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
 
+    // How many rows past the last visible one have their art loaded ahead of being bound.
+    private static final int ART_PREFETCH_ROWS = 5;
+
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private List<ForecastRow> mRows = Collections.emptyList();
+    // The last row whose art has been prefetched, for the current rows.
+    private int mArtPrefetchedTo = -1;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private ListMetrics mMetrics;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +88,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows.get(adapterPosition).getDate(), this);
             mICM.onClick(this);
         }
     }
@@ -88,8 +101,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Before the choice manager registers its observer, which would rule it out.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mMetrics = new ListMetrics(context);
     }
 
     /*
@@ -124,65 +140,69 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        long start = mMetrics.startBind();
+        ForecastRow row = mRows.get(position);
         int defaultImage;
         boolean useLongToday;
+        int artSurface;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                defaultImage = row.getArtResource();
                 useLongToday = true;
+                artSurface = ArtCache.SURFACE_TODAY;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                defaultImage = row.getIconResource();
                 useLongToday = false;
+                artSurface = ArtCache.SURFACE_LIST;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( row.getArtUrl() == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
+            ArtCache.load(Glide.with(mContext), mContext, artSurface, row.getArtUrl(), defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // Named for the day rather than the position, which changes as days come and go
+        // without the row being bound again.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.getDate());
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(row.getDayLabel(useLongToday));
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.getDescription());
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.getDescriptionA11y());
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.getHigh());
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.getHighA11y());
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.getLow());
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.getLowA11y());
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        mMetrics.recordBind(start);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        mMetrics.attach(recyclerView);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        mMetrics.detach(recyclerView);
+    }
+
+    ListMetrics getMetrics() {
+        return mMetrics;
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -208,20 +228,70 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).getDate();
     }
 
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if (newCursor instanceof ForecastPageLoader.PagedCursor) {
+            ForecastPageLoader.PagedCursor paged = (ForecastPageLoader.PagedCursor) newCursor;
+            List<ForecastRow> oldRows = mRows;
+            mRows = paged.getRows();
+            ForecastDiff diff = paged.getDiff();
+            if (mRows != oldRows) {
+                mArtPrefetchedTo = -1;
+                if (diff != null && diff.getOldRows() == oldRows) {
+                    diff.dispatchTo(this);
+                } else {
+                    // Against rows this adapter never showed, so of no use.
+                    notifyDataSetChanged();
+                }
+            }
+            // Otherwise it's the same cursor again, after the loader was stopped and started.
+        } else {
+            if (newCursor != null) {
+                // Not from the loader, so nothing has built the rows yet.
+                List<ForecastRow> rows = new ArrayList<>(newCursor.getCount());
+                ForecastRow.addRows(mContext, newCursor, true, rows);
+                mRows = rows;
+            } else {
+                mRows = Collections.emptyList();
+            }
+            mArtPrefetchedTo = -1;
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    /**
+     * Starts loading the art of the rows just below the last visible one, so that it is in
+     * memory by the time they scroll into view.
+     */
+    public void prefetchArt(int lastVisible) {
+        int last = Math.min(lastVisible + ART_PREFETCH_ROWS, mRows.size() - 1);
+        for (int position = Math.max(lastVisible + 1, mArtPrefetchedTo + 1); position <= last;
+             position++) {
+            String artUrl = mRows.get(position).getArtUrl();
+            if (artUrl != null && getItemViewType(position) == VIEW_TYPE_FUTURE_DAY) {
+                ArtCache.prefetch(mContext, ArtCache.SURFACE_LIST, artUrl);
+            }
+        }
+        mArtPrefetchedTo = Math.max(mArtPrefetchedTo, last);
+    }
+
     public Cursor getCursor() {
         return mCursor;
     }
 
+    public List<ForecastRow> getRows() {
+        return mRows;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What changed between two lists of forecast rows, as the insertions, removals and changes
+ * that turn the old list into the new one.
+ *
+ * A sync usually changes a few days of the forecast, and the day rolling over removes one
+ * from the top.  Telling the list just that, rather than that everything changed, means it
+ * rebinds only the rows that differ and animates them into place.
+ *
+ * Both lists are in date order with one row per day, so the rows are matched by date in a
+ * single pass over both, and a matched row has changed if anything it shows has.  No row can
+ * move.  The loader works this out in the background, along with the rows themselves.
+ */
+public final class ForecastDiff {
+
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int CHANGE = 2;
+
+    private final List<ForecastRow> mOldRows;
+    // Three ints per range: the operation, the position and the count.  Each position is in
+    // the list as the ranges before it have left it, which is the order they are dispatched.
+    private final int[] mRanges;
+
+    private ForecastDiff(List<ForecastRow> oldRows, int[] ranges) {
+        mOldRows = oldRows;
+        mRanges = ranges;
+    }
+
+    public static ForecastDiff compute(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+        Builder builder = new Builder();
+        int oldSize = oldRows.size();
+        int newSize = newRows.size();
+        int i = 0;
+        int j = 0;
+        // Where the next range starts in the list being updated.
+        int position = 0;
+        while (i < oldSize && j < newSize) {
+            ForecastRow oldRow = oldRows.get(i);
+            ForecastRow newRow = newRows.get(j);
+            if (oldRow.getDate() == newRow.getDate()) {
+                if (!oldRow.contentEquals(newRow)) {
+                    builder.add(CHANGE, position, 1);
+                }
+                i++;
+                j++;
+                position++;
+            } else if (oldRow.getDate() < newRow.getDate()) {
+                builder.add(REMOVE, position, 1);
+                i++;
+            } else {
+                builder.add(INSERT, position, 1);
+                j++;
+                position++;
+            }
+        }
+        if (i < oldSize) {
+            builder.add(REMOVE, position, oldSize - i);
+        }
+        if (j < newSize) {
+            builder.add(INSERT, position, newSize - j);
+        }
+        return new ForecastDiff(oldRows, builder.toArray());
+    }
+
+    /**
+     * @return the rows this is the difference from
+     */
+    public List<ForecastRow> getOldRows() {
+        return mOldRows;
+    }
+
+    /**
+     * @return how many rows were inserted, removed or changed
+     */
+    public int getRowCount() {
+        int rows = 0;
+        for (int r = 0; r < mRanges.length; r += 3) {
+            rows += mRanges[r + 2];
+        }
+        return rows;
+    }
+
+    /**
+     * Notifies the adapter of each range, once it shows the new rows.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int r = 0; r < mRanges.length; r += 3) {
+            int position = mRanges[r + 1];
+            int count = mRanges[r + 2];
+            switch (mRanges[r]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < mRanges.length; r += 3) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append("+-~".charAt(mRanges[r])).append(mRanges[r + 1])
+                    .append('x').append(mRanges[r + 2]);
+        }
+        return sb.toString();
+    }
+
+    // Collects the ranges, joining each to the last when it carries straight on from it.
+    private static final class Builder {
+        private final List<int[]> mRanges = new ArrayList<>();
+
+        void add(int operation, int position, int count) {
+            if (!mRanges.isEmpty()) {
+                int[] last = mRanges.get(mRanges.size() - 1);
+                // Removals all start at the same position; the others follow on.
+                if (last[0] == operation && position == (operation == REMOVE
+                        ? last[1] : last[1] + last[2])) {
+                    last[2] += count;
+                    return;
+                }
+            }
+            mRanges.add(new int[]{operation, position, count});
+        }
+
+        int[] toArray() {
+            int[] ranges = new int[mRanges.size() * 3];
+            for (int r = 0; r < mRanges.size(); r++) {
+                System.arraycopy(mRanges.get(r), 0, ranges, r * 3, 3);
+            }
+            return ranges;
+        }
+    }
+}
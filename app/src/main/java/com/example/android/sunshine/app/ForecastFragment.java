@@ -28,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -45,8 +44,11 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.ColumnarCursor;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStatus;
+
+import java.util.List;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
@@ -63,6 +65,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+    // Days fetched per page, and how close to the last loaded day the list may scroll before
+    // the next page is fetched.
+    private static final int FORECAST_PAGE_SIZE = 30;
+    private static final int FORECAST_PREFETCH_DISTANCE = 10;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -95,6 +101,20 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
 
+    // The type of each of FORECAST_COLUMNS, so the loader can copy the rows into primitive
+    // columns.  Must change along with them.
+    private static final int[] FORECAST_COLUMN_TYPES = {
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_STRING,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_STRING,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE
+    };
+
     /**
      * A callback interface that all activities containing this fragment must
      * implement. This mechanism allows activities to be notified of item
@@ -105,6 +125,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
          * DetailFragmentCallback for when an item has been selected.
          */
         public void onItemSelected(Uri dateUri, ForecastAdapter.ForecastAdapterViewHolder vh);
+
+        /**
+         * For when the list has drawn its first rows.
+         */
+        public void onForecastShown();
     }
 
     public ForecastFragment() {
@@ -200,6 +225,24 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Fetch the next page of days before the user reaches the end of the loaded ones, and
+        // the art of the next few rows before they are bound.
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) return;
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                mForecastAdapter.prefetchArt(lastVisible);
+                if (lastVisible >= mForecastAdapter.getItemCount() - FORECAST_PREFETCH_DISTANCE) {
+                    Loader<Cursor> loader = getLoaderManager().getLoader(FORECAST_LOADER);
+                    if (loader instanceof ForecastPageLoader) {
+                        ((ForecastPageLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -307,27 +350,26 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // fragment only uses one loader, so we don't care about checking the id.
 
         // To only show current and future dates, filter the query to return weather only for
-        // dates after or including today.
-
-        // Sort order:  Ascending, by date.
-        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
-
+        // dates after or including today.  The loader fetches the days a page at a time, in
+        // ascending date order, as the list is scrolled.
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
-
-        return new CursorLoader(getActivity(),
-                weatherForLocationUri,
+        return new ForecastPageLoader(getActivity(),
+                locationSetting,
+                System.currentTimeMillis(),
                 FORECAST_COLUMNS,
-                null,
-                null,
-                sortOrder);
+                FORECAST_COLUMN_TYPES,
+                FORECAST_PAGE_SIZE);
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
+        // Another page at the end of the list: the selection and transition are already set up.
+        if ( data instanceof ForecastPageLoader.PagedCursor &&
+                ((ForecastPageLoader.PagedCursor) data).isAppended() ) {
+            return;
+        }
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
@@ -338,15 +380,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        ((Callback) getActivity()).onForecastShown();
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
+                            List<ForecastRow> rows = mForecastAdapter.getRows();
+                            int count = rows.size();
                             for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
+                                if ( rows.get(i).getDate() == mInitialSelectedDate ) {
                                     position = i;
                                     break;
                                 }
@@ -408,15 +449,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
             if ( null != tv ) {
                 // if cursor is empty, why? do we have an invalid location
                 int message = R.string.empty_forecast_list;
-                @SunshineSyncAdapter.LocationStatus int location = Utility.getLocationStatus(getActivity());
+                @SyncStatus.LocationStatus int location = Utility.getLocationStatus(getActivity());
                 switch (location) {
-                    case SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN:
+                    case SyncStatus.LOCATION_STATUS_SERVER_DOWN:
                         message = R.string.empty_forecast_list_server_down;
                         break;
-                    case SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID:
+                    case SyncStatus.LOCATION_STATUS_SERVER_INVALID:
                         message = R.string.empty_forecast_list_server_error;
                         break;
-                    case SunshineSyncAdapter.LOCATION_STATUS_INVALID:
+                    case SyncStatus.LOCATION_STATUS_INVALID:
                         message = R.string.empty_forecast_list_invalid_location;
                         break;
                     default:
@@ -432,6 +473,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(getString(R.string.pref_location_status_key))) {
+            SettingsSnapshot.refresh(getActivity());
             updateEmptyView();
         }
     }
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DataSetObserver;
+import android.database.MergeCursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.ColumnarCursor;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the forecast for a location one page at a time, instead of copying every stored day
+ * into one cursor window up front.
+ *
+ * The first load fetches a single page.  Each call to {@link #loadNextPage()} fetches the days
+ * after the last one loaded and delivers a new cursor over all the pages so far; the pages
+ * already loaded are reused, not queried again.  When the weather changes every loaded day is
+ * fetched again in one query, so the list doesn't shrink back to one page under the user.
+ *
+ * Each page is copied into a {@link ColumnarCursor} as it is loaded, so no cursor window is
+ * kept open for the list, and its days are made into {@link ForecastRow}s, so binding a row
+ * formats nothing on the main thread.  Each cursor also carries the {@link ForecastDiff} from
+ * the rows of the one before, so the list can be told which rows changed.  The rows say "Today"
+ * and "Tomorrow" in the user's language, so a cursor whose rows were built for another day,
+ * locale or time zone is loaded again when it is delivered or the loader starts.
+ */
+public class ForecastPageLoader extends AsyncTaskLoader<Cursor> {
+
+    private final String mLocationSetting;
+    private final long mStartDate;
+    private final int mPageSize;
+    private final String[] mProjection;
+    private final int[] mColumnTypes;
+
+    private final ContentObserver mObserver;
+    private boolean mObserving;
+    // Bumped whenever the weather changes; a cursor loaded before the latest change is stale,
+    // so the next load starts over instead of adding a page to it.
+    private final AtomicInteger mVersion = new AtomicInteger();
+    // How many days the user has scrolled far enough to need.
+    private volatile int mWantedCount;
+
+    // The last cursor delivered.  Only written on the main thread, and read in the background
+    // as the base of the next page.
+    private volatile PagedCursor mCursor;
+
+    /**
+     * The forecast pages loaded so far, as one cursor and as rows.  Closing it closes the pages,
+     * so only the loader does that; a cursor the loader has moved on from is released instead,
+     * which leaves the pages it shares with the next one open.
+     */
+    public static class PagedCursor extends MergeCursor {
+        private final Cursor[] mPages;
+        private final PageView[] mViews;
+        private final List<ForecastRow> mRows;
+        private final ForecastDiff mDiff;
+        private final int mVersion;
+        private final long mLastDate;
+        private final boolean mHasMore;
+        private final boolean mAppended;
+        // What the rows were built for.
+        private final int mToday;
+        private final Locale mLocale;
+        private final TimeZone mZone;
+
+        PagedCursor(Cursor[] pages, List<ForecastRow> rows, ForecastDiff diff, int version,
+                    long lastDate, boolean hasMore, boolean appended, int today, Locale locale,
+                    TimeZone zone) {
+            this(PageView.of(pages), pages, rows, diff, version, lastDate, hasMore, appended,
+                    today, locale, zone);
+        }
+
+        private PagedCursor(PageView[] views, Cursor[] pages, List<ForecastRow> rows,
+                            ForecastDiff diff, int version, long lastDate, boolean hasMore,
+                            boolean appended, int today, Locale locale, TimeZone zone) {
+            super(views);
+            mViews = views;
+            mPages = pages;
+            mRows = rows;
+            mDiff = diff;
+            mVersion = version;
+            mLastDate = lastDate;
+            mHasMore = hasMore;
+            mAppended = appended;
+            mToday = today;
+            mLocale = locale;
+            mZone = zone;
+        }
+
+        // Whether the rows' labels are still right; compared the way DayFormatter compares.
+        boolean isBuiltFor(int today, Locale locale, TimeZone zone) {
+            return mToday == today && mZone == zone && mLocale.equals(locale);
+        }
+
+        boolean isCurrent() {
+            return isBuiltFor(WeatherContract.getTodayJulianDay(), Locale.getDefault(),
+                    WeatherContract.getTimeZone());
+        }
+
+        // One per day, in the cursor's order.
+        public List<ForecastRow> getRows() {
+            return mRows;
+        }
+
+        // What changed from the previous cursor's rows, or null if this is the first.
+        public ForecastDiff getDiff() {
+            return mDiff;
+        }
+
+        // Whether the last page was full, so there may be more days to load.
+        public boolean hasMore() {
+            return mHasMore;
+        }
+
+        // Whether this is the previous cursor with one more page, rather than a fresh load.
+        public boolean isAppended() {
+            return mAppended;
+        }
+
+        boolean contains(Cursor page) {
+            for (Cursor p : mPages) {
+                if (p == page) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes the observers MergeCursor put on the pages off them again, without closing the
+         * pages, which the next cursor may share.  Otherwise every cursor delivered would stay
+         * reachable from the pages it was built on.
+         */
+        void release() {
+            for (PageView view : mViews) {
+                view.release();
+            }
+        }
+    }
+
+    /*
+        A page as one PagedCursor sees it.  MergeCursor registers its observer on each of its
+        cursors and only takes it off when closed, so this remembers the observer to take off
+        the shared page in release().
+     */
+    private static final class PageView extends CursorWrapper {
+        private final Cursor mPage;
+        private DataSetObserver mObserver;
+
+        PageView(Cursor page) {
+            super(page);
+            mPage = page;
+        }
+
+        static PageView[] of(Cursor[] pages) {
+            PageView[] views = new PageView[pages.length];
+            for (int i = 0; i < pages.length; i++) {
+                views[i] = new PageView(pages[i]);
+            }
+            return views;
+        }
+
+        @Override
+        public void registerDataSetObserver(DataSetObserver observer) {
+            super.registerDataSetObserver(observer);
+            mObserver = observer;
+        }
+
+        void release() {
+            if (mObserver != null) {
+                mPage.unregisterDataSetObserver(mObserver);
+                mObserver = null;
+            }
+        }
+    }
+
+    public ForecastPageLoader(Context context, String locationSetting, long startDate,
+                              String[] projection, int[] columnTypes, int pageSize) {
+        super(context);
+        mLocationSetting = locationSetting;
+        mStartDate = startDate;
+        mProjection = projection;
+        mColumnTypes = columnTypes;
+        mPageSize = pageSize;
+        mWantedCount = pageSize;
+        mObserver = new ContentObserver(new Handler()) {
+            @Override
+            public boolean deliverSelfNotifications() {
+                return true;
+            }
+
+            @Override
+            public void onChange(boolean selfChange) {
+                mVersion.incrementAndGet();
+                onContentChanged();
+            }
+        };
+    }
+
+    /**
+     * Starts loading the page after the ones delivered so far, unless that is already under way
+     * or there is nothing more to load.  Cheap enough to call on every scroll event.
+     */
+    public void loadNextPage() {
+        PagedCursor cursor = mCursor;
+        if (cursor == null || !cursor.hasMore() || mWantedCount > cursor.getCount()) return;
+        mWantedCount = cursor.getCount() + mPageSize;
+        forceLoad();
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        // Whatever load this one replaced, the delivered cursor is where it picks up from.
+        PagedCursor base = mCursor;
+        int version = mVersion.get();
+        int wanted = mWantedCount;
+        int today = WeatherContract.getTodayJulianDay();
+        Locale locale = Locale.getDefault();
+        TimeZone zone = WeatherContract.getTimeZone();
+        // Rows built for another day or locale can't be added to, only built again.
+        boolean reload = base == null || base.mVersion != version
+                || !base.isBuiltFor(today, locale, zone);
+        if (!reload && base.getCount() >= wanted) {
+            return base;
+        }
+
+        List<Cursor> pages = new ArrayList<>();
+        List<ForecastRow> rows = new ArrayList<>();
+        Uri uri;
+        int limit;
+        long lastDate = 0;
+        if (reload) {
+            // Every day the user has scrolled to so far, in one query.
+            limit = wanted;
+            uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                    mLocationSetting, mStartDate, limit);
+        } else {
+            pages.addAll(Arrays.asList(base.mPages));
+            rows.addAll(base.mRows);
+            limit = wanted - base.getCount();
+            lastDate = base.mLastDate;
+            uri = WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                    mLocationSetting, lastDate, limit);
+        }
+
+        Cursor result = getContext().getContentResolver().query(uri, mProjection, null, null, null);
+        if (result == null) {
+            return null;
+        }
+        // The page is copied into primitive columns here rather than read through the window on
+        // the main thread while the list binds.  The new page isn't shared with the adapter yet,
+        // so it is safe to move it to read the next key; the delivered pages are never moved
+        // from this thread.
+        Cursor page;
+        try {
+            page = ColumnarCursor.copyOf(result, mColumnTypes);
+        } finally {
+            result.close();
+        }
+        int count = page.getCount();
+        if (page.moveToLast()) {
+            lastDate = page.getLong(page.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE));
+        }
+        // The earlier pages' rows are kept; only the new days are formatted.
+        ForecastRow.addRows(getContext(), page, reload, rows);
+        page.moveToPosition(-1);
+        pages.add(page);
+        List<ForecastRow> newRows = Collections.unmodifiableList(rows);
+        ForecastDiff diff = base != null ? ForecastDiff.compute(base.mRows, newRows) : null;
+        return new PagedCursor(pages.toArray(new Cursor[pages.size()]), newRows, diff, version,
+                lastDate, count >= limit, !reload, today, locale, zone);
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        PagedCursor paged = (PagedCursor) cursor;
+        if (isReset()) {
+            closePages(paged, mCursor);
+            return;
+        }
+        PagedCursor old = mCursor;
+        mCursor = paged;
+        if (isStarted()) {
+            super.deliverResult(paged);
+        }
+        if (old != null && old != paged) {
+            closePages(old, paged);
+        }
+        // The day turned or the locale changed while the rows were built.
+        if (isStarted() && paged != old && !paged.isCurrent()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public void onCanceled(Cursor cursor) {
+        // Keep the pages the delivered cursor still shows.
+        if (cursor != mCursor) {
+            closePages((PagedCursor) cursor, mCursor);
+        }
+    }
+
+    // Releases the cursor and closes the pages of it that the other one, if any, doesn't share.
+    private static void closePages(PagedCursor cursor, PagedCursor keep) {
+        if (cursor == null) return;
+        cursor.release();
+        for (Cursor page : cursor.mPages) {
+            if ((keep == null || !keep.contains(page)) && !page.isClosed()) {
+                page.close();
+            }
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.buildWeatherLocation(mLocationSetting), true, mObserver);
+            mObserving = true;
+        }
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        }
+        if (takeContentChanged() || mCursor == null || !mCursor.isCurrent()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        closePages(mCursor, null);
+        mCursor = null;
+        mWantedCount = mPageSize;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.List;
+
+/**
+ * One day of the forecast list, ready to show: every string, resource id and url a row of
+ * {@link ForecastAdapter} sets, worked out from the cursor ahead of time.
+ *
+ * The rows are built on the loader's thread as each page of days is loaded, so binding one
+ * while the list scrolls only assigns fields.  They are built for the settings, locale and day
+ * of the load; a change to the units or the art pack reloads the list, which builds them again,
+ * and {@link ForecastPageLoader} loads them again once the day, the locale or the time zone
+ * has moved on.
+ */
+public final class ForecastRow {
+
+    private final long mDate;
+    private final int mWeatherId;
+    private final int mIconResource;
+    private final int mArtResource;
+    // null when the art pack is the app's own drawables
+    private final String mArtUrl;
+    private final String mDayLabel;
+    // "Today, June 24" for the first row of the today layout, if that isn't just mDayLabel;
+    // null for the other rows
+    private final String mLongDayLabel;
+    private final String mDescription;
+    private final String mDescriptionA11y;
+    private final String mHigh;
+    private final String mHighA11y;
+    private final String mLow;
+    private final String mLowA11y;
+
+    private ForecastRow(Context context, Cursor cursor, boolean first) {
+        mDate = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        mWeatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        mIconResource = Utility.getIconResourceForWeatherCondition(mWeatherId);
+        mArtResource = Utility.getArtResourceForWeatherCondition(mWeatherId);
+        mArtUrl = Utility.usingLocalGraphics(context)
+                ? null : Utility.getArtUrlForWeatherCondition(context, mWeatherId);
+        mDayLabel = Utility.getFriendlyDayString(context, mDate, false);
+        String longDayLabel = first ? Utility.getFriendlyDayString(context, mDate, true) : null;
+        mLongDayLabel = mDayLabel.equals(longDayLabel) ? null : longDayLabel;
+        mDescription = Utility.getStringForWeatherCondition(context, mWeatherId);
+        mDescriptionA11y = context.getString(R.string.a11y_forecast, mDescription);
+        mHigh = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        mHighA11y = context.getString(R.string.a11y_high_temp, mHigh);
+        mLow = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        mLowA11y = context.getString(R.string.a11y_low_temp, mLow);
+    }
+
+    /**
+     * Adds a row for each of the cursor's days, which must have the columns of
+     * ForecastFragment's projection, to rows.  Moves the cursor.
+     *
+     * @param first whether the cursor's first day is the first of the list
+     */
+    public static void addRows(Context context, Cursor cursor, boolean first,
+                               List<ForecastRow> rows) {
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows.add(new ForecastRow(context, cursor, first && cursor.isFirst()));
+        }
+    }
+
+    /**
+     * @return whether the other row shows exactly what this one does
+     */
+    public boolean contentEquals(ForecastRow other) {
+        return this == other || (mDate == other.mDate
+                && mWeatherId == other.mWeatherId
+                && mIconResource == other.mIconResource
+                && mArtResource == other.mArtResource
+                && equals(mArtUrl, other.mArtUrl)
+                && mDayLabel.equals(other.mDayLabel)
+                && equals(mLongDayLabel, other.mLongDayLabel)
+                && mDescription.equals(other.mDescription)
+                && mDescriptionA11y.equals(other.mDescriptionA11y)
+                && mHigh.equals(other.mHigh)
+                && mHighA11y.equals(other.mHighA11y)
+                && mLow.equals(other.mLow)
+                && mLowA11y.equals(other.mLowA11y));
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public int getIconResource() {
+        return mIconResource;
+    }
+
+    public int getArtResource() {
+        return mArtResource;
+    }
+
+    public String getArtUrl() {
+        return mArtUrl;
+    }
+
+    /**
+     * @param longToday whether to say "Today, June 24" rather than "Today" on the first row
+     */
+    public String getDayLabel(boolean longToday) {
+        return longToday && mLongDayLabel != null ? mLongDayLabel : mDayLabel;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getDescriptionA11y() {
+        return mDescriptionA11y;
+    }
+
+    public String getHigh() {
+        return mHigh;
+    }
+
+    public String getHighA11y() {
+        return mHighA11y;
+    }
+
+    public String getLow() {
+        return mLow;
+    }
+
+    public String getLowA11y() {
+        return mLowA11y;
+    }
+}
@@ -28,8 +28,9 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  When the
+ * adapter reports which rows were inserted or removed, the checked positions are moved along
+ * with them; when it only says that everything changed, they are found again by stable id.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -44,6 +45,21 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, 0, itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            offsetCheckedPositions(positionStart, itemCount, 0);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +69,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -154,6 +171,39 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
+    /*
+        The rows in [start, start + removed) were replaced by inserted new ones: checked rows
+        after them move along, and checked rows among them are forgotten.
+     */
+    void offsetCheckedPositions(int start, int removed, int inserted) {
+        SparseBooleanArray checkStates = new SparseBooleanArray();
+        for (int i = 0; i < mCheckStates.size(); i++) {
+            int position = movedPosition(mCheckStates.keyAt(i), start, removed, inserted);
+            if (position != RecyclerView.NO_POSITION) {
+                checkStates.put(position, mCheckStates.valueAt(i));
+            }
+        }
+        mCheckStates = checkStates;
+
+        for (int i = mCheckedIdStates.size() - 1; i >= 0; i--) {
+            int position = movedPosition(mCheckedIdStates.valueAt(i), start, removed, inserted);
+            if (position != RecyclerView.NO_POSITION) {
+                mCheckedIdStates.setValueAt(i, position);
+            } else {
+                mCheckedIdStates.removeAt(i);
+            }
+        }
+    }
+
+    private static int movedPosition(int position, int start, int removed, int inserted) {
+        if (position < start) {
+            return position;
+        } else if (position < start + removed) {
+            return RecyclerView.NO_POSITION;
+        }
+        return position - removed + inserted;
+    }
+
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
@@ -162,7 +212,9 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            // The row may be gone along with the end of the list.
+            final long lastPosId = lastPos < oldItemCount
+                    ? mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * How long the forecast list takes to bind a row, and how many frames it drops while it
+ * scrolls.
+ *
+ * Each scroll, from the first touch or fling until the list settles, is one period.  While it
+ * lasts a frame callback sees every vsync (from Jelly Bean on), and a gap of more than one
+ * frame interval between two of them counts the frames missed.  The binds and frames of each
+ * period are logged when it ends:
+ *
+ *     adb shell setprop log.tag.ListMetrics DEBUG
+ *
+ * and the totals since the list was created are kept for the tests.  Only the main thread
+ * records, so nothing here is synchronized.
+ */
+final class ListMetrics {
+
+    static final String LOG_TAG = ListMetrics.class.getSimpleName();
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private final long mFrameIntervalNanos;
+    private boolean mScrolling;
+    private long mLastFrameNanos;
+
+    // This scroll.
+    private int mScrollBinds;
+    private long mScrollBindNanos;
+    private int mScrollFrames;
+    private int mScrollDroppedFrames;
+
+    // Since the list was created.
+    private int mBinds;
+    private long mBindNanos;
+    private long mMaxBindNanos;
+    private int mFrames;
+    private int mDroppedFrames;
+
+    private final Object mFrameCallback;
+    private final RecyclerView.OnScrollListener mScrollListener =
+            new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                    if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                        endScroll();
+                    } else {
+                        startScroll();
+                    }
+                }
+            };
+
+    ListMetrics(Context context) {
+        float refreshRate = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+                .getDefaultDisplay().getRefreshRate();
+        mFrameIntervalNanos = refreshRate >= 10
+                ? (long) (1000000000L / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS;
+        mFrameCallback = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                ? new FrameCallback() : null;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class FrameCallback implements Choreographer.FrameCallback {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mScrolling) {
+                onFrame(frameTimeNanos);
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+    }
+
+    void attach(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(mScrollListener);
+    }
+
+    void detach(RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(mScrollListener);
+        endScroll();
+    }
+
+    /**
+     * @return the start time to pass to {@link #recordBind}
+     */
+    long startBind() {
+        return System.nanoTime();
+    }
+
+    void recordBind(long start) {
+        long nanos = System.nanoTime() - start;
+        mScrollBinds++;
+        mScrollBindNanos += nanos;
+        mBinds++;
+        mBindNanos += nanos;
+        if (nanos > mMaxBindNanos) {
+            mMaxBindNanos = nanos;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    void startScroll() {
+        if (mScrolling) return;
+        mScrolling = true;
+        mLastFrameNanos = 0;
+        mScrollBinds = 0;
+        mScrollBindNanos = 0;
+        mScrollFrames = 0;
+        mScrollDroppedFrames = 0;
+        if (mFrameCallback != null) {
+            Choreographer.getInstance().postFrameCallback((FrameCallback) mFrameCallback);
+        }
+    }
+
+    void onFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            // Rounded, so a callback that runs a little late doesn't count as a missed frame.
+            long missed = (frameTimeNanos - mLastFrameNanos + mFrameIntervalNanos / 2)
+                    / mFrameIntervalNanos - 1;
+            if (missed > 0) {
+                mScrollDroppedFrames += missed;
+                mDroppedFrames += missed;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        mScrollFrames++;
+        mFrames++;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    void endScroll() {
+        if (!mScrolling) return;
+        mScrolling = false;
+        if (mFrameCallback != null) {
+            Choreographer.getInstance().removeFrameCallback((FrameCallback) mFrameCallback);
+        }
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "Scroll: frames=" + mScrollFrames
+                    + " dropped=" + mScrollDroppedFrames
+                    + " binds=" + mScrollBinds
+                    + " bind=" + (mScrollBinds == 0 ? 0 : mScrollBindNanos / mScrollBinds / 1000)
+                    + "us, since created: binds=" + mBinds
+                    + " bind=" + getAverageBindMicros()
+                    + "us max=" + mMaxBindNanos / 1000
+                    + "us dropped=" + mDroppedFrames + "/" + mFrames);
+        }
+    }
+
+    long getFrameIntervalNanos() {
+        return mFrameIntervalNanos;
+    }
+
+    int getBindCount() {
+        return mBinds;
+    }
+
+    long getAverageBindMicros() {
+        return mBinds == 0 ? 0 : mBindNanos / mBinds / 1000;
+    }
+
+    long getMaxBindMicros() {
+        return mMaxBindNanos / 1000;
+    }
+
+    int getFrameCount() {
+        return mFrames;
+    }
+
+    int getDroppedFrameCount() {
+        return mDroppedFrames;
+    }
+}
@@ -19,18 +19,55 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.preference.EditTextPreference;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    // Wait for a pause in typing before looking up suggestions, rather than on every keystroke.
+    static final private int SEARCH_DELAY_MS = 150;
+
+    private static final String[] SEARCH_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_CITY_NAME
+    };
+    static final int COL_LOCATION_SETTING = 0;
+    static final int COL_CITY_NAME = 1;
+
     private int mMinLength;
 
+    private final Handler mHandler = new Handler();
+    private ArrayAdapter<String> mSuggestionAdapter;
+    // The location settings of the suggestions, in the order they are listed
+    private final List<String> mSuggestionSettings = new ArrayList<>();
+    // Bumped for every lookup, so that a slow one can't overwrite the results of a later one
+    private int mSearchGeneration;
+
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            new SearchTask(++mSearchGeneration).execute(getEditText().getText().toString());
+        }
+    };
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.getTheme().obtainStyledAttributes(
@@ -45,6 +82,35 @@ public class LocationEditTextPreference extends EditTextPreference {
     }
 
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        super.onAddEditTextToDialogView(dialogView, editText);
+
+        // Stored locations matching what has been typed so far, listed under the text field.
+        mSuggestionAdapter = new ArrayAdapter<>(getContext(), android.R.layout.simple_list_item_1);
+        mSuggestionSettings.clear();
+        ListView suggestions = new ListView(getContext());
+        suggestions.setAdapter(mSuggestionAdapter);
+        suggestions.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                String locationSetting = mSuggestionSettings.get(position);
+                getEditText().setText(locationSetting);
+                getEditText().setSelection(locationSetting.length());
+            }
+        });
+        ((ViewGroup) editText.getParent()).addView(suggestions,
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        super.onDialogClosed(positiveResult);
+        mHandler.removeCallbacks(mSearchRunnable);
+        // Drop the results of any lookup still running.
+        mSearchGeneration++;
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
@@ -78,7 +144,61 @@ public class LocationEditTextPreference extends EditTextPreference {
                         positiveButton.setEnabled(true);
                     }
                 }
+
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY_MS);
             }
         });
     }
+
+    /*
+        Looks up the stored locations matching a query off the main thread, and lists them in
+        the dialog if no later lookup was started in the meantime.
+     */
+    private class SearchTask extends AsyncTask<String, Void, List<String[]>> {
+
+        private final int mGeneration;
+
+        SearchTask(int generation) {
+            mGeneration = generation;
+        }
+
+        @Override
+        protected List<String[]> doInBackground(String... params) {
+            List<String[]> matches = new ArrayList<>();
+            Cursor cursor = getContext().getContentResolver().query(
+                    WeatherContract.LocationEntry.buildLocationSearch(params[0]),
+                    SEARCH_COLUMNS, null, null, null);
+            if (cursor == null) {
+                return matches;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    matches.add(new String[]{cursor.getString(COL_LOCATION_SETTING),
+                            cursor.getString(COL_CITY_NAME)});
+                }
+            } finally {
+                cursor.close();
+            }
+            return matches;
+        }
+
+        @Override
+        protected void onPostExecute(List<String[]> matches) {
+            if (mGeneration != mSearchGeneration || mSuggestionAdapter == null) {
+                return;
+            }
+            mSuggestionSettings.clear();
+            mSuggestionAdapter.clear();
+            for (String[] match : matches) {
+                String locationSetting = match[COL_LOCATION_SETTING];
+                String cityName = match[COL_CITY_NAME];
+                mSuggestionSettings.add(locationSetting);
+                mSuggestionAdapter.add(cityName == null || cityName.equalsIgnoreCase(locationSetting)
+                        ? locationSetting
+                        : getContext().getString(R.string.format_location_suggestion,
+                                cityName, locationSetting));
+            }
+        }
+    }
 }
@@ -15,13 +15,18 @@
  */
 package com.example.android.sunshine.app;
 
+import android.app.Dialog;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.util.Pair;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
@@ -47,72 +52,89 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private final static int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
     public static final String SENT_TOKEN_TO_SERVER = "sentTokenToServer";
 
+    // The Play Services check runs with the application context, and by the time it finishes
+    // the activity that started it may have been recreated or closed.  So a problem it finds is
+    // kept here and shown by whichever MainActivity is resumed, now or next.  Both are only
+    // touched on the main thread.
+    private static int sPlayServicesResult = ConnectionResult.SUCCESS;
+    private static MainActivity sResumedActivity;
+
     private boolean mTwoPane;
+    // The Play Services dialog this activity shows, and the result it is for.
+    private Dialog mPlayServicesDialog;
+    private int mPlayServicesDialogResult;
     private String mLocation;
+    private StartupTasks mStartup;
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        mLocation = Utility.getPreferredLocation(this);
-        Uri contentUri = getIntent() != null ? getIntent().getData() : null;
-
-        setContentView(R.layout.activity_main);
-        Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
-        setSupportActionBar(toolbar);
-        getSupportActionBar().setDisplayShowTitleEnabled(false);
-
-        if (findViewById(R.id.weather_detail_container) != null) {
-            // The detail container view will be present only in the large-screen layouts
-            // (res/layout-sw600dp). If this view is present, then the activity should be
-            // in two-pane mode.
-            mTwoPane = true;
-            // In two-pane mode, show the detail view in this activity by
-            // adding or replacing the detail fragment using a
-            // fragment transaction.
-            if (savedInstanceState == null) {
-                DetailFragment fragment = new DetailFragment();
-                if (contentUri != null) {
-                    Bundle args = new Bundle();
-                    args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
-                    fragment.setArguments(args);
-                }
-                getSupportFragmentManager().beginTransaction()
-                        .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
-                        .commit();
+        mStartup = new StartupTasks();
+        TraceCompat.beginSection("MainActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+            mLocation = Utility.getPreferredLocation(this);
+            Uri contentUri = getIntent() != null ? getIntent().getData() : null;
+
+            TraceCompat.beginSection("setContentView");
+            try {
+                setContentView(R.layout.activity_main);
+            } finally {
+                TraceCompat.endSection();
             }
-        } else {
-            mTwoPane = false;
-            getSupportActionBar().setElevation(0f);
-        }
+            Toolbar toolbar = (Toolbar)findViewById(R.id.toolbar);
+            setSupportActionBar(toolbar);
+            getSupportActionBar().setDisplayShowTitleEnabled(false);
 
-        ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
-                .findFragmentById(R.id.fragment_forecast));
-        forecastFragment.setUseTodayLayout(!mTwoPane);
-        if (contentUri != null) {
-            forecastFragment.setInitialSelectedDate(
-                    WeatherContract.WeatherEntry.getDateFromUri(contentUri));
-        }
+            if (findViewById(R.id.weather_detail_container) != null) {
+                // The detail container view will be present only in the large-screen layouts
+                // (res/layout-sw600dp). If this view is present, then the activity should be
+                // in two-pane mode.
+                mTwoPane = true;
+                // In two-pane mode, show the detail view in this activity by
+                // adding or replacing the detail fragment using a
+                // fragment transaction.
+                if (savedInstanceState == null) {
+                    DetailFragment fragment = new DetailFragment();
+                    if (contentUri != null) {
+                        Bundle args = new Bundle();
+                        args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
+                        fragment.setArguments(args);
+                    }
+                    getSupportFragmentManager().beginTransaction()
+                            .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
+                            .commit();
+                }
+            } else {
+                mTwoPane = false;
+                getSupportActionBar().setElevation(0f);
+            }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+            ForecastFragment forecastFragment =  ((ForecastFragment)getSupportFragmentManager()
+                    .findFragmentById(R.id.fragment_forecast));
+            forecastFragment.setUseTodayLayout(!mTwoPane);
+            if (contentUri != null) {
+                forecastFragment.setInitialSelectedDate(
+                        WeatherContract.WeatherEntry.getDateFromUri(contentUri));
+            }
 
-        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
-        // skip the registration and this device will not receive any downstream messages from
-        // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
+            // Nothing on the first screen waits for the sync account or for GCM, so they are
+            // set up after it has been drawn, in this order.
+            final Context appContext = getApplicationContext();
+            mStartup.runAfterFirstFrame("initializeSyncAdapter", new Runnable() {
+                @Override
+                public void run() {
+                    SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                }
+            });
+            if (savedInstanceState == null) {
+                // A recreated activity picks up the result of the check its first instance made.
+                mStartup.runAfterFirstFrame("checkPlayServices", new PlayServicesCheck(appContext));
             }
+            mStartup.start(getWindow().getDecorView());
+        } finally {
+            TraceCompat.endSection();
         }
-
     }
 
     @Override
@@ -141,6 +163,8 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     protected void onResume() {
         super.onResume();
+        sResumedActivity = this;
+        showPlayServicesResult();
         String location = Utility.getPreferredLocation( this );
         // update the location in our second pane using the fragment manager
             if (location != null && !location.equals(mLocation)) {
@@ -156,6 +180,24 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    @Override
+    protected void onPause() {
+        if (sResumedActivity == this) {
+            sResumedActivity = null;
+        }
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPlayServicesDialog != null && mPlayServicesDialog.isShowing()) {
+            // Dismissed with the activity, e.g. on rotation; the next one shows it again.
+            mPlayServicesDialog.dismiss();
+            sPlayServicesResult = mPlayServicesDialogResult;
+        }
+        super.onDestroy();
+    }
+
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
@@ -186,21 +228,79 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
      * Check the device to make sure it has the Google Play Services APK. If
      * it doesn't, display a dialog that allows users to download the APK from
      * the Google Play Store or enable it in the device's system settings.
+     *
+     * If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
+     * skip the registration and this device will not receive any downstream messages from
+     * our fake server. Because weather alerts are not a core feature of the app, this should
+     * not affect the behavior of the app, from a user perspective.
+     *
+     * Runs on the startup thread, and holds no activity; the dialog is shown on the main thread
+     * by the activity that is resumed.
      */
-    private boolean checkPlayServices() {
-        GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
-        int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
-        if (resultCode != ConnectionResult.SUCCESS) {
-            if (apiAvailability.isUserResolvableError(resultCode)) {
-                apiAvailability.getErrorDialog(this, resultCode,
-                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
-            } else {
-                Log.i(LOG_TAG, "This device is not supported.");
-                finish();
+    private static final class PlayServicesCheck implements Runnable {
+        private final Context mContext;
+
+        PlayServicesCheck(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void run() {
+            GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
+            final int resultCode = apiAvailability.isGooglePlayServicesAvailable(mContext);
+            if (resultCode != ConnectionResult.SUCCESS) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sPlayServicesResult = resultCode;
+                        if (sResumedActivity != null) {
+                            sResumedActivity.showPlayServicesResult();
+                        }
+                    }
+                });
+                return;
+            }
+
+            // Because this is the initial creation of the app, we'll want to be certain we have
+            // a token. If we do not, then we will start the IntentService that will register
+            // this application with GCM.
+            SharedPreferences sharedPreferences =
+                    PreferenceManager.getDefaultSharedPreferences(mContext);
+            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+            if (!sentToken) {
+                Intent intent = new Intent(mContext, RegistrationIntentService.class);
+                mContext.startService(intent);
             }
-            return false;
         }
-        return true;
+    }
+
+    // Shows a problem the Play Services check found, once.
+    private void showPlayServicesResult() {
+        int resultCode = sPlayServicesResult;
+        if (resultCode == ConnectionResult.SUCCESS || isFinishing()) return;
+        sPlayServicesResult = ConnectionResult.SUCCESS;
+        GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
+        if (apiAvailability.isUserResolvableError(resultCode)) {
+            mPlayServicesDialog = apiAvailability.getErrorDialog(this, resultCode,
+                    PLAY_SERVICES_RESOLUTION_REQUEST);
+            mPlayServicesDialogResult = resultCode;
+            mPlayServicesDialog.show();
+        } else {
+            Log.i(LOG_TAG, "This device is not supported.");
+            finish();
+        }
+    }
+
+    /**
+     * Called by the forecast list when it has drawn its first row.
+     */
+    @Override
+    public void onForecastShown() {
+        mStartup.onFirstRow();
+    }
+
+    StartupTasks getStartup() {
+        return mStartup;
     }
 
 }
@@ -27,6 +27,7 @@ import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStatus;
 
 /**
  * A {@link PreferenceActivity} that presents a set of application settings.
@@ -97,15 +98,15 @@ public class SettingsActivity extends PreferenceActivity
                 preference.setSummary(listPreference.getEntries()[prefIndex]);
             }
         } else if (key.equals(getString(R.string.pref_location_key))) {
-            @SunshineSyncAdapter.LocationStatus int status = Utility.getLocationStatus(this);
+            @SyncStatus.LocationStatus int status = Utility.getLocationStatus(this);
             switch (status) {
-                case SunshineSyncAdapter.LOCATION_STATUS_OK:
+                case SyncStatus.LOCATION_STATUS_OK:
                     preference.setSummary(stringValue);
                     break;
-                case SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN:
+                case SyncStatus.LOCATION_STATUS_UNKNOWN:
                     preference.setSummary(getString(R.string.pref_location_unknown_description, value.toString()));
                     break;
-                case SunshineSyncAdapter.LOCATION_STATUS_INVALID:
+                case SyncStatus.LOCATION_STATUS_INVALID:
                     preference.setSummary(getString(R.string.pref_location_error_description, value.toString()));
                     break;
                 default:
@@ -131,6 +132,8 @@ public class SettingsActivity extends PreferenceActivity
     // start our synchronization here
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // Our listeners run in no set order; make sure the snapshot has this change.
+        SettingsSnapshot.refresh(this);
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
             // first clear locationStatus
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SyncStatus;
+
+/**
+ * The user's settings as of the last change: units, location, art pack, notifications and the
+ * location status.
+ *
+ * Every temperature, list row and widget row needs some of these, and reading them from the
+ * preferences each time costs a preferences lookup and a resource lookup per key.  Instead the
+ * settings are read once into an immutable snapshot, and a preference listener swaps in a new
+ * one whenever one of them changes.  Any thread can read the snapshot; it is never modified.
+ *
+ * Preference listeners are called in no particular order, so a listener that reads the
+ * snapshot in response to a change calls {@link #refresh} first rather than depend on the
+ * snapshot's own listener having run.  Code that writes one of these settings refreshes too.
+ */
+public final class SettingsSnapshot {
+
+    private static final Object sLock = new Object();
+    private static volatile SettingsSnapshot sSnapshot;
+    // SharedPreferences only keeps weak references to its listeners.
+    private static Listener sListener;
+
+    private final String mLocation;
+    private final boolean mMetric;
+    private final String mArtPack;
+    private final boolean mLocalGraphics;
+    private final boolean mNotificationsEnabled;
+    private final int mLocationStatus;
+
+    private SettingsSnapshot(Keys keys, SharedPreferences prefs) {
+        mLocation = prefs.getString(keys.mLocation, keys.mLocationDefault);
+        mMetric = prefs.getString(keys.mUnits, keys.mUnitsMetric).equals(keys.mUnitsMetric);
+        mArtPack = prefs.getString(keys.mArtPack, keys.mArtPackSunshine);
+        mLocalGraphics = mArtPack.equals(keys.mArtPackSunshine);
+        mNotificationsEnabled = prefs.getBoolean(keys.mNotifications, keys.mNotificationsDefault);
+        mLocationStatus = prefs.getInt(keys.mLocationStatus,
+                SyncStatus.LOCATION_STATUS_UNKNOWN);
+    }
+
+    /**
+     * Returns the current settings.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sSnapshot;
+        if (snapshot == null) {
+            snapshot = refresh(context);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the settings again and makes them current.
+     *
+     * @return the new snapshot
+     */
+    public static SettingsSnapshot refresh(Context context) {
+        synchronized (sLock) {
+            if (sListener == null) {
+                Context appContext = context.getApplicationContext();
+                sListener = new Listener(new Keys(appContext),
+                        PreferenceManager.getDefaultSharedPreferences(appContext));
+                sListener.mPrefs.registerOnSharedPreferenceChangeListener(sListener);
+            }
+            SettingsSnapshot snapshot = new SettingsSnapshot(sListener.mKeys, sListener.mPrefs);
+            sSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    public String getLocation() {
+        return mLocation;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the format of the art pack's image urls
+     */
+    public String getArtPack() {
+        return mArtPack;
+    }
+
+    public boolean usingLocalGraphics() {
+        return mLocalGraphics;
+    }
+
+    public boolean isNotificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+
+    @SuppressWarnings("ResourceType")
+    public @SyncStatus.LocationStatus int getLocationStatus() {
+        return mLocationStatus;
+    }
+
+    // The keys and defaults aren't translated, so they are looked up once.
+    private static final class Keys {
+        final String mLocation;
+        final String mLocationDefault;
+        final String mUnits;
+        final String mUnitsMetric;
+        final String mArtPack;
+        final String mArtPackSunshine;
+        final String mNotifications;
+        final boolean mNotificationsDefault;
+        final String mLocationStatus;
+
+        Keys(Context context) {
+            mLocation = context.getString(R.string.pref_location_key);
+            mLocationDefault = context.getString(R.string.pref_location_default);
+            mUnits = context.getString(R.string.pref_units_key);
+            mUnitsMetric = context.getString(R.string.pref_units_metric);
+            mArtPack = context.getString(R.string.pref_art_pack_key);
+            mArtPackSunshine = context.getString(R.string.pref_art_pack_sunshine);
+            mNotifications = context.getString(R.string.pref_enable_notifications_key);
+            mNotificationsDefault = Boolean.parseBoolean(
+                    context.getString(R.string.pref_enable_notifications_default));
+            mLocationStatus = context.getString(R.string.pref_location_status_key);
+        }
+
+        boolean contains(String key) {
+            // A null key means the preferences were cleared.
+            return key == null || key.equals(mLocation) || key.equals(mUnits)
+                    || key.equals(mArtPack) || key.equals(mNotifications)
+                    || key.equals(mLocationStatus);
+        }
+    }
+
+    private static final class Listener implements SharedPreferences.OnSharedPreferenceChangeListener {
+        final Keys mKeys;
+        final SharedPreferences mPrefs;
+
+        Listener(Keys keys, SharedPreferences prefs) {
+            mKeys = keys;
+            mPrefs = prefs;
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            if (mKeys.contains(key)) {
+                synchronized (sLock) {
+                    sSnapshot = new SettingsSnapshot(mKeys, mPrefs);
+                }
+            }
+        }
+    }
+}
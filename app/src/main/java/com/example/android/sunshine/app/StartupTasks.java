@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The work MainActivity does on start that the first screen doesn't need, held back until the
+ * first frame has been drawn and then run off the main thread, and the timing of the start.
+ *
+ * Tasks run one at a time, in the order they were queued, on one thread shared by every
+ * instance, so a task can rely on those queued before it, even by an earlier activity, having
+ * finished.  Each is a trace section of its own, as are the parts of onCreate, for systrace:
+ *
+ *     python systrace.py --app=com.example.android.sunshine.app activity view
+ *
+ * The time from onCreate until the first frame, and until the first forecast row is drawn, is
+ * logged with
+ *
+ *     adb shell setprop log.tag.StartupTasks DEBUG
+ */
+final class StartupTasks {
+
+    static final String LOG_TAG = StartupTasks.class.getSimpleName();
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final long mCreateNanos;
+    // Set on the main thread, read by the tests on theirs.
+    private volatile long mFirstFrameNanos = -1;
+    private volatile long mFirstRowNanos = -1;
+    // Until the first frame has been drawn.
+    private List<Runnable> mPending = new ArrayList<>();
+
+    /**
+     * Starts the clock; call first thing in onCreate.
+     */
+    StartupTasks() {
+        mCreateNanos = System.nanoTime();
+    }
+
+    /**
+     * Runs the tasks once the view has drawn its first frame.
+     */
+    void start(final View view) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                mFirstFrameNanos = System.nanoTime();
+                // Posted from here, it runs once this frame has been drawn.
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Runnable> pending = mPending;
+                        mPending = null;
+                        for (Runnable task : pending) {
+                            sExecutor.execute(task);
+                        }
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Queues a task to run off the main thread after the first frame, in its own trace section.
+     */
+    void runAfterFirstFrame(final String section, final Runnable task) {
+        Runnable traced = new Runnable() {
+            @Override
+            public void run() {
+                TraceCompat.beginSection(section);
+                try {
+                    task.run();
+                } finally {
+                    TraceCompat.endSection();
+                }
+            }
+        };
+        if (mPending != null) {
+            mPending.add(traced);
+        } else {
+            sExecutor.execute(traced);
+        }
+    }
+
+    /**
+     * Records when the forecast list first drew a row.
+     */
+    void onFirstRow() {
+        if (mFirstRowNanos != -1) return;
+        mFirstRowNanos = System.nanoTime();
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "First frame " + getFirstFrameMillis() + "ms, first forecast row "
+                    + getFirstRowMillis() + "ms after onCreate");
+        }
+    }
+
+    /**
+     * @return the time from onCreate until the first frame, or -1 until it is drawn
+     */
+    long getFirstFrameMillis() {
+        return mFirstFrameNanos == -1 ? -1 : (mFirstFrameNanos - mCreateNanos) / 1000000;
+    }
+
+    /**
+     * @return the time from onCreate until the first forecast row, or -1 until it is drawn
+     */
+    long getFirstRowMillis() {
+        return mFirstRowNanos == -1 ? -1 : (mFirstRowNanos - mCreateNanos) / 1000000;
+    }
+
+    /**
+     * Waits for the tasks already handed to the background thread to finish.
+     *
+     * @return false if they took longer than the timeout
+     */
+    static boolean awaitTasks(long timeoutMillis) throws InterruptedException {
+        Future<?> marker = sExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        try {
+            marker.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+}
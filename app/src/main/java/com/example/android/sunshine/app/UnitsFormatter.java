@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * The temperature and wind strings of the list, the detail view, the widgets, the notification
+ * and the watch.
+ *
+ * Both are shown to the whole degree or km/h, so there are only a few hundred different strings,
+ * and each is formatted once and then looked up by its rounded value.  They depend on the units
+ * and the locale, so they are all dropped when either differs from what they were made for,
+ * checked on every call as DayFormatter does.
+ *
+ * A value that falls too close to a half to be sure which way String.format rounds it, or is
+ * outside the tables, is formatted as before.
+ */
+public final class UnitsFormatter {
+
+    // Wider than any temperature on Earth, in either unit.
+    private static final int MIN_DEGREES = -100;
+    private static final int MAX_DEGREES = 150;
+    private static final int MAX_SPEED = 200;
+
+    // The old if-chain's eight directions, two sectors of 22.5 degrees each, starting at north.
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+    private static final byte[] SECTOR_DIRECTIONS = {
+            0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 0
+    };
+    private static final double SECTOR_DEGREES = 22.5;
+    private static final String UNKNOWN_DIRECTION = "Unknown";
+
+    private static final double HALF_TOLERANCE = 1e-6;
+
+    private static final class Strings {
+        final boolean mMetric;
+        final Locale mLocale;
+        final Locale mResourceLocale;
+        final String mTemperatureFormat;
+        final String mWindFormat;
+        // Filled in as they are first needed; a race only formats one twice.
+        final String[] mTemperatures = new String[MAX_DEGREES - MIN_DEGREES + 1];
+        final String[] mWinds = new String[(MAX_SPEED + 1) * DIRECTIONS.length];
+
+        Strings(Context context, boolean metric, Locale locale, Locale resourceLocale) {
+            mMetric = metric;
+            mLocale = locale;
+            mResourceLocale = resourceLocale;
+            mTemperatureFormat = context.getString(R.string.format_temperature);
+            mWindFormat = context.getString(
+                    metric ? R.string.format_wind_kmh : R.string.format_wind_mph);
+        }
+    }
+
+    private static volatile Strings sStrings;
+
+    private UnitsFormatter() {
+    }
+
+    private static Strings getStrings(Context context) {
+        boolean metric = SettingsSnapshot.get(context).isMetric();
+        Locale locale = Locale.getDefault();
+        Locale resourceLocale = context.getResources().getConfiguration().locale;
+        Strings strings = sStrings;
+        if (strings == null || strings.mMetric != metric || !strings.mLocale.equals(locale)
+                || !strings.mResourceLocale.equals(resourceLocale)) {
+            strings = new Strings(context, metric, locale, resourceLocale);
+            sStrings = strings;
+        }
+        return strings;
+    }
+
+    /**
+     * Returns the whole number "%1.0f" rounds value to, or Integer.MIN_VALUE if that isn't
+     * certain or is outside min and max.  "-0" is left to String.format too.
+     */
+    private static int rounded(double value, int min, int max) {
+        if (!(value > min - 1 && value < max + 1)
+                || Math.abs(value - Math.floor(value) - 0.5) < HALF_TOLERANCE) {
+            return Integer.MIN_VALUE;
+        }
+        int whole = (int) Math.round(value);
+        if (whole < min || whole > max
+                || (whole == 0 && Double.doubleToRawLongBits(value) < 0)) {
+            return Integer.MIN_VALUE;
+        }
+        return whole;
+    }
+
+    /**
+     * @param temperature in Celsius
+     * @return the temperature in the user's units, e.g. "21°"
+     */
+    public static String formatTemperature(Context context, double temperature) {
+        Strings strings = getStrings(context);
+        if (!strings.mMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        int degrees = rounded(temperature, MIN_DEGREES, MAX_DEGREES);
+        if (degrees == Integer.MIN_VALUE) {
+            return String.format(strings.mTemperatureFormat, temperature);
+        }
+        String formatted = strings.mTemperatures[degrees - MIN_DEGREES];
+        if (formatted == null) {
+            formatted = String.format(strings.mTemperatureFormat, temperature);
+            strings.mTemperatures[degrees - MIN_DEGREES] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @param windSpeed in km/h
+     * @param degrees the direction the wind blows from, clockwise from north
+     * @return the speed in the user's units and the compass direction, e.g. "14 km/h NW"
+     */
+    public static String formatWind(Context context, float windSpeed, float degrees) {
+        Strings strings = getStrings(context);
+        if (!strings.mMetric) {
+            windSpeed = .621371192237334f * windSpeed;
+        }
+        int direction;
+        if (degrees >= 337.5 || degrees < 22.5) {
+            // Including anything beyond a full turn either way.
+            direction = 0;
+        } else if (degrees >= 22.5) {
+            direction = SECTOR_DIRECTIONS[(int) (degrees / SECTOR_DEGREES)];
+        } else {
+            // NaN
+            return String.format(strings.mWindFormat, windSpeed, UNKNOWN_DIRECTION);
+        }
+
+        int speed = rounded(windSpeed, 0, MAX_SPEED);
+        if (speed == Integer.MIN_VALUE) {
+            return String.format(strings.mWindFormat, windSpeed, DIRECTIONS[direction]);
+        }
+        int index = speed * DIRECTIONS.length + direction;
+        String formatted = strings.mWinds[index];
+        if (formatted == null) {
+            formatted = String.format(strings.mWindFormat, windSpeed, DIRECTIONS[direction]);
+            strings.mWinds[index] = formatted;
+        }
+        return formatted;
+    }
+}
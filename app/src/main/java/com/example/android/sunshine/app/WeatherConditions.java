@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The icon, art, description and images for each OpenWeatherMap condition code.
+ *
+ * Every list row, widget row and notification looks these up, so rather than walk a chain of
+ * range checks each time, the answers are worked out once into arrays indexed by the code.  The
+ * descriptions are in the user's language and the art urls depend on the art pack, so those are
+ * kept for the locale and the art pack they were made for, and made again when either changes.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    private static final int FIRST_CODE = 200;
+    private static final int LAST_CODE = 962;
+    private static final int CODE_COUNT = LAST_CODE - FIRST_CODE + 1;
+
+    private static final int KIND_NONE = -1;
+    private static final int KIND_STORM = 0;
+    private static final int KIND_LIGHT_RAIN = 1;
+    private static final int KIND_RAIN = 2;
+    private static final int KIND_SNOW = 3;
+    private static final int KIND_FOG = 4;
+    private static final int KIND_TORNADO = 5;
+    private static final int KIND_CLEAR = 6;
+    private static final int KIND_LIGHT_CLOUDS = 7;
+    private static final int KIND_CLOUDS = 8;
+
+    // Indexed by kind.
+    private static final int[] KIND_ICONS = {
+            R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain, R.drawable.ic_snow,
+            R.drawable.ic_fog, R.drawable.ic_storm, R.drawable.ic_clear,
+            R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+    private static final int[] KIND_ART = {
+            R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_storm, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds
+    };
+    private static final String[] KIND_ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "storm", "clear", "light_clouds",
+            "clouds"
+    };
+    private static final String[] KIND_IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // The codes with a description of their own, besides the 2xx and 3xx groups.
+    private static final int[][] CODE_STRINGS = {
+            {500, R.string.condition_500}, {501, R.string.condition_501},
+            {502, R.string.condition_502}, {503, R.string.condition_503},
+            {504, R.string.condition_504}, {511, R.string.condition_511},
+            {520, R.string.condition_520}, {531, R.string.condition_531},
+            {600, R.string.condition_600}, {601, R.string.condition_601},
+            {602, R.string.condition_602}, {611, R.string.condition_611},
+            {612, R.string.condition_612}, {615, R.string.condition_615},
+            {616, R.string.condition_616}, {620, R.string.condition_620},
+            {621, R.string.condition_621}, {622, R.string.condition_622},
+            {701, R.string.condition_701}, {711, R.string.condition_711},
+            {721, R.string.condition_721}, {731, R.string.condition_731},
+            {741, R.string.condition_741}, {751, R.string.condition_751},
+            {761, R.string.condition_761}, {762, R.string.condition_762},
+            {771, R.string.condition_771}, {781, R.string.condition_781},
+            {800, R.string.condition_800}, {801, R.string.condition_801},
+            {802, R.string.condition_802}, {803, R.string.condition_803},
+            {804, R.string.condition_804}, {900, R.string.condition_900},
+            {901, R.string.condition_901}, {902, R.string.condition_902},
+            {903, R.string.condition_903}, {904, R.string.condition_904},
+            {905, R.string.condition_905}, {906, R.string.condition_906},
+            {951, R.string.condition_951}, {952, R.string.condition_952},
+            {953, R.string.condition_953}, {954, R.string.condition_954},
+            {955, R.string.condition_955}, {956, R.string.condition_956},
+            {957, R.string.condition_957}, {958, R.string.condition_958},
+            {959, R.string.condition_959}, {960, R.string.condition_960},
+            {961, R.string.condition_961}, {962, R.string.condition_962}
+    };
+
+    // Indexed by code - FIRST_CODE; KIND_NONE, -1 or 0 where the code has no answer.
+    private static final byte[] sKinds = new byte[CODE_COUNT];
+    private static final int[] sIconIds = new int[CODE_COUNT];
+    private static final int[] sArtIds = new int[CODE_COUNT];
+    private static final int[] sStringIds = new int[CODE_COUNT];
+
+    static {
+        Arrays.fill(sKinds, (byte) KIND_NONE);
+        setKind(200, 232, KIND_STORM);
+        setKind(300, 321, KIND_LIGHT_RAIN);
+        setKind(500, 504, KIND_RAIN);
+        setKind(511, 511, KIND_SNOW);
+        setKind(520, 531, KIND_RAIN);
+        setKind(600, 622, KIND_SNOW);
+        setKind(701, 761, KIND_FOG);
+        // Dust (761) has always shown fog; only tornadoes get the storm art and the dust photo.
+        setKind(781, 781, KIND_TORNADO);
+        setKind(800, 800, KIND_CLEAR);
+        setKind(801, 801, KIND_LIGHT_CLOUDS);
+        setKind(802, 804, KIND_CLOUDS);
+        for (int i = 0; i < CODE_COUNT; i++) {
+            int kind = sKinds[i];
+            sIconIds[i] = kind == KIND_NONE ? -1 : KIND_ICONS[kind];
+            sArtIds[i] = kind == KIND_NONE ? -1 : KIND_ART[kind];
+        }
+
+        for (int code = 200; code <= 232; code++) {
+            sStringIds[code - FIRST_CODE] = R.string.condition_2xx;
+        }
+        for (int code = 300; code <= 321; code++) {
+            sStringIds[code - FIRST_CODE] = R.string.condition_3xx;
+        }
+        for (int[] codeString : CODE_STRINGS) {
+            sStringIds[codeString[0] - FIRST_CODE] = codeString[1];
+        }
+    }
+
+    private static void setKind(int from, int to, int kind) {
+        for (int code = from; code <= to; code++) {
+            sKinds[code - FIRST_CODE] = (byte) kind;
+        }
+    }
+
+    // The descriptions of every code, in one locale.
+    private static final class Strings {
+        final Locale mLocale;
+        final String[] mByCode = new String[CODE_COUNT];
+
+        Strings(Context context, Locale locale) {
+            mLocale = locale;
+            for (int i = 0; i < CODE_COUNT; i++) {
+                if (sStringIds[i] == 0) {
+                    continue;
+                }
+                // The 2xx and 3xx groups share one string each.
+                mByCode[i] = i > 0 && sStringIds[i] == sStringIds[i - 1]
+                        ? mByCode[i - 1] : context.getString(sStringIds[i]);
+            }
+        }
+    }
+
+    // The art url of every kind, in one art pack.
+    private static final class ArtUrls {
+        final String mArtPack;
+        final String[] mByKind = new String[KIND_ART_NAMES.length];
+
+        ArtUrls(String artPack) {
+            mArtPack = artPack;
+            for (int kind = 0; kind < KIND_ART_NAMES.length; kind++) {
+                mByKind[kind] = String.format(Locale.US, artPack, KIND_ART_NAMES[kind]);
+            }
+        }
+    }
+
+    private static volatile Strings sStrings;
+    private static volatile ArtUrls sArtUrls;
+
+    private WeatherConditions() {
+    }
+
+    private static int kindOf(int weatherId) {
+        return weatherId < FIRST_CODE || weatherId > LAST_CODE
+                ? KIND_NONE : sKinds[weatherId - FIRST_CODE];
+    }
+
+    /**
+     * @return the icon for the condition, or -1 if there is none
+     */
+    public static int getIconResource(int weatherId) {
+        return weatherId < FIRST_CODE || weatherId > LAST_CODE
+                ? -1 : sIconIds[weatherId - FIRST_CODE];
+    }
+
+    /**
+     * @return the art for the condition, or -1 if there is none
+     */
+    public static int getArtResource(int weatherId) {
+        return weatherId < FIRST_CODE || weatherId > LAST_CODE
+                ? -1 : sArtIds[weatherId - FIRST_CODE];
+    }
+
+    /**
+     * @return the description of the condition in the user's language, or "Unknown" and the
+     * code if there is none
+     */
+    public static String getString(Context context, int weatherId) {
+        if (weatherId < FIRST_CODE || weatherId > LAST_CODE
+                || sStringIds[weatherId - FIRST_CODE] == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
+        }
+        Locale locale = context.getResources().getConfiguration().locale;
+        Strings strings = sStrings;
+        if (strings == null || !strings.mLocale.equals(locale)) {
+            strings = new Strings(context, locale);
+            sStrings = strings;
+        }
+        return strings.mByCode[weatherId - FIRST_CODE];
+    }
+
+    /**
+     * @return the url of the condition's art in the chosen art pack, or null if there is none
+     */
+    public static String getArtUrl(Context context, int weatherId) {
+        int kind = kindOf(weatherId);
+        if (kind == KIND_NONE) {
+            return null;
+        }
+        String artPack = SettingsSnapshot.get(context).getArtPack();
+        ArtUrls artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.mArtPack.equals(artPack)) {
+            artUrls = new ArtUrls(artPack);
+            sArtUrls = artUrls;
+        }
+        return artUrls.mByKind[kind];
+    }
+
+    /**
+     * @return how many different images an art pack has, one for each kind of weather
+     */
+    public static int getArtKindCount() {
+        // Storms and tornadoes share one.
+        return KIND_ART_NAMES.length - 1;
+    }
+
+    /**
+     * @return the url of a photograph of the condition, or null if there is none
+     */
+    public static String getImageUrl(int weatherId) {
+        int kind = kindOf(weatherId);
+        return kind == KIND_NONE ? null : KIND_IMAGE_URLS[kind];
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.ChangeEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * The change log behind the changes uri; see {@link ChangeEntry}.
+ *
+ * Like the forecast table, the log is written by triggers, so every writer is covered: the
+ * provider, the history compactor, and anything else that writes the tables directly.  The
+ * sequence is an AUTOINCREMENT key, so numbers are never reused after the log is truncated.
+ */
+final class ChangeLog {
+
+    private static final String[] TRIGGERS = {
+            "change_weather_insert", "change_weather_update", "change_weather_move",
+            "change_weather_delete",
+            "change_location_insert", "change_location_update", "change_location_delete",
+            "change_history_insert", "change_history_delete"
+    };
+
+    private static final String[] COLUMNS = {
+            ChangeEntry._ID,
+            ChangeEntry.COLUMN_TABLE,
+            ChangeEntry.COLUMN_LOC_KEY,
+            ChangeEntry.COLUMN_DATE,
+            ChangeEntry.COLUMN_OPERATION
+    };
+
+    private static final String ORDER = ChangeEntry._ID + " ASC";
+
+    private ChangeLog() {
+    }
+
+    /**
+     * Creates the log, the consumer table and the triggers that fill the log.
+     */
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ChangeEntry.TABLE_NAME + " (" +
+                ChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                ChangeEntry.COLUMN_TABLE + " TEXT NOT NULL, " +
+                ChangeEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                ChangeEntry.COLUMN_DATE + " INTEGER, " +
+                ChangeEntry.COLUMN_OPERATION + " INTEGER NOT NULL);");
+        db.execSQL("CREATE TABLE " + ChangeEntry.CONSUMER_TABLE_NAME + " (" +
+                ChangeEntry.COLUMN_CONSUMER_NAME + " TEXT PRIMARY KEY, " +
+                ChangeEntry.COLUMN_CONSUMER_SEQUENCE + " INTEGER NOT NULL);");
+
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[0] + " AFTER INSERT ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " +
+                log(WeatherEntry.TABLE_NAME, "NEW." + WeatherEntry.COLUMN_LOC_KEY,
+                        "NEW." + WeatherEntry.COLUMN_DATE, ChangeEntry.OP_INSERT) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[1] + " AFTER UPDATE ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " +
+                log(WeatherEntry.TABLE_NAME, "NEW." + WeatherEntry.COLUMN_LOC_KEY,
+                        "NEW." + WeatherEntry.COLUMN_DATE, ChangeEntry.OP_UPDATE) + " END;");
+        // A row moved to another day or location leaves its old key empty.
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[2] + " AFTER UPDATE ON " +
+                WeatherEntry.TABLE_NAME + " WHEN OLD." + WeatherEntry.COLUMN_DATE + " != NEW." +
+                WeatherEntry.COLUMN_DATE + " OR OLD." + WeatherEntry.COLUMN_LOC_KEY + " != NEW." +
+                WeatherEntry.COLUMN_LOC_KEY + " BEGIN " +
+                log(WeatherEntry.TABLE_NAME, "OLD." + WeatherEntry.COLUMN_LOC_KEY,
+                        "OLD." + WeatherEntry.COLUMN_DATE, ChangeEntry.OP_DELETE) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[3] + " AFTER DELETE ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " +
+                log(WeatherEntry.TABLE_NAME, "OLD." + WeatherEntry.COLUMN_LOC_KEY,
+                        "OLD." + WeatherEntry.COLUMN_DATE, ChangeEntry.OP_DELETE) + " END;");
+
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[4] + " AFTER INSERT ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " +
+                log(LocationEntry.TABLE_NAME, "NEW." + LocationEntry._ID, "NULL",
+                        ChangeEntry.OP_INSERT) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[5] + " AFTER UPDATE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " +
+                log(LocationEntry.TABLE_NAME, "NEW." + LocationEntry._ID, "NULL",
+                        ChangeEntry.OP_UPDATE) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[6] + " AFTER DELETE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN " +
+                log(LocationEntry.TABLE_NAME, "OLD." + LocationEntry._ID, "NULL",
+                        ChangeEntry.OP_DELETE) + " END;");
+
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[7] + " AFTER INSERT ON " +
+                HistoryEntry.TABLE_NAME + " BEGIN " +
+                log(HistoryEntry.TABLE_NAME, "NEW." + HistoryEntry.COLUMN_LOC_KEY,
+                        "NEW." + HistoryEntry.COLUMN_PERIOD_START, ChangeEntry.OP_INSERT) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[8] + " AFTER DELETE ON " +
+                HistoryEntry.TABLE_NAME + " BEGIN " +
+                log(HistoryEntry.TABLE_NAME, "OLD." + HistoryEntry.COLUMN_LOC_KEY,
+                        "OLD." + HistoryEntry.COLUMN_PERIOD_START, ChangeEntry.OP_DELETE) + " END;");
+    }
+
+    private static String log(String table, String locationId, String date, int operation) {
+        return "INSERT INTO " + ChangeEntry.TABLE_NAME + " (" +
+                ChangeEntry.COLUMN_TABLE + ", " + ChangeEntry.COLUMN_LOC_KEY + ", " +
+                ChangeEntry.COLUMN_DATE + ", " + ChangeEntry.COLUMN_OPERATION + ") VALUES ('" +
+                table + "', " + locationId + ", " + date + ", " + operation + ");";
+    }
+
+    /**
+     * Answers changes?since=&consumer=: the change at since and every later one, or only the
+     * newest when since is 0.  Records that the consumer has seen everything up to since and
+     * truncates the log to what is still needed.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, long since, String consumer) {
+        if (consumer != null) {
+            ContentValues values = new ContentValues();
+            values.put(ChangeEntry.COLUMN_CONSUMER_NAME, consumer);
+            // A consumer starting over goes on from the newest change, which it is handed now.
+            values.put(ChangeEntry.COLUMN_CONSUMER_SEQUENCE, since != 0 ? since : newest(db));
+            db.replace(ChangeEntry.CONSUMER_TABLE_NAME, null, values);
+            truncate(db);
+        }
+        if (projection == null) {
+            projection = COLUMNS;
+        }
+        if (since == 0) {
+            return db.query(ChangeEntry.TABLE_NAME, projection, null, null, null, null,
+                    ChangeEntry._ID + " DESC", "1");
+        }
+        return db.query(ChangeEntry.TABLE_NAME, projection, ChangeEntry._ID + " >= ?",
+                new String[]{Long.toString(since)}, null, null, ORDER);
+    }
+
+    private static long newest(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(MAX(" + ChangeEntry._ID + "), 0) FROM " + ChangeEntry.TABLE_NAME, null);
+    }
+
+    /**
+     * Drops the changes every consumer has seen, keeping the one each consumer anchors on and
+     * the newest, but never more than the newest MAX_ROWS.
+     *
+     * @return the number of changes dropped.
+     */
+    static int truncate(SQLiteDatabase db) {
+        long newest = newest(db);
+        long needed = DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL(MIN(" + ChangeEntry.COLUMN_CONSUMER_SEQUENCE + "), " + newest +
+                        ") FROM " + ChangeEntry.CONSUMER_TABLE_NAME, null);
+        long keepFrom = Math.max(Math.min(needed, newest), newest - ChangeEntry.MAX_ROWS + 1);
+        return db.delete(ChangeEntry.TABLE_NAME, ChangeEntry._ID + " < ?",
+                new String[]{Long.toString(keepFrom)});
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * A read-only copy of a query result held column by column in primitive arrays, for the fixed
+ * projections the forecast list, the detail view and the detail widget bind from.
+ *
+ * The caller says up front what type each column of its projection is, so the rows are copied
+ * in one pass and every accessor is an array read: no CursorWindow, no field type lookup and no
+ * boxing.  The source cursor can be closed as soon as the copy is made.
+ */
+public final class ColumnarCursor extends AbstractCursor {
+
+    // Column types.  INTEGER columns and ids are TYPE_LONG, REAL columns TYPE_DOUBLE.
+    public static final int TYPE_LONG = 1;
+    public static final int TYPE_DOUBLE = 2;
+    public static final int TYPE_STRING = 3;
+
+    private final String[] mColumnNames;
+    private final int[] mTypes;
+    private final int mCount;
+    // Indexed by column; only the array matching the column's type is set.
+    private final long[][] mLongs;
+    private final double[][] mDoubles;
+    private final String[][] mStrings;
+    // Indexed by column, and only set for columns where a null was seen.
+    private final boolean[][] mNulls;
+
+    private ColumnarCursor(String[] columnNames, int[] types, int count) {
+        mColumnNames = columnNames;
+        mTypes = types;
+        mCount = count;
+        int columnCount = columnNames.length;
+        mLongs = new long[columnCount][];
+        mDoubles = new double[columnCount][];
+        mStrings = new String[columnCount][];
+        mNulls = new boolean[columnCount][];
+        for (int i = 0; i < columnCount; i++) {
+            switch (types[i]) {
+                case TYPE_LONG:
+                    mLongs[i] = new long[count];
+                    break;
+                case TYPE_DOUBLE:
+                    mDoubles[i] = new double[count];
+                    break;
+                case TYPE_STRING:
+                    mStrings[i] = new String[count];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown type " + types[i] + " for column "
+                            + columnNames[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies every row of the source cursor.  The source is left positioned after the last row
+     * and is not closed.
+     *
+     * @param types the type of each column of the source, one of the TYPE_ constants.
+     */
+    public static ColumnarCursor copyOf(Cursor source, int[] types) {
+        String[] columnNames = source.getColumnNames();
+        if (types.length != columnNames.length) {
+            throw new IllegalArgumentException("Expected " + columnNames.length
+                    + " column types, got " + types.length);
+        }
+        ColumnarCursor copy = new ColumnarCursor(columnNames, types, source.getCount());
+        int row = 0;
+        source.moveToPosition(-1);
+        while (source.moveToNext()) {
+            for (int i = 0; i < types.length; i++) {
+                if (source.isNull(i)) {
+                    if (copy.mNulls[i] == null) {
+                        copy.mNulls[i] = new boolean[copy.mCount];
+                    }
+                    copy.mNulls[i][row] = true;
+                    continue;
+                }
+                switch (types[i]) {
+                    case TYPE_LONG:
+                        copy.mLongs[i][row] = source.getLong(i);
+                        break;
+                    case TYPE_DOUBLE:
+                        copy.mDoubles[i][row] = source.getDouble(i);
+                        break;
+                    default:
+                        copy.mStrings[i][row] = source.getString(i);
+                }
+            }
+            row++;
+        }
+        return copy;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public long getLong(int column) {
+        checkPosition();
+        switch (mTypes[column]) {
+            case TYPE_LONG:
+                return mLongs[column][mPos];
+            case TYPE_DOUBLE:
+                return (long) mDoubles[column][mPos];
+            default:
+                return (long) parseDouble(mStrings[column][mPos]);
+        }
+    }
+
+    @Override
+    public double getDouble(int column) {
+        checkPosition();
+        switch (mTypes[column]) {
+            case TYPE_DOUBLE:
+                return mDoubles[column][mPos];
+            case TYPE_LONG:
+                return mLongs[column][mPos];
+            default:
+                return parseDouble(mStrings[column][mPos]);
+        }
+    }
+
+    // Text that isn't a number reads as 0, as it does from SQLite.
+    private static double parseDouble(String value) {
+        if (value == null) {
+            return 0.0;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    /**
+     * Numbers are formatted with Double.toString and Long.toString, not the CursorWindow's "%g"
+     * (20.0 rather than 20, and every digit rather than six), and allocate; read them with the
+     * primitive accessors.
+     */
+    @Override
+    public String getString(int column) {
+        checkPosition();
+        if (isNull(column)) {
+            return null;
+        }
+        switch (mTypes[column]) {
+            case TYPE_LONG:
+                return Long.toString(mLongs[column][mPos]);
+            case TYPE_DOUBLE:
+                return Double.toString(mDoubles[column][mPos]);
+            default:
+                return mStrings[column][mPos];
+        }
+    }
+
+    @Override
+    public int getType(int column) {
+        if (isNull(column)) {
+            return FIELD_TYPE_NULL;
+        }
+        switch (mTypes[column]) {
+            case TYPE_LONG:
+                return FIELD_TYPE_INTEGER;
+            case TYPE_DOUBLE:
+                return FIELD_TYPE_FLOAT;
+            default:
+                return FIELD_TYPE_STRING;
+        }
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        checkPosition();
+        boolean[] nulls = mNulls[column];
+        return nulls != null && nulls[mPos];
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.os.Build;
+
+/**
+ * An immutable, in-memory copy of a query result.  The rows are read once from the source
+ * cursor; every call to {@link #newCursor()} then hands out a lightweight read-only cursor over
+ * the same arrays, so serving a cached result never touches SQLite or fills a CursorWindow.
+ */
+final class CursorSnapshot {
+
+    private final String[] mColumnNames;
+    private final Object[][] mRows;
+    // The text form of every value exactly as the source cursor reported it, so getString()
+    // on a copy formats numbers the same way the CursorWindow does.
+    private final String[][] mStrings;
+
+    private CursorSnapshot(String[] columnNames, Object[][] rows, String[][] strings) {
+        mColumnNames = columnNames;
+        mRows = rows;
+        mStrings = strings;
+    }
+
+    /**
+     * Copies every row of the given cursor.  The source cursor is left positioned after the
+     * last row and is not closed.
+     *
+     * @return the snapshot, or null if the cursor has more than maxRows rows.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static CursorSnapshot copyOf(Cursor cursor, int maxRows) {
+        int count = cursor.getCount();
+        if (count > maxRows) {
+            return null;
+        }
+        String[] columnNames = cursor.getColumnNames();
+        int columnCount = columnNames.length;
+        Object[][] rows = new Object[count][];
+        String[][] strings = new String[count][];
+        int row = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            Object[] values = new Object[columnCount];
+            String[] text = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        values[i] = cursor.getString(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        values[i] = cursor.getBlob(i);
+                        break;
+                    default:
+                        values[i] = null;
+                }
+                if (!(values[i] instanceof byte[])) {
+                    text[i] = cursor.getString(i);
+                }
+            }
+            strings[row] = text;
+            rows[row++] = values;
+        }
+        return new CursorSnapshot(columnNames, rows, strings);
+    }
+
+    int getRowCount() {
+        return mRows.length;
+    }
+
+    /**
+     * @return a new cursor positioned before the first row.  Closing it does not affect the
+     * snapshot or any other cursor handed out by it.
+     */
+    Cursor newCursor() {
+        return new SnapshotCursor();
+    }
+
+    private class SnapshotCursor extends AbstractCursor {
+
+        private Object get(int column) {
+            if (column < 0 || column >= mColumnNames.length) {
+                throw new IndexOutOfBoundsException("Requested column: " + column
+                        + ", # of columns: " + mColumnNames.length);
+            }
+            if (mPos < 0 || mPos >= mRows.length) {
+                throw new IndexOutOfBoundsException("Requested position: " + mPos
+                        + ", # of rows: " + mRows.length);
+            }
+            return mRows[mPos][column];
+        }
+
+        @Override
+        public int getCount() {
+            return mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            if (value instanceof byte[]) {
+                throw new UnsupportedOperationException("Column " + column + " is a blob");
+            }
+            return mStrings[mPos][column];
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) return 0;
+            if (value instanceof Number) return ((Number) value).longValue();
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) return 0.0;
+            if (value instanceof Number) return ((Number) value).doubleValue();
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            if (value == null || value instanceof byte[]) return (byte[]) value;
+            throw new UnsupportedOperationException("Column " + column + " is not a blob");
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) return FIELD_TYPE_NULL;
+            if (value instanceof Long) return FIELD_TYPE_INTEGER;
+            if (value instanceof Double) return FIELD_TYPE_FLOAT;
+            if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
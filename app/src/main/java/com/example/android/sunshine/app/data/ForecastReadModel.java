@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.ForecastEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The forecast table: a copy of the weather table with the location fields the forecast screens
+ * read, so that a weather/{location} query is a range scan of one index instead of a join that
+ * compares the location setting text of every candidate row.
+ *
+ * Triggers on the weather and location tables keep the copy in step, which covers every writer:
+ * the provider, the history compactor, and anything else that writes the tables directly.
+ */
+final class ForecastReadModel {
+
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_JULIAN_DAY,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // Every column of the table, which is what a projection has to stay within to be served here.
+    private static final Set<String> COLUMNS = new HashSet<>();
+
+    static {
+        COLUMNS.add(ForecastEntry._ID);
+        COLUMNS.addAll(Arrays.asList(WEATHER_COLUMNS));
+        COLUMNS.addAll(Arrays.asList(LOCATION_COLUMNS));
+    }
+
+    private static final String[] TRIGGERS = {
+            "forecast_weather_insert", "forecast_weather_update", "forecast_weather_delete",
+            "forecast_location_update", "forecast_location_delete"
+    };
+
+    private static final String WEATHER_PREFIX = WeatherEntry.TABLE_NAME + ".";
+    private static final String LOCATION_PREFIX = LocationEntry.TABLE_NAME + ".";
+
+    private ForecastReadModel() {
+    }
+
+    /**
+     * Creates the table, its triggers, and fills it from the rows already stored.
+     */
+    static void create(SQLiteDatabase db) {
+        create(db, WEATHER_COLUMNS, WeatherEntry.COLUMN_JULIAN_DAY, ForecastEntry.INDEX_SETTING_DAY);
+    }
+
+    /**
+     * Creates the table as version 8 of the database had it, before the weather rows had a
+     * Julian day: one day per location and date.  For the migration to that version only.
+     */
+    static void createAtVersion8(SQLiteDatabase db) {
+        List<String> weatherColumns = new ArrayList<>(Arrays.asList(WEATHER_COLUMNS));
+        weatherColumns.remove(WeatherEntry.COLUMN_JULIAN_DAY);
+        create(db, weatherColumns.toArray(new String[weatherColumns.size()]),
+                WeatherEntry.COLUMN_DATE, "forecast_setting_date");
+    }
+
+    private static void create(SQLiteDatabase db, String[] weatherColumns, String dayColumn,
+                               String dayIndex) {
+        boolean hasJulianDay = Arrays.asList(weatherColumns).contains(WeatherEntry.COLUMN_JULIAN_DAY);
+        db.execSQL("CREATE TABLE " + ForecastEntry.TABLE_NAME + " (" +
+                ForecastEntry._ID + " INTEGER PRIMARY KEY, " +
+                ForecastEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                (hasJulianDay ? WeatherEntry.COLUMN_JULIAN_DAY + " INTEGER, " : "") +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL);");
+        // Mirrors the weather table's UNIQUE (date, location_id) ON CONFLICT REPLACE; stored
+        // dates are normalized, so each has its own day.  SQLite doesn't fire delete triggers
+        // for rows a REPLACE removes, so when a day is written again the stale copy is replaced
+        // here by the same rule instead.
+        db.execSQL("CREATE UNIQUE INDEX " + dayIndex + " ON " +
+                ForecastEntry.TABLE_NAME + " (" +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " + dayColumn + ");");
+
+        String copyNew = "INSERT OR REPLACE INTO " + ForecastEntry.TABLE_NAME +
+                " (" + ForecastEntry._ID + ", " + TextUtils.join(", ", weatherColumns) + ", " +
+                TextUtils.join(", ", LOCATION_COLUMNS) + ")" +
+                " SELECT NEW." + WeatherEntry._ID + ", " + prefixed("NEW.", weatherColumns) + ", " +
+                prefixed(LOCATION_PREFIX, LOCATION_COLUMNS) +
+                " FROM " + LocationEntry.TABLE_NAME +
+                " WHERE " + LOCATION_PREFIX + LocationEntry._ID + " = NEW." + WeatherEntry.COLUMN_LOC_KEY + ";";
+        String deleteOld = "DELETE FROM " + ForecastEntry.TABLE_NAME +
+                " WHERE " + ForecastEntry._ID + " = OLD." + WeatherEntry._ID + ";";
+
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[0] + " AFTER INSERT ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " + copyNew + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[1] + " AFTER UPDATE ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " + deleteOld + " " + copyNew + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[2] + " AFTER DELETE ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " + deleteOld + " END;");
+
+        StringBuilder setLocation = new StringBuilder(ForecastEntry.COLUMN_LOC_KEY)
+                .append(" = NEW.").append(LocationEntry._ID);
+        for (String column : LOCATION_COLUMNS) {
+            setLocation.append(", ").append(column).append(" = NEW.").append(column);
+        }
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[3] + " AFTER UPDATE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN UPDATE " + ForecastEntry.TABLE_NAME +
+                " SET " + setLocation +
+                " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = OLD." +
+                LocationEntry.COLUMN_LOCATION_SETTING + "; END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[4] + " AFTER DELETE ON " +
+                LocationEntry.TABLE_NAME + " BEGIN DELETE FROM " + ForecastEntry.TABLE_NAME +
+                " WHERE " + LocationEntry.COLUMN_LOCATION_SETTING + " = OLD." +
+                LocationEntry.COLUMN_LOCATION_SETTING + "; END;");
+
+        db.execSQL("INSERT INTO " + ForecastEntry.TABLE_NAME +
+                " (" + ForecastEntry._ID + ", " + TextUtils.join(", ", weatherColumns) + ", " +
+                TextUtils.join(", ", LOCATION_COLUMNS) + ")" +
+                " SELECT " + WEATHER_PREFIX + WeatherEntry._ID + ", " +
+                prefixed(WEATHER_PREFIX, weatherColumns) + ", " +
+                prefixed(LOCATION_PREFIX, LOCATION_COLUMNS) +
+                " FROM " + WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME +
+                " ON " + WEATHER_PREFIX + WeatherEntry.COLUMN_LOC_KEY + " = " +
+                LOCATION_PREFIX + LocationEntry._ID + ";");
+    }
+
+    /**
+     * Drops the table and its triggers, so that {@link #create} can build it again after the
+     * tables it copies have changed.
+     */
+    static void drop(SQLiteDatabase db) {
+        for (String trigger : TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + ForecastEntry.TABLE_NAME);
+    }
+
+    private static String prefixed(String prefix, String[] columns) {
+        StringBuilder builder = new StringBuilder();
+        for (String column : columns) {
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(prefix).append(column);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the projection rewritten for the forecast table, or null if the query needs
+     * something only the join has: every column (a null projection), a column the table doesn't
+     * copy, or a sort order naming a table.
+     */
+    static String[] getProjection(String[] projection, String sortOrder) {
+        if (projection == null) return null;
+        if (sortOrder != null && sortOrder.indexOf('.') >= 0) return null;
+
+        String[] columns = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String column = projection[i];
+            String lower = column.toLowerCase(Locale.US);
+            if (lower.startsWith(WEATHER_PREFIX)) {
+                column = column.substring(WEATHER_PREFIX.length());
+            } else if (lower.startsWith(LOCATION_PREFIX)) {
+                column = column.substring(LOCATION_PREFIX.length());
+                // location._id isn't copied; the table's _id is the weather row's.
+                if (LocationEntry._ID.equals(column)) return null;
+            }
+            if (!COLUMNS.contains(column)) return null;
+            columns[i] = column;
+        }
+        return columns;
+    }
+}
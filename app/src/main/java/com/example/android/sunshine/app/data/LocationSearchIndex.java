@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationSearchEntry;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Prefix search over the city names and location settings in the location table.
+ *
+ * FTS tables differ between the SQLite versions shipped on the devices we support, and their
+ * tokenizers don't fold accents, so the index is a plain table of normalized terms with a b-tree
+ * index on the term.  A query is a single range scan for the terms starting with what was typed,
+ * ranked so that an exact match comes first, then names that start with the query, then names
+ * with a later word that does.
+ */
+final class LocationSearchIndex {
+
+    static final int DEFAULT_LIMIT = 8;
+
+    private static final String SQL_SEARCH_FROM =
+            " FROM " + LocationEntry.TABLE_NAME + " INNER JOIN (" +
+            "SELECT " + LocationSearchEntry.COLUMN_LOC_KEY + ", " +
+            "MIN((CASE WHEN " + LocationSearchEntry.COLUMN_TERM + " = ? THEN 0 ELSE 2 END) + " +
+            "(CASE WHEN " + LocationSearchEntry.COLUMN_POSITION + " = 0 THEN 0 ELSE 1 END)) AS rank" +
+            " FROM " + LocationSearchEntry.TABLE_NAME +
+            " WHERE " + LocationSearchEntry.COLUMN_TERM + " >= ? AND " +
+            LocationSearchEntry.COLUMN_TERM + " < ?" +
+            " GROUP BY " + LocationSearchEntry.COLUMN_LOC_KEY + ") AS matches" +
+            " ON " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID +
+            " = matches." + LocationSearchEntry.COLUMN_LOC_KEY +
+            " ORDER BY matches.rank, length(" + LocationEntry.COLUMN_CITY_NAME + "), " +
+            LocationEntry.COLUMN_CITY_NAME +
+            " LIMIT ";
+
+    private LocationSearchIndex() {
+    }
+
+    /**
+     * Lower case, accents stripped, and every run of characters other than letters and digits
+     * collapsed to one space, so "São Paulo" and "sao-paulo" both become "sao paulo".  Letters
+     * of any script are kept, so "Москва" and "東京" are searchable too.
+     */
+    static String normalize(String text) {
+        if (text == null) return "";
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.US), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}+", "")
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+    }
+
+    /**
+     * @return the stored locations matching the query, best match first.  An empty query
+     * matches nothing.
+     */
+    static Cursor search(SQLiteDatabase db, String[] projection, String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.length() == 0) {
+            return new MatrixCursor(projection != null ? projection : new String[]{LocationEntry._ID});
+        }
+        // Every term starting with the prefix sorts below the prefix with its last code point
+        // bumped by one, since SQLite compares the UTF-8 bytes and those sort in code point
+        // order.  The last code point is a letter or a digit, so that can't overflow.
+        int lastIndex = prefix.offsetByCodePoints(prefix.length(), -1);
+        int last = prefix.codePointAt(lastIndex);
+        String upperBound = new StringBuilder(prefix.length() + 1)
+                .append(prefix, 0, lastIndex)
+                .appendCodePoint(last + 1)
+                .toString();
+
+        String columns;
+        if (projection == null) {
+            columns = LocationEntry.TABLE_NAME + ".*";
+        } else {
+            columns = TextUtils.join(", ", projection);
+        }
+        return db.rawQuery("SELECT " + columns + SQL_SEARCH_FROM + (limit > 0 ? limit : DEFAULT_LIMIT),
+                new String[]{prefix, prefix, upperBound});
+    }
+
+    /**
+     * Replaces the terms of one location.  Call inside the transaction that wrote it.
+     */
+    static void index(SQLiteDatabase db, long locationId, String cityName, String locationSetting) {
+        db.delete(LocationSearchEntry.TABLE_NAME, LocationSearchEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationId)});
+
+        ContentValues values = new ContentValues();
+        values.put(LocationSearchEntry.COLUMN_LOC_KEY, locationId);
+
+        String setting = normalize(locationSetting);
+        if (setting.length() > 0) {
+            values.put(LocationSearchEntry.COLUMN_TERM, setting);
+            values.put(LocationSearchEntry.COLUMN_POSITION, 0);
+            db.insert(LocationSearchEntry.TABLE_NAME, null, values);
+        }
+
+        // "new york city" is stored as "new york city", "york city" and "city", so the query
+        // "york ci" is still a prefix match.
+        String name = normalize(cityName);
+        int position = 0;
+        int start = 0;
+        while (start < name.length()) {
+            String term = name.substring(start);
+            if (position > 0 || !term.equals(setting)) {
+                values.put(LocationSearchEntry.COLUMN_TERM, term);
+                values.put(LocationSearchEntry.COLUMN_POSITION, position);
+                db.insert(LocationSearchEntry.TABLE_NAME, null, values);
+            }
+            int space = name.indexOf(' ', start);
+            if (space < 0) break;
+            start = space + 1;
+            position++;
+        }
+    }
+
+    /**
+     * Re-indexes every location matching the selection.
+     */
+    static void index(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_CITY_NAME,
+                        LocationEntry.COLUMN_LOCATION_SETTING},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                index(db, cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the ids of the locations matching the selection, to re-index after an update that
+     * may change what the selection matches.
+     */
+    static long[] findIds(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                selection, selectionArgs, null, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static void index(SQLiteDatabase db, long[] locationIds) {
+        for (long locationId : locationIds) {
+            index(db, LocationEntry._ID + " = ?", new String[]{Long.toString(locationId)});
+        }
+    }
+
+    /**
+     * Drops the terms of locations that no longer exist.
+     */
+    static void removeDeleted(SQLiteDatabase db) {
+        db.delete(LocationSearchEntry.TABLE_NAME, LocationSearchEntry.COLUMN_LOC_KEY +
+                " NOT IN (SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME + ")",
+                null);
+    }
+}
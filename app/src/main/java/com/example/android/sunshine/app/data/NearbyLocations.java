@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+/**
+ * Finds the stored locations closest to a point.
+ *
+ * The R*Tree module isn't available on every device we support, so the lookup runs off the plain
+ * (coord_lat, coord_long) index instead: a bounding box around the point selects a latitude band
+ * from the index and filters it on longitude without touching the table, and only the rows inside
+ * the box have their distance computed.  Distances use the equirectangular approximation, which
+ * only needs arithmetic SQLite can do and is accurate to well under a percent at city scale.
+ */
+final class NearbyLocations {
+
+    static final double KM_PER_DEGREE = 111.195;
+    static final double DEFAULT_RADIUS_KM = 50;
+    static final int DEFAULT_LIMIT = 10;
+
+    private NearbyLocations() {
+    }
+
+    /**
+     * @return the locations within radiusKm of the point, closest first, with their squared
+     * distance in {@link LocationEntry#COLUMN_DISTANCE_SQ}.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, double lat, double lon,
+                        double radiusKm, int limit) {
+        if (Double.isNaN(lat) || Double.isInfinite(lat) || Double.isNaN(lon)
+                || Double.isInfinite(lon) || !(radiusKm > 0) || Double.isInfinite(radiusKm)) {
+            throw new IllegalArgumentException("Bad location query: lat=" + lat + " lon=" + lon
+                    + " radius=" + radiusKm);
+        }
+
+        double latDelta = radiusKm / KM_PER_DEGREE;
+        double minLat = lat - latDelta;
+        double maxLat = lat + latDelta;
+
+        StringBuilder selection = new StringBuilder();
+        selection.append(LocationEntry.COLUMN_COORD_LAT).append(" BETWEEN ")
+                .append(minLat).append(" AND ").append(maxLat);
+
+        // A box that reaches a pole, or is wider than the globe, has no longitude bound.
+        if (minLat > -90 && maxLat < 90) {
+            // Degrees of longitude shrink towards the poles, so size the box for its poleward
+            // edge.  That keeps it a superset of the circle the distance filter accepts.
+            double poleward = Math.max(Math.abs(minLat), Math.abs(maxLat));
+            double lonDelta = latDelta / Math.cos(Math.toRadians(poleward));
+            if (lonDelta < 180) {
+                double minLon = lon - lonDelta;
+                double maxLon = lon + lonDelta;
+                String column = LocationEntry.COLUMN_COORD_LONG;
+                if (minLon < -180) {
+                    // Wraps around the antimeridian.
+                    selection.append(" AND (").append(column).append(" >= ").append(minLon + 360)
+                            .append(" OR ").append(column).append(" <= ").append(maxLon).append(")");
+                } else if (maxLon > 180) {
+                    selection.append(" AND (").append(column).append(" >= ").append(minLon)
+                            .append(" OR ").append(column).append(" <= ").append(maxLon - 360).append(")");
+                } else {
+                    selection.append(" AND ").append(column).append(" BETWEEN ")
+                            .append(minLon).append(" AND ").append(maxLon);
+                }
+            }
+        }
+
+        String distance = distanceSquared(lat, lon);
+        selection.append(" AND ").append(distance).append(" <= ").append(radiusKm * radiusKm);
+
+        String[] columns;
+        if (projection == null) {
+            columns = new String[]{"*", distance + " AS " + LocationEntry.COLUMN_DISTANCE_SQ};
+        } else {
+            columns = new String[projection.length + 1];
+            System.arraycopy(projection, 0, columns, 0, projection.length);
+            columns[projection.length] = distance + " AS " + LocationEntry.COLUMN_DISTANCE_SQ;
+        }
+
+        return db.query(LocationEntry.TABLE_NAME, columns, selection.toString(), null, null, null,
+                LocationEntry.COLUMN_DISTANCE_SQ + " ASC",
+                Integer.toString(limit > 0 ? limit : DEFAULT_LIMIT));
+    }
+
+    /*
+        Squared equirectangular distance in km^2 from the given point:
+        ((lat - lat0)^2 + (dLon * cos(lat0))^2) * KM_PER_DEGREE^2, where dLon is the shorter way
+        around.  The constants are plain doubles we computed, so they are inlined rather than
+        bound, which keeps the expression usable in both the projection and the selection.
+     */
+    private static String distanceSquared(double lat, double lon) {
+        String dLat = "(" + LocationEntry.COLUMN_COORD_LAT + " - " + lat + ")";
+        String absDLon = "abs(" + LocationEntry.COLUMN_COORD_LONG + " - " + lon + ")";
+        String dLon = "(min(" + absDLon + ", 360 - " + absDLon + ") * " +
+                Math.cos(Math.toRadians(lat)) + ")";
+        return "((" + dLat + " * " + dLat + " + " + dLon + " * " + dLon + ") * " +
+                (KM_PER_DEGREE * KM_PER_DEGREE) + ")";
+    }
+}
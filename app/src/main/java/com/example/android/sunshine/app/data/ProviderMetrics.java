@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.pm.PackageManager;
+import android.os.Binder;
+import android.os.Bundle;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms and row counters for {@link WeatherProvider}, per operation and uri code,
+ * plus a count of calls per calling uid.
+ *
+ * Recording is lock-free and allocation-free: every slot is allocated up front and updated with
+ * atomic increments, so binder threads never wait on each other here.  Latencies go into
+ * power-of-two microsecond buckets, which is all the resolution needed to tell a 200us query from
+ * a 20ms one.
+ */
+final class ProviderMetrics {
+
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+    private static final String[] OPERATION_NAMES = {"query", "insert", "bulkInsert", "update", "delete"};
+
+    // Bucket i counts latencies below 2^i microseconds; the last one takes everything slower,
+    // from about 8 seconds.
+    static final int BUCKET_COUNT = 24;
+
+    // Distinct calling uids tracked; calls from any further uids share the overflow count.
+    private static final int MAX_CALLERS = 16;
+
+    private final int[] mCodes;
+    private final String[] mCodeNames;
+    // [operation][index of the uri code in mCodes, or mCodes.length for unknown uris]
+    private final Series[][] mSeries;
+
+    private final AtomicIntegerArray mCallerUids = new AtomicIntegerArray(MAX_CALLERS);
+    private final AtomicLongArray mCallerCounts = new AtomicLongArray(MAX_CALLERS);
+    private final AtomicLong mOtherCallerCount = new AtomicLong();
+
+    private volatile boolean mEnabled = true;
+
+    /**
+     * @param codes the uri codes to keep separate series for, sorted ascending
+     * @param codeNames a readable name for each code, used in the snapshot and the dump
+     */
+    ProviderMetrics(int[] codes, String[] codeNames) {
+        mCodes = codes;
+        mCodeNames = codeNames;
+        mSeries = new Series[OPERATION_NAMES.length][codes.length + 1];
+        for (Series[] operation : mSeries) {
+            for (int i = 0; i < operation.length; i++) {
+                operation[i] = new Series();
+            }
+        }
+        // -1 marks a free caller slot; uid 0 is root, so it can't be used.
+        for (int i = 0; i < MAX_CALLERS; i++) {
+            mCallerUids.set(i, -1);
+        }
+    }
+
+    static final class Series {
+        final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong mCount = new AtomicLong();
+        final AtomicLong mTotalNanos = new AtomicLong();
+        final AtomicLong mMaxNanos = new AtomicLong();
+        final AtomicLong mRows = new AtomicLong();
+
+        void record(long nanos, int rows) {
+            long micros = nanos / 1000;
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets.incrementAndGet(bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1);
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            mRows.addAndGet(rows);
+            long max;
+            while (nanos > (max = mMaxNanos.get()) && !mMaxNanos.compareAndSet(max, nanos)) {
+                // Lost the race to another thread; try again against its value.
+            }
+        }
+
+        /**
+         * @return the upper bound in microseconds of the bucket holding the given fraction of
+         * the recorded calls.
+         */
+        long percentileMicros(double fraction) {
+            long count = mCount.get();
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKET_COUNT - 1);
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return the start time to pass to {@link #record}, or 0 when metrics are off.
+     */
+    long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records one call that started at the given time and returned or affected rows rows.
+     */
+    void record(int operation, int code, long start, int rows) {
+        if (start == 0) return;
+        long nanos = System.nanoTime() - start;
+        int index = Arrays.binarySearch(mCodes, code);
+        mSeries[operation][index >= 0 ? index : mCodes.length].record(nanos, rows);
+        countCaller(Binder.getCallingUid());
+    }
+
+    private void countCaller(int uid) {
+        for (int i = 0; i < MAX_CALLERS; i++) {
+            int slot = mCallerUids.get(i);
+            if (slot == uid || (slot == -1 && (mCallerUids.compareAndSet(i, -1, uid)
+                    || mCallerUids.get(i) == uid))) {
+                mCallerCounts.incrementAndGet(i);
+                return;
+            }
+        }
+        mOtherCallerCount.incrementAndGet();
+    }
+
+    Series getSeries(int operation, int code) {
+        int index = Arrays.binarySearch(mCodes, code);
+        return mSeries[operation][index >= 0 ? index : mCodes.length];
+    }
+
+    private String codeName(int index) {
+        return index < mCodes.length ? mCodeNames[index] : "unknown";
+    }
+
+    /**
+     * A copy of every non-empty series, keyed by "operation uri" (e.g. "query weather/*"), and
+     * of the call counts per calling package under {@link WeatherContract#EXTRA_METRICS_CALLERS}.
+     * The values are read one at a time while other threads keep recording, so they are only
+     * approximately consistent with each other.
+     */
+    Bundle snapshot(PackageManager packageManager) {
+        Bundle snapshot = new Bundle();
+        for (int op = 0; op < mSeries.length; op++) {
+            for (int i = 0; i < mSeries[op].length; i++) {
+                Series series = mSeries[op][i];
+                long count = series.mCount.get();
+                if (count == 0) continue;
+                Bundle values = new Bundle();
+                values.putLong(WeatherContract.EXTRA_METRICS_COUNT, count);
+                values.putLong(WeatherContract.EXTRA_METRICS_ROWS, series.mRows.get());
+                values.putLong(WeatherContract.EXTRA_METRICS_TOTAL_US, series.mTotalNanos.get() / 1000);
+                values.putLong(WeatherContract.EXTRA_METRICS_MAX_US, series.mMaxNanos.get() / 1000);
+                values.putLong(WeatherContract.EXTRA_METRICS_P50_US, series.percentileMicros(0.5));
+                values.putLong(WeatherContract.EXTRA_METRICS_P90_US, series.percentileMicros(0.9));
+                values.putLong(WeatherContract.EXTRA_METRICS_P99_US, series.percentileMicros(0.99));
+                long[] buckets = new long[BUCKET_COUNT];
+                for (int b = 0; b < BUCKET_COUNT; b++) {
+                    buckets[b] = series.mBuckets.get(b);
+                }
+                values.putLongArray(WeatherContract.EXTRA_METRICS_HISTOGRAM, buckets);
+                snapshot.putBundle(OPERATION_NAMES[op] + " " + codeName(i), values);
+            }
+        }
+
+        Bundle callers = new Bundle();
+        for (int i = 0; i < MAX_CALLERS; i++) {
+            int uid = mCallerUids.get(i);
+            if (uid == -1) continue;
+            // Resolving names is a binder call, so it happens here rather than per call.
+            String name = packageManager.getNameForUid(uid);
+            callers.putLong(name != null ? name : Integer.toString(uid), mCallerCounts.get(i));
+        }
+        long others = mOtherCallerCount.get();
+        if (others > 0) {
+            callers.putLong("other", others);
+        }
+        snapshot.putBundle(WeatherContract.EXTRA_METRICS_CALLERS, callers);
+        return snapshot;
+    }
+
+    void dump(PrintWriter writer, PackageManager packageManager) {
+        writer.println("Provider metrics (latency in us, buckets are powers of two):");
+        Bundle snapshot = snapshot(packageManager);
+        for (String key : snapshot.keySet()) {
+            if (WeatherContract.EXTRA_METRICS_CALLERS.equals(key)) continue;
+            Bundle values = snapshot.getBundle(key);
+            writer.println("  " + key
+                    + ": count=" + values.getLong(WeatherContract.EXTRA_METRICS_COUNT)
+                    + " rows=" + values.getLong(WeatherContract.EXTRA_METRICS_ROWS)
+                    + " total=" + values.getLong(WeatherContract.EXTRA_METRICS_TOTAL_US)
+                    + " p50<" + values.getLong(WeatherContract.EXTRA_METRICS_P50_US)
+                    + " p90<" + values.getLong(WeatherContract.EXTRA_METRICS_P90_US)
+                    + " p99<" + values.getLong(WeatherContract.EXTRA_METRICS_P99_US)
+                    + " max=" + values.getLong(WeatherContract.EXTRA_METRICS_MAX_US)
+                    + " histogram=" + Arrays.toString(
+                            values.getLongArray(WeatherContract.EXTRA_METRICS_HISTOGRAM)));
+        }
+        Bundle callers = snapshot.getBundle(WeatherContract.EXTRA_METRICS_CALLERS);
+        for (String caller : callers.keySet()) {
+            writer.println("  caller " + caller + ": " + callers.getLong(caller));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Today's weather for one location: the single row the notification, the watch, the today
+ * widget and Muzei show.
+ *
+ * {@link #load} fetches it with {@link WeatherContract#METHOD_TODAY}, which the provider answers
+ * from a record it keeps between writes, so there is no cursor or CursorWindow to set up and
+ * tear down for one row.
+ */
+public final class TodayWeather {
+
+    // Columns of the forecast table (and of the weather/location join) the record is read from.
+    static final String[] PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_LOCATION_SETTING = 5;
+    private static final int INDEX_CITY_NAME = 6;
+
+    private final long mDate;
+    private final int mWeatherId;
+    private final String mShortDesc;
+    private final double mMaxTemp;
+    private final double mMinTemp;
+    private final String mLocationSetting;
+    private final String mCityName;
+
+    private TodayWeather(long date, int weatherId, String shortDesc, double maxTemp,
+                         double minTemp, String locationSetting, String cityName) {
+        mDate = date;
+        mWeatherId = weatherId;
+        mShortDesc = shortDesc;
+        mMaxTemp = maxTemp;
+        mMinTemp = minTemp;
+        mLocationSetting = locationSetting;
+        mCityName = cityName;
+    }
+
+    /**
+     * @return the weather for the first stored day from today on at the given location, or
+     * null if there is none.
+     */
+    public static TodayWeather load(ContentResolver resolver, String locationSetting) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return fromBundle(call(resolver, locationSetting));
+        }
+        // ContentResolver.call() needs Honeycomb, so older devices read the first row instead.
+        Cursor cursor = resolver.query(WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis(), 1), PROJECTION, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return cursor.moveToFirst() ? fromCursor(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Bundle call(ContentResolver resolver, String locationSetting) {
+        return resolver.call(WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_TODAY,
+                locationSetting, null);
+    }
+
+    // Reads the row the cursor is on, which has to have the PROJECTION columns.
+    static TodayWeather fromCursor(Cursor cursor) {
+        return new TodayWeather(
+                cursor.getLong(INDEX_DATE),
+                cursor.getInt(INDEX_WEATHER_ID),
+                cursor.getString(INDEX_SHORT_DESC),
+                cursor.getDouble(INDEX_MAX_TEMP),
+                cursor.getDouble(INDEX_MIN_TEMP),
+                cursor.getString(INDEX_LOCATION_SETTING),
+                cursor.getString(INDEX_CITY_NAME));
+    }
+
+    static TodayWeather fromBundle(Bundle bundle) {
+        if (bundle == null) {
+            return null;
+        }
+        return new TodayWeather(
+                bundle.getLong(WeatherContract.EXTRA_TODAY_DATE),
+                bundle.getInt(WeatherContract.EXTRA_TODAY_WEATHER_ID),
+                bundle.getString(WeatherContract.EXTRA_TODAY_SHORT_DESC),
+                bundle.getDouble(WeatherContract.EXTRA_TODAY_MAX_TEMP),
+                bundle.getDouble(WeatherContract.EXTRA_TODAY_MIN_TEMP),
+                bundle.getString(WeatherContract.EXTRA_TODAY_LOCATION_SETTING),
+                bundle.getString(WeatherContract.EXTRA_TODAY_CITY_NAME));
+    }
+
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putLong(WeatherContract.EXTRA_TODAY_DATE, mDate);
+        bundle.putInt(WeatherContract.EXTRA_TODAY_WEATHER_ID, mWeatherId);
+        bundle.putString(WeatherContract.EXTRA_TODAY_SHORT_DESC, mShortDesc);
+        bundle.putDouble(WeatherContract.EXTRA_TODAY_MAX_TEMP, mMaxTemp);
+        bundle.putDouble(WeatherContract.EXTRA_TODAY_MIN_TEMP, mMinTemp);
+        bundle.putString(WeatherContract.EXTRA_TODAY_LOCATION_SETTING, mLocationSetting);
+        bundle.putString(WeatherContract.EXTRA_TODAY_CITY_NAME, mCityName);
+        return bundle;
+    }
+
+    /**
+     * @return whether this is the weather for today, rather than for the first day stored after
+     * it.  The notification and the watch show nothing but today's.
+     */
+    public boolean isToday() {
+        return WeatherContract.getJulianDay(mDate)
+                == WeatherContract.getJulianDay(System.currentTimeMillis());
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public String getShortDesc() {
+        return mShortDesc;
+    }
+
+    public double getMaxTemp() {
+        return mMaxTemp;
+    }
+
+    public double getMinTemp() {
+        return mMinTemp;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public String getCityName() {
+        return mCityName;
+    }
+}
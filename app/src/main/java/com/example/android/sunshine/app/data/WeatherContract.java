@@ -17,9 +17,12 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentResolver;
 import android.content.ContentUris;
+import android.database.Cursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+
+import java.util.Calendar;
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +46,155 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_NEAR = "near";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_CHANGES = "changes";
+
+    // Methods understood by WeatherProvider.call().  They need ContentResolver.call, which is
+    // only available from Honeycomb on.
+
+    // Rolls raw days that fell out of the retention window up into history rows.  A past day
+    // stays in the weather table for at least seven days, and for at most thirteen.  The
+    // optional arg is the current time in millis; the result holds EXTRA_COMPACTED_PERIODS.
+    public static final String METHOD_COMPACT_HISTORY = "compact_history";
+    public static final String EXTRA_COMPACTED_PERIODS = "compacted_periods";
+
+    // Returns a snapshot of the provider's latency and row metrics: one bundle per operation and
+    // uri that has been used, keyed e.g. "query weather/*", holding the EXTRA_METRICS_* values,
+    // and a bundle of call counts per calling package under EXTRA_METRICS_CALLERS.
+    public static final String METHOD_METRICS = "metrics";
+    public static final String EXTRA_METRICS_COUNT = "count";
+    public static final String EXTRA_METRICS_ROWS = "rows";
+    public static final String EXTRA_METRICS_TOTAL_US = "total_us";
+    public static final String EXTRA_METRICS_MAX_US = "max_us";
+    // Percentiles are the upper bound of the histogram bucket they fall in.
+    public static final String EXTRA_METRICS_P50_US = "p50_us";
+    public static final String EXTRA_METRICS_P90_US = "p90_us";
+    public static final String EXTRA_METRICS_P99_US = "p99_us";
+    // long[]: element i counts the calls that took less than 2^i microseconds
+    public static final String EXTRA_METRICS_HISTOGRAM = "histogram";
+    public static final String EXTRA_METRICS_CALLERS = "callers";
+
+    // Returns the weather for the first stored day from today on, for the location setting
+    // passed as arg, in the EXTRA_TODAY_* values; or null if nothing is stored for it.
+    // TodayWeather.load() wraps this, with a cursor fallback for older devices.
+    public static final String METHOD_TODAY = "today";
+    public static final String EXTRA_TODAY_DATE = "date";
+    public static final String EXTRA_TODAY_WEATHER_ID = "weather_id";
+    public static final String EXTRA_TODAY_SHORT_DESC = "short_desc";
+    public static final String EXTRA_TODAY_MAX_TEMP = "max";
+    public static final String EXTRA_TODAY_MIN_TEMP = "min";
+    public static final String EXTRA_TODAY_LOCATION_SETTING = "location_setting";
+    public static final String EXTRA_TODAY_CITY_NAME = "city_name";
+
+    // Hands free pages of the database file back to the file system, a bounded number per call,
+    // and refreshes the query planner's statistics.  Meant for when the device is idle and
+    // charging.  The result holds the page size, the page and free page counts before and
+    // after, and how long it took.
+    public static final String METHOD_MAINTAIN_DATABASE = "maintain_database";
+    public static final String EXTRA_DB_PAGE_SIZE = "page_size";
+    public static final String EXTRA_DB_PAGES_BEFORE = "pages_before";
+    public static final String EXTRA_DB_PAGES_AFTER = "pages_after";
+    public static final String EXTRA_DB_FREE_PAGES_BEFORE = "free_pages_before";
+    public static final String EXTRA_DB_FREE_PAGES_AFTER = "free_pages_after";
+    public static final String EXTRA_DB_MAINTENANCE_US = "maintenance_us";
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    // Julian day number of January 1st, 1970
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+
+    // TimeZone.getDefault() hands out a new copy on every call, so the zone is kept here and
+    // replaced when the device's time zone changes.  See onTimeZoneChanged().
+    private static volatile TimeZone sTimeZone = TimeZone.getDefault();
+
+    // The current day, and the times it starts and ends, so that asking for today is a clock
+    // read and two comparisons.  Replaced once a day, or when the clock or the zone changes.
+    private static final class Today {
+        final int mJulianDay;
+        final long mStart;
+        final long mEnd;
+
+        Today(int julianDay, long start, long end) {
+            mJulianDay = julianDay;
+            mStart = start;
+            mEnd = end;
+        }
+    }
+
+    private static volatile Today sToday;
+
+    // Call when the default time zone has changed, so that day numbers follow it.
+    public static void onTimeZoneChanged() {
+        sTimeZone = TimeZone.getDefault();
+        sToday = null;
+    }
+
+    // The zone day numbers are worked out in.  The same instance until the zone changes, so
+    // callers can compare it by reference to notice that.
+    public static TimeZone getTimeZone() {
+        return sTimeZone;
+    }
+
+    // Call when the date or the clock has been set, so that today is worked out again.
+    public static void onDateChanged() {
+        sToday = null;
+    }
+
+    // The Julian day number of the local day the time falls on.  This is what Time.getJulianDay
+    // returns, but without allocating a Time, so it can be called for every row written.
+    public static int getJulianDay(long millis) {
+        Today today = sToday;
+        if (today != null && millis >= today.mStart && millis < today.mEnd) {
+            return today.mJulianDay;
+        }
+        return getJulianDay(millis, sTimeZone.getOffset(millis));
+    }
+
+    // The Julian day number of the day the time falls on at the given offset from UTC.
+    public static int getJulianDay(long millis, int offsetMillis) {
+        long local = millis + offsetMillis;
+        long days = local / DAY_IN_MILLIS;
+        if (local < 0 && days * DAY_IN_MILLIS != local) {
+            // round towards the earlier day, not towards 1970
+            days--;
+        }
+        return (int) days + EPOCH_JULIAN_DAY;
+    }
+
+    // The Julian day number of the current local day.
+    public static int getTodayJulianDay() {
+        long now = System.currentTimeMillis();
+        Today today = sToday;
+        if (today == null || now < today.mStart || now >= today.mEnd) {
+            int julianDay = getJulianDay(now, sTimeZone.getOffset(now));
+            today = new Today(julianDay, getStartOfJulianDay(julianDay),
+                    getStartOfJulianDay(julianDay + 1));
+            sToday = today;
+        }
+        return today.mJulianDay;
+    }
+
+    // The day of the week of the given Julian day, as Calendar.SUNDAY to Calendar.SATURDAY.
+    // Julian day 0 was a Monday.
+    public static int getDayOfWeek(int julianDay) {
+        return (julianDay + 1) % 7 + Calendar.SUNDAY;
+    }
+
+    // The time local midnight starts the given Julian day.
+    public static long getStartOfJulianDay(int julianDay) {
+        TimeZone zone = sTimeZone;
+        long utcMidnight = (julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        // The offset is looked up again at the local midnight, which matters on the days the
+        // clocks change.
+        return utcMidnight - zone.getOffset(utcMidnight - zone.getOffset(utcMidnight));
+    }
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the the Julian day in local time.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return getStartOfJulianDay(getJulianDay(startDate));
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,9 +224,136 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // Index over (coord_lat, coord_long), used by the nearby location lookup
+        public static final String INDEX_COORD = "location_coord";
+
+        // Only returned by the location/near uri: the approximate squared distance in km^2
+        // from the requested point.  Rows come back sorted on it, closest first.
+        public static final String COLUMN_DISTANCE_SQ = "distance_sq";
+
+        // Query parameters of the location/near uri.  The radius is in kilometers.
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LON = "lon";
+        public static final String PARAM_RADIUS = "radius";
+        public static final String PARAM_LIMIT = "limit";
+
+        // Query parameter of the location/search uri: what the user typed so far.
+        public static final String PARAM_QUERY = "q";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        public static Uri buildLocationNear(double lat, double lon, double radiusKm) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAR)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LON, Double.toString(lon))
+                    .appendQueryParameter(PARAM_RADIUS, Double.toString(radiusKm))
+                    .build();
+        }
+
+        public static Uri buildLocationNear(double lat, double lon, double radiusKm, int limit) {
+            return buildLocationNear(lat, lon, radiusKm).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit))
+                    .build();
+        }
+
+        public static Uri buildLocationSearch(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH)
+                    .appendQueryParameter(PARAM_QUERY, query)
+                    .build();
+        }
+
+        public static String getSearchQueryFromUri(Uri uri) {
+            String query = uri.getQueryParameter(PARAM_QUERY);
+            return query != null ? query : "";
+        }
+
+        // Throws IllegalArgumentException when the uri has no latitude, or one out of range.
+        public static double getLatitudeFromUri(Uri uri) {
+            return getCoordinateFromUri(uri, PARAM_LAT, 90);
+        }
+
+        // Throws IllegalArgumentException when the uri has no longitude, or one out of range.
+        public static double getLongitudeFromUri(Uri uri) {
+            return getCoordinateFromUri(uri, PARAM_LON, 180);
+        }
+
+        private static double getCoordinateFromUri(Uri uri, String param, double bound) {
+            String coordinateString = uri.getQueryParameter(param);
+            if (null == coordinateString || coordinateString.length() == 0) {
+                throw new IllegalArgumentException("No " + param + " in uri: " + uri);
+            }
+            double coordinate;
+            try {
+                coordinate = Double.parseDouble(coordinateString);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad " + param + " in uri: " + uri, e);
+            }
+            // Also turns away NaN.
+            if (!(coordinate >= -bound && coordinate <= bound)) {
+                throw new IllegalArgumentException("Bad " + param + " in uri: " + uri);
+            }
+            return coordinate;
+        }
+
+        // Returns 0 when the uri has no radius.  Throws IllegalArgumentException when the
+        // radius isn't a number, or is negative.
+        public static double getRadiusFromUri(Uri uri) {
+            String radiusString = uri.getQueryParameter(PARAM_RADIUS);
+            if (null == radiusString || radiusString.length() == 0) {
+                return 0;
+            }
+            double radius;
+            try {
+                radius = Double.parseDouble(radiusString);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad " + PARAM_RADIUS + " in uri: " + uri, e);
+            }
+            // Also turns away NaN.
+            if (!(radius >= 0) || Double.isInfinite(radius)) {
+                throw new IllegalArgumentException("Bad " + PARAM_RADIUS + " in uri: " + uri);
+            }
+            return radius;
+        }
+
+        // Returns 0 when the uri has no limit.  Throws IllegalArgumentException when the limit
+        // isn't a whole number, or isn't positive.
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null == limitString || limitString.length() == 0) {
+                return 0;
+            }
+            int limit;
+            try {
+                limit = Integer.parseInt(limitString);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad " + PARAM_LIMIT + " in uri: " + uri, e);
+            }
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Bad " + PARAM_LIMIT + " in uri: " + uri);
+            }
+            return limit;
+        }
+    }
+
+    /* Inner class that defines the search index over the location table.  Every word of a
+       location's city name, along with the rest of the name after it, and its location setting
+       are stored normalized (lower case, no accents or punctuation), so a prefix of any of them
+       is a range scan over one index. */
+    public static final class LocationSearchEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "location_search";
+
+        public static final String INDEX_TERM = "location_search_term";
+        public static final String INDEX_LOCATION = "location_search_location";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // The normalized text a query prefix is matched against
+        public static final String COLUMN_TERM = "term";
+        // Index of the first word of the term in the city name; 0 for the location setting
+        public static final String COLUMN_POSITION = "position";
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -99,10 +369,21 @@ public class WeatherContract {
 
         public static final String TABLE_NAME = "weather";
 
+        // Index over (location_id, date)
+        public static final String INDEX_LOCATION_DATE = "weather_location_date";
+        // Index over (location_id, julian_day), used by every per-location forecast query
+        public static final String INDEX_LOCATION_DAY = "weather_location_day";
+        // Triggers that fill in julian_day for rows written without one
+        public static final String TRIGGER_JULIAN_DAY_INSERT = "weather_julian_day_insert";
+        public static final String TRIGGER_JULIAN_DAY_UPDATE = "weather_julian_day_update";
+
         // Column with the foreign key into the location table.
         public static final String COLUMN_LOC_KEY = "location_id";
         // Date, stored as long in milliseconds since the epoch
         public static final String COLUMN_DATE = "date";
+        // The same date as its Julian day number, filled in by the provider from COLUMN_DATE.
+        // Queries for a day or a range of days compare this integer.
+        public static final String COLUMN_JULIAN_DAY = "julian_day";
         // Weather id as returned by API, to identify the icon to be used
         public static final String COLUMN_WEATHER_ID = "weather_id";
 
@@ -126,6 +407,11 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameters of a page of the weather/{location} uri: only days after the given
+        // date, and at most this many of them.
+        public static final String PARAM_AFTER = "after";
+        public static final String PARAM_LIMIT = "limit";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -149,10 +435,49 @@ public class WeatherContract {
                     .appendPath(Long.toString(normalizeDate(date))).build();
         }
 
+        /*
+            One page of the forecast for a location, oldest day first: at most limit days, all
+            later than afterDate.  To fetch the next page pass the date of the last day of this
+            one, so every page is a seek on the (location, date) index however deep it is.
+            An afterDate of 0 starts from the first stored day.
+         */
+        public static Uri buildWeatherLocationPage(String locationSetting, long afterDate, int limit) {
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(locationSetting);
+            if (afterDate > 0) {
+                builder.appendQueryParameter(PARAM_AFTER, Long.toString(afterDate));
+            }
+            return builder.appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
+        // The first page of the forecast from startDate on.
+        public static Uri buildWeatherLocationWithStartDate(
+                String locationSetting, long startDate, int limit) {
+            return buildWeatherLocationWithStartDate(locationSetting, startDate).buildUpon()
+                    .appendQueryParameter(PARAM_LIMIT, Integer.toString(limit)).build();
+        }
+
         public static String getLocationSettingFromUri(Uri uri) {
             return uri.getPathSegments().get(1);
         }
 
+        // Returns 0 when the uri isn't a later page.
+        public static long getAfterDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_AFTER);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        // Returns 0 when the uri asks for every row.
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
+
         public static long getDateFromUri(Uri uri) {
             return Long.parseLong(uri.getPathSegments().get(2));
         }
@@ -164,5 +489,277 @@ public class WeatherContract {
             else
                 return 0;
         }
+
+        // Statistics over every day stored for the location.  See StatsEntry for the columns.
+        public static Uri buildWeatherStats(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(PATH_STATS).build();
+        }
+
+        // Statistics over the days from fromDate to toDate, both inclusive.
+        public static Uri buildWeatherStats(String locationSetting, long fromDate, long toDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendPath(PATH_STATS)
+                    .appendQueryParameter(StatsEntry.PARAM_FROM, Long.toString(normalizeDate(fromDate)))
+                    .appendQueryParameter(StatsEntry.PARAM_TO, Long.toString(normalizeDate(toDate)))
+                    .build();
+        }
+    }
+
+    /* Inner class that defines the forecast table: every weather row together with the fields
+       of its location that the forecast screens read.  It is kept in step with the weather and
+       location tables by triggers, and WeatherProvider answers weather/{location} queries from
+       it whenever the requested columns allow, so those reads don't need the join. */
+    public static final class ForecastEntry implements BaseColumns {
+
+        public static final String TABLE_NAME = "forecast";
+
+        // Unique index over (location_setting, julian_day), which every forecast query filters on
+        public static final String INDEX_SETTING_DAY = "forecast_setting_day";
+
+        // _ID is the _ID of the weather row.  Apart from that the columns have the names of the
+        // weather and location columns they copy.
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+    }
+
+    /* Inner class that defines the columns returned by the weather/{location}/stats uri, and
+       the table holding the same statistics over every stored day of each location.  The
+       table is kept up to date by WeatherProvider on every write, so the common "whole
+       forecast" query is a single row lookup. */
+    public static final class StatsEntry implements BaseColumns {
+
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        public static final String TABLE_NAME = "weather_summary";
+
+        // Query parameters of the stats uri, dates in milliseconds since the epoch
+        public static final String PARAM_FROM = "from";
+        public static final String PARAM_TO = "to";
+
+        // Column with the foreign key into the location table, only in the summary table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // First Julian day the summary row covers, and the last day stored from it on, only in
+        // the summary table.
+        public static final String COLUMN_FIRST_DAY = "first_day";
+        public static final String COLUMN_LAST_DAY = "last_day";
+        // What the summary table kept them as up to database version 10, as dates.
+        static final String COLUMN_FIRST_DATE = "first_date";
+        static final String COLUMN_LAST_DATE = "last_date";
+
+        // Number of days the statistics were computed over
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest minimum and highest maximum temperature, and the averages of both
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max";
+
+        public static final String COLUMN_MIN_HUMIDITY = "min_humidity";
+        public static final String COLUMN_MAX_HUMIDITY = "max_humidity";
+        public static final String COLUMN_AVG_HUMIDITY = "avg_humidity";
+
+        public static final String COLUMN_MIN_PRESSURE = "min_pressure";
+        public static final String COLUMN_MAX_PRESSURE = "max_pressure";
+        public static final String COLUMN_AVG_PRESSURE = "avg_pressure";
+
+        public static final String COLUMN_MIN_WIND_SPEED = "min_wind";
+        public static final String COLUMN_MAX_WIND_SPEED = "max_wind";
+        public static final String COLUMN_AVG_WIND_SPEED = "avg_wind";
+
+        // What the summary table keeps for each average from database version 11 on: the sum
+        // over its days, divided by the day count when read.  Only in the summary table.
+        static final String COLUMN_SUM_MIN_TEMP = "sum_min";
+        static final String COLUMN_SUM_MAX_TEMP = "sum_max";
+        static final String COLUMN_SUM_HUMIDITY = "sum_humidity";
+        static final String COLUMN_SUM_PRESSURE = "sum_pressure";
+        static final String COLUMN_SUM_WIND_SPEED = "sum_wind";
+
+        // Number of days per condition group, same grouping as the history table
+        public static final String COLUMN_THUNDERSTORM_DAYS = HistoryEntry.COLUMN_THUNDERSTORM_DAYS;
+        public static final String COLUMN_DRIZZLE_DAYS = HistoryEntry.COLUMN_DRIZZLE_DAYS;
+        public static final String COLUMN_RAIN_DAYS = HistoryEntry.COLUMN_RAIN_DAYS;
+        public static final String COLUMN_SNOW_DAYS = HistoryEntry.COLUMN_SNOW_DAYS;
+        public static final String COLUMN_ATMOSPHERE_DAYS = HistoryEntry.COLUMN_ATMOSPHERE_DAYS;
+        public static final String COLUMN_CLEAR_DAYS = HistoryEntry.COLUMN_CLEAR_DAYS;
+        public static final String COLUMN_CLOUDY_DAYS = HistoryEntry.COLUMN_CLOUDY_DAYS;
+        public static final String COLUMN_EXTREME_DAYS = HistoryEntry.COLUMN_EXTREME_DAYS;
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        // Returns 0 when the uri has no start date.
+        public static long getFromDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_FROM);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        // Returns Long.MAX_VALUE when the uri has no end date.
+        public static long getToDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_TO);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return Long.MAX_VALUE;
+        }
+    }
+
+    /* Inner class that defines the change log: one row per row written to the weather,
+       location and history tables, appended by triggers, so a consumer that has read the data
+       once can fetch just what changed since.  _ID is the sequence number, which only grows.
+
+       Query changes?since={sequence}&consumer={name} with the sequence of the last change the
+       consumer has seen.  The result starts with that change itself, as an anchor, followed by
+       every later one in order.  Asking also tells the provider the consumer has seen everything
+       up to since, and the log is truncated to what the slowest consumer still needs, but never
+       holds more than MAX_ROWS.  When the anchor is missing (see hasGap) changes were lost
+       and the consumer has to read everything again.  With since 0 the result is only the
+       newest change, the place to start from after reading everything.  Either way the
+       consumer keeps the _ID of the last row it got for next time.
+
+       A weather row written over an existing day is logged as an insert; treat OP_INSERT as
+       "this key now has this value". */
+    public static final class ChangeEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CHANGES).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGES;
+
+        public static final String TABLE_NAME = "change_log";
+
+        // The last sequence number each consumer has seen, which the log is truncated to.
+        public static final String CONSUMER_TABLE_NAME = "change_consumer";
+        public static final String COLUMN_CONSUMER_NAME = "name";
+        public static final String COLUMN_CONSUMER_SEQUENCE = "sequence";
+
+        // Values of COLUMN_OPERATION
+        public static final int OP_INSERT = 1;
+        public static final int OP_UPDATE = 2;
+        public static final int OP_DELETE = 3;
+
+        // Query parameters of the changes uri
+        public static final String PARAM_SINCE = "since";
+        public static final String PARAM_CONSUMER = "consumer";
+
+        // Name of the table the row was written to
+        public static final String COLUMN_TABLE = "table_name";
+        // The location the row belongs to; for the location table, the location itself
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // The weather row's date, or the history row's period start, in milliseconds since the
+        // epoch; null for locations
+        public static final String COLUMN_DATE = "date";
+        // One of OP_INSERT, OP_UPDATE or OP_DELETE
+        public static final String COLUMN_OPERATION = "operation";
+
+        // Changes kept for consumers that have stopped asking; further behind than this, they
+        // find a gap and read everything again.
+        public static final int MAX_ROWS = 4096;
+
+        public static Uri buildChangesSince(long since, String consumer) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_SINCE, Long.toString(since))
+                    .appendQueryParameter(PARAM_CONSUMER, consumer).build();
+        }
+
+        public static long getSinceFromUri(Uri uri) {
+            String sinceString = uri.getQueryParameter(PARAM_SINCE);
+            if (null != sinceString && sinceString.length() > 0)
+                return Long.parseLong(sinceString);
+            else
+                return 0;
+        }
+
+        public static String getConsumerFromUri(Uri uri) {
+            return uri.getQueryParameter(PARAM_CONSUMER);
+        }
+
+        /**
+         * @return true if changes after since may be missing from the result, in which case the
+         * consumer has to read everything again.  A consumer that has seen nothing yet (since
+         * is 0) always has to.  Leaves the cursor on the anchor, so moveToNext() reads the
+         * first new change.
+         */
+        public static boolean hasGap(Cursor changes, long since) {
+            if (since == 0 || !changes.moveToFirst()) {
+                return true;
+            }
+            return changes.getLong(changes.getColumnIndex(_ID)) != since;
+        }
+    }
+
+    /* Inner class that defines the table contents of the history table.  Each row summarises
+       either a week or a month of weather for one location once those days have fallen out of
+       the raw retention window. */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "weather_history";
+
+        // Values of COLUMN_PERIOD_TYPE
+        public static final int PERIOD_WEEK = 1;
+        public static final int PERIOD_MONTH = 2;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // One of PERIOD_WEEK or PERIOD_MONTH
+        public static final String COLUMN_PERIOD_TYPE = "period_type";
+        // Start (inclusive) and end (exclusive) of the period, in milliseconds since the epoch
+        public static final String COLUMN_PERIOD_START = "period_start";
+        public static final String COLUMN_PERIOD_END = "period_end";
+        // Number of days that were rolled up into this row
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest minimum and highest maximum temperature over the period
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        // Averages of the daily minimum and maximum temperatures
+        public static final String COLUMN_AVG_MIN_TEMP = "avg_min";
+        public static final String COLUMN_AVG_MAX_TEMP = "avg_max";
+
+        // The weather id seen on the most days of the period
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        // Number of days per condition group, as defined by the OpenWeatherMap condition codes
+        public static final String COLUMN_THUNDERSTORM_DAYS = "thunderstorm_days";   // 2xx
+        public static final String COLUMN_DRIZZLE_DAYS = "drizzle_days";             // 3xx
+        public static final String COLUMN_RAIN_DAYS = "rain_days";                   // 5xx
+        public static final String COLUMN_SNOW_DAYS = "snow_days";                   // 6xx
+        public static final String COLUMN_ATMOSPHERE_DAYS = "atmosphere_days";       // 7xx
+        public static final String COLUMN_CLEAR_DAYS = "clear_days";                 // 800
+        public static final String COLUMN_CLOUDY_DAYS = "cloudy_days";               // 801-804
+        public static final String COLUMN_EXTREME_DAYS = "extreme_days";             // 9xx
+
+        public static Uri buildHistoryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        public static Uri buildHistoryLocationWithPeriod(String locationSetting, int periodType) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(COLUMN_PERIOD_TYPE, Integer.toString(periodType)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static int getPeriodTypeFromUri(Uri uri) {
+            String periodString = uri.getQueryParameter(COLUMN_PERIOD_TYPE);
+            if (null != periodString && periodString.length() > 0)
+                return Integer.parseInt(periodString);
+            else
+                return 0;
+        }
     }
 }
@@ -27,17 +27,33 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version and add
+    // the matching step to WeatherDbMigrations.
+    static final int DATABASE_VERSION = 12;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Set by onCreate, so that onOpen switches the new file to incremental auto-vacuum.
+    private boolean mCreated;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        mCreated = true;
+        createBaseSchema(sqLiteDatabase);
+        // Bring the fresh database up to date with the same steps an upgrade would run.
+        WeatherDbMigrations.migrate(sqLiteDatabase, WeatherDbMigrations.BASE_VERSION,
+                DATABASE_VERSION);
+    }
+
+    /**
+     * Creates the tables as they were at {@link WeatherDbMigrations#BASE_VERSION}.  Do not change
+     * this; schema changes go into WeatherDbMigrations.
+     */
+    static void createBaseSchema(SQLiteDatabase sqLiteDatabase) {
         // Create a table to hold locations.  A location consists of the string supplied in the
         // location setting, the city name, and the latitude and longitude
         final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
@@ -83,14 +99,28 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (mCreated) {
+            mCreated = false;
+            // The VACUUM this takes can't run inside onCreate's transaction, and here it has
+            // only the empty tables to copy.
+            WeatherDbMaintenance.enableIncrementalVacuum(db);
+        }
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
+        if (WeatherDbMigrations.canMigrate(oldVersion)) {
+            // Upgrade in place so users keep their forecast and don't all resync at once.
+            WeatherDbMigrations.migrate(sqLiteDatabase, oldVersion, newVersion);
+            return;
+        }
+        // This database is only a cache for online data, so schemas too old to migrate are
+        // simply discarded and rebuilt.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
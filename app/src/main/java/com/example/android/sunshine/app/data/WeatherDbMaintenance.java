@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Keeps weather.db from growing without bound.
+ *
+ * Every sync replaces the forecast days and the compactor deletes old ones, so pages keep
+ * moving to the free list, and SQLite never gives them back to the file system on its own.
+ * The database runs in incremental auto-vacuum mode, so {@link #run} can hand back a bounded
+ * number of free pages at a time.  It then refreshes the planner statistics with ANALYZE.
+ *
+ * The provider runs this for {@link WeatherContract#METHOD_MAINTAIN_DATABASE}, which the sync
+ * adapter calls while the device is charging and idle.
+ */
+final class WeatherDbMaintenance {
+
+    private static final String LOG_TAG = WeatherDbMaintenance.class.getSimpleName();
+
+    // The PRAGMA auto_vacuum value for incremental mode
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Upper bound on the pages released per run; 2MB at the default page size.
+    static final int MAX_VACUUM_PAGES = 512;
+    // Free pages below this share of the file aren't worth moving pages around for; the next
+    // writes reuse them anyway.
+    static final int MIN_FREE_PERCENT = 10;
+
+    private static final int MAX_RUNS_KEPT = 8;
+
+    // The latest runs, newest first, for dump().
+    private final Deque<String> mRuns = new ArrayDeque<>();
+
+    static long getPageCount(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+    }
+
+    static long getFreePageCount(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+    }
+
+    static int getAutoVacuum(SQLiteDatabase db) {
+        return (int) DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null);
+    }
+
+    /**
+     * Switches the database to incremental auto-vacuum.  The mode only changes without a VACUUM
+     * while the file has no tables, and the framework creates android_metadata as soon as it
+     * opens one, so this always rewrites the file.  Must not be called inside a transaction.
+     */
+    static void enableIncrementalVacuum(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+    }
+
+    /**
+     * Releases free pages and refreshes the planner statistics.  Must not be called inside a
+     * transaction.
+     *
+     * @return the page size, the page and free page counts before and after, and the time the
+     * run took, as the EXTRA_DB_ values.
+     */
+    Bundle run(SQLiteDatabase db) {
+        long start = System.nanoTime();
+        long pageSize = db.getPageSize();
+        long pagesBefore = getPageCount(db);
+        long freeBefore = getFreePageCount(db);
+
+        String vacuum;
+        if (getAutoVacuum(db) != AUTO_VACUUM_INCREMENTAL) {
+            // Databases created before incremental mode switch over here, which rewrites the
+            // file once and packs it while it's at it.
+            enableIncrementalVacuum(db);
+            vacuum = "full";
+        } else if (freeBefore > 0 && freeBefore * 100 >= pagesBefore * MIN_FREE_PERCENT) {
+            // Each step of the pragma frees one page, so every row of its result has to be read.
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum("
+                    + Math.min(freeBefore, MAX_VACUUM_PAGES) + ")", null);
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+            vacuum = "incremental";
+        } else {
+            vacuum = "none";
+        }
+        db.execSQL("ANALYZE");
+
+        long pagesAfter = getPageCount(db);
+        long freeAfter = getFreePageCount(db);
+        long durationUs = (System.nanoTime() - start) / 1000;
+
+        String run = "vacuum=" + vacuum + " pages=" + pagesBefore + "->" + pagesAfter
+                + " free=" + freeBefore + "->" + freeAfter + " size=" + pagesBefore * pageSize
+                + "->" + pagesAfter * pageSize + " bytes in " + durationUs + "us";
+        Log.d(LOG_TAG, "Database maintenance: " + run);
+        synchronized (mRuns) {
+            mRuns.addFirst(System.currentTimeMillis() + " " + run);
+            if (mRuns.size() > MAX_RUNS_KEPT) {
+                mRuns.removeLast();
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putLong(WeatherContract.EXTRA_DB_PAGE_SIZE, pageSize);
+        result.putLong(WeatherContract.EXTRA_DB_PAGES_BEFORE, pagesBefore);
+        result.putLong(WeatherContract.EXTRA_DB_PAGES_AFTER, pagesAfter);
+        result.putLong(WeatherContract.EXTRA_DB_FREE_PAGES_BEFORE, freeBefore);
+        result.putLong(WeatherContract.EXTRA_DB_FREE_PAGES_AFTER, freeAfter);
+        result.putLong(WeatherContract.EXTRA_DB_MAINTENANCE_US, durationUs);
+        return result;
+    }
+
+    void dump(PrintWriter writer, SQLiteDatabase db) {
+        writer.println("Database: pages=" + getPageCount(db) + " free=" + getFreePageCount(db)
+                + " page size=" + db.getPageSize() + " auto_vacuum=" + getAutoVacuum(db));
+        synchronized (mRuns) {
+            for (String run : mRuns) {
+                writer.println("  maintenance at " + run);
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationSearchEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Ordered, in-place schema migrations for {@link WeatherDbHelper}.
+ *
+ * Every schema change after version 2 gets one step here that takes a database from version N to
+ * N + 1 without touching the rows already stored, so an app upgrade doesn't throw away the
+ * forecast and trigger a full resync for every user at once.  Fresh installs build the version 2
+ * schema and then run the very same steps, which keeps new and upgraded databases identical.
+ *
+ * To change the schema: bump {@code WeatherDbHelper.DATABASE_VERSION} and add a case for the
+ * previous version to {@link #migrate}.
+ */
+final class WeatherDbMigrations {
+
+    private static final String LOG_TAG = WeatherDbMigrations.class.getSimpleName();
+
+    // The oldest schema we know how to upgrade in place.  Anything older is dropped and rebuilt.
+    static final int BASE_VERSION = 2;
+
+    private WeatherDbMigrations() {
+    }
+
+    static boolean canMigrate(int oldVersion) {
+        return oldVersion >= BASE_VERSION;
+    }
+
+    /**
+     * Upgrades the schema from oldVersion to newVersion one step at a time.  Runs inside the
+     * transaction SQLiteOpenHelper opens for onCreate/onUpgrade, so a failing step leaves the
+     * database at oldVersion.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion; version < newVersion; version++) {
+            long start = System.nanoTime();
+            switch (version) {
+                case 2:
+                    upgradeFrom2(db);
+                    break;
+                case 3:
+                    upgradeFrom3(db);
+                    break;
+                case 4:
+                    upgradeFrom4(db);
+                    break;
+                case 5:
+                    upgradeFrom5(db);
+                    break;
+                case 6:
+                    upgradeFrom6(db);
+                    break;
+                case 7:
+                    upgradeFrom7(db);
+                    break;
+                case 8:
+                    upgradeFrom8(db);
+                    break;
+                case 9:
+                    upgradeFrom9(db);
+                    break;
+                case 10:
+                    upgradeFrom10(db);
+                    break;
+                case 11:
+                    upgradeFrom11(db);
+                    break;
+                default:
+                    throw new IllegalStateException("No migration from database version " + version);
+            }
+            Log.d(LOG_TAG, "Migrated database from version " + version + " to " + (version + 1)
+                    + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+        }
+    }
+
+    /*
+        Version 3: index the weather rows by location and date.  Every forecast query joins on
+        location_id and filters on date, which the UNIQUE (date, location_id) index can't serve
+        with location_id as the leading column.
+     */
+    private static void upgradeFrom2(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + WeatherEntry.INDEX_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");");
+    }
+
+    /*
+        Version 4: the history table that old days are rolled up into instead of being deleted.
+     */
+    private static void upgradeFrom3(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+                HistoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_PERIOD_TYPE + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_PERIOD_END + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+
+                HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_AVG_MIN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_AVG_MAX_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+
+                HistoryEntry.COLUMN_THUNDERSTORM_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DRIZZLE_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_RAIN_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_SNOW_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_ATMOSPHERE_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_CLEAR_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_CLOUDY_DAYS + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_EXTREME_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One row per location and period; the index also serves the per-location
+                // history queries, which filter on location and period type.
+                " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                HistoryEntry.COLUMN_PERIOD_TYPE + ", " +
+                HistoryEntry.COLUMN_PERIOD_START + ") ON CONFLICT REPLACE);");
+    }
+
+    /*
+        Version 5: one row of statistics per location over its days from today on, kept by
+        triggers that add and take out each row, so the stats uri doesn't have to aggregate the
+        common case.  Filled from the rows already stored.  The triggers read columns that
+        version 11 changes, so they are only created from there on.
+     */
+    private static void upgradeFrom4(SQLiteDatabase db) {
+        createStatsTable(db, StatsEntry.COLUMN_FIRST_DATE, StatsEntry.COLUMN_LAST_DATE,
+                new String[]{StatsEntry.COLUMN_AVG_MIN_TEMP, StatsEntry.COLUMN_AVG_MAX_TEMP,
+                        StatsEntry.COLUMN_AVG_HUMIDITY, StatsEntry.COLUMN_AVG_PRESSURE,
+                        StatsEntry.COLUMN_AVG_WIND_SPEED});
+        WeatherStats.fillAtVersion5(db);
+    }
+
+    // The summary table, which has kept its first and last day under two names, and either the
+    // averages of temperature, humidity, pressure and wind speed or their sums.
+    private static void createStatsTable(SQLiteDatabase db, String firstColumn,
+                                         String lastColumn, String[] averageColumns) {
+        db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " (" +
+                StatsEntry.COLUMN_LOC_KEY + " INTEGER PRIMARY KEY, " +
+                firstColumn + " INTEGER NOT NULL, " +
+                lastColumn + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+
+                StatsEntry.COLUMN_MIN_TEMP + " REAL, " +
+                StatsEntry.COLUMN_MAX_TEMP + " REAL, " +
+                averageColumns[0] + " REAL, " +
+                averageColumns[1] + " REAL, " +
+                StatsEntry.COLUMN_MIN_HUMIDITY + " REAL, " +
+                StatsEntry.COLUMN_MAX_HUMIDITY + " REAL, " +
+                averageColumns[2] + " REAL, " +
+                StatsEntry.COLUMN_MIN_PRESSURE + " REAL, " +
+                StatsEntry.COLUMN_MAX_PRESSURE + " REAL, " +
+                averageColumns[3] + " REAL, " +
+                StatsEntry.COLUMN_MIN_WIND_SPEED + " REAL, " +
+                StatsEntry.COLUMN_MAX_WIND_SPEED + " REAL, " +
+                averageColumns[4] + " REAL, " +
+
+                StatsEntry.COLUMN_THUNDERSTORM_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_DRIZZLE_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_RAIN_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_SNOW_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_ATMOSPHERE_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_CLEAR_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_CLOUDY_DAYS + " INTEGER NOT NULL, " +
+                StatsEntry.COLUMN_EXTREME_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + StatsEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));");
+    }
+
+    /*
+        Version 6: index the location coordinates for the nearby location lookup.  Both columns
+        are in the index so the longitude filter runs without reading the table.
+     */
+    private static void upgradeFrom5(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + LocationEntry.INDEX_COORD + " ON " +
+                LocationEntry.TABLE_NAME + " (" +
+                LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG + ");");
+    }
+
+    /*
+        Version 7: the search index behind location/search, built from the stored locations.
+     */
+    private static void upgradeFrom6(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LocationSearchEntry.TABLE_NAME + " (" +
+                LocationSearchEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                LocationSearchEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                LocationSearchEntry.COLUMN_TERM + " TEXT NOT NULL, " +
+                LocationSearchEntry.COLUMN_POSITION + " INTEGER NOT NULL, " +
+                " FOREIGN KEY (" + LocationSearchEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "));");
+        db.execSQL("CREATE INDEX " + LocationSearchEntry.INDEX_TERM + " ON " +
+                LocationSearchEntry.TABLE_NAME + " (" + LocationSearchEntry.COLUMN_TERM + ");");
+        // Re-indexing a location deletes its terms by location id first.
+        db.execSQL("CREATE INDEX " + LocationSearchEntry.INDEX_LOCATION + " ON " +
+                LocationSearchEntry.TABLE_NAME + " (" + LocationSearchEntry.COLUMN_LOC_KEY + ");");
+        LocationSearchIndex.index(db, null, null);
+    }
+
+    /*
+        Version 8: the forecast table, a copy of the weather rows joined with their location
+        that forecast queries read instead of the join.  Filled from the rows already stored.
+     */
+    private static void upgradeFrom7(SQLiteDatabase db) {
+        ForecastReadModel.createAtVersion8(db);
+    }
+
+    /*
+        Version 9: the Julian day of every weather row, with an index, so that day and range
+        queries compare integers, and triggers that fill it in for rows written without one, so
+        no row drops out of the day queries.  Then the forecast table is built again to copy it.
+     */
+    private static void upgradeFrom8(SQLiteDatabase db) {
+        ForecastReadModel.drop(db);
+        WeatherStats.dropTriggers(db);
+        db.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME + " ADD COLUMN " +
+                WeatherEntry.COLUMN_JULIAN_DAY + " INTEGER");
+        // One update per stored date rather than per row; there are only a few hundred.
+        Cursor dates = db.query(true, WeatherEntry.TABLE_NAME, new String[]{WeatherEntry.COLUMN_DATE},
+                null, null, null, null, null, null);
+        try {
+            ContentValues values = new ContentValues();
+            while (dates.moveToNext()) {
+                long date = dates.getLong(0);
+                values.put(WeatherEntry.COLUMN_JULIAN_DAY, WeatherContract.getJulianDay(date));
+                db.update(WeatherEntry.TABLE_NAME, values, WeatherEntry.COLUMN_DATE + " = ?",
+                        new String[]{Long.toString(date)});
+            }
+        } finally {
+            dates.close();
+        }
+        db.execSQL("CREATE INDEX " + WeatherEntry.INDEX_LOCATION_DAY + " ON " +
+                WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_JULIAN_DAY + ");");
+
+        String julianDay = julianDayOf("NEW." + WeatherEntry.COLUMN_DATE);
+        db.execSQL("CREATE TRIGGER " + WeatherEntry.TRIGGER_JULIAN_DAY_INSERT +
+                " AFTER INSERT ON " + WeatherEntry.TABLE_NAME +
+                " WHEN NEW." + WeatherEntry.COLUMN_JULIAN_DAY + " IS NULL BEGIN" +
+                " UPDATE " + WeatherEntry.TABLE_NAME +
+                " SET " + WeatherEntry.COLUMN_JULIAN_DAY + " = " + julianDay +
+                " WHERE " + WeatherEntry._ID + " = NEW." + WeatherEntry._ID + "; END");
+        db.execSQL("CREATE TRIGGER " + WeatherEntry.TRIGGER_JULIAN_DAY_UPDATE +
+                " AFTER UPDATE OF " + WeatherEntry.COLUMN_DATE + " ON " + WeatherEntry.TABLE_NAME +
+                // Also when the date moved and the day was left as it was.
+                " WHEN NEW." + WeatherEntry.COLUMN_JULIAN_DAY + " IS NULL" +
+                " OR (NEW." + WeatherEntry.COLUMN_DATE + " <> OLD." + WeatherEntry.COLUMN_DATE +
+                " AND NEW." + WeatherEntry.COLUMN_JULIAN_DAY + " = OLD." +
+                WeatherEntry.COLUMN_JULIAN_DAY + ") BEGIN" +
+                " UPDATE " + WeatherEntry.TABLE_NAME +
+                " SET " + WeatherEntry.COLUMN_JULIAN_DAY + " = " + julianDay +
+                " WHERE " + WeatherEntry._ID + " = NEW." + WeatherEntry._ID + "; END");
+        ForecastReadModel.create(db);
+    }
+
+    /*
+        Version 10: the change log behind the changes uri.  It starts empty; consumers read
+        everything once and follow the log from there.
+     */
+    private static void upgradeFrom9(SQLiteDatabase db) {
+        ChangeLog.create(db);
+    }
+
+    /*
+        Version 11: the summary table keyed on Julian days like the queries it answers, and
+        keeping the sum of each averaged column, so that its triggers only add and subtract.
+        Rebuilt from the rows already stored.
+     */
+    private static void upgradeFrom10(SQLiteDatabase db) {
+        WeatherStats.dropTriggers(db);
+        db.execSQL("DROP TABLE " + StatsEntry.TABLE_NAME);
+        createStatsTable(db, StatsEntry.COLUMN_FIRST_DAY, StatsEntry.COLUMN_LAST_DAY,
+                new String[]{StatsEntry.COLUMN_SUM_MIN_TEMP, StatsEntry.COLUMN_SUM_MAX_TEMP,
+                        StatsEntry.COLUMN_SUM_HUMIDITY, StatsEntry.COLUMN_SUM_PRESSURE,
+                        StatsEntry.COLUMN_SUM_WIND_SPEED});
+        WeatherStats.createTriggers(db);
+        WeatherStats.rebuild(db, WeatherContract.getJulianDay(System.currentTimeMillis()));
+    }
+
+    /*
+        Version 12: search terms keep letters and digits of every script, where they used to
+        keep only a-z and 0-9, so the stored locations are indexed again.
+     */
+    private static void upgradeFrom11(SQLiteDatabase db) {
+        LocationSearchIndex.index(db, null, null);
+    }
+
+    // The local day of a date column, as WeatherContract.getJulianDay works it out.  SQLite's
+    // localtime is the device's time zone, as is the one WeatherContract keeps.
+    private static String julianDayOf(String dateColumn) {
+        return "CAST(julianday(" + dateColumn + " / 1000, 'unixepoch', 'localtime') + 0.5" +
+                " AS INTEGER)";
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Calendar;
+
+/**
+ * Tiered retention for the weather table.
+ *
+ * The last {@link #RAW_HISTORY_DAYS} days stay in the weather table as they are.  Once every day
+ * of a week is older than that, the week is rolled up into a single weekly row in the history
+ * table and its raw rows are deleted.  So a past day stays raw for at least RAW_HISTORY_DAYS
+ * days, and for up to six more while the rest of its week catches up; before this table
+ * existed, every day before today was deleted on each sync.  Weekly rows older than {@link #WEEKLY_HISTORY_WEEKS} weeks
+ * are in turn rolled up into monthly rows.  A week belongs to the month it starts in.
+ *
+ * Each period is compacted in its own short transaction, so the provider is never locked for
+ * long, and a sync after a long time offline catches up a few periods at a time.
+ */
+class WeatherHistoryCompactor {
+
+    static final int RAW_HISTORY_DAYS = 7;
+    static final int WEEKLY_HISTORY_WEEKS = 12;
+    // Upper bound on periods compacted per call.  A daily sync normally needs one or two.
+    static final int MAX_PERIODS_PER_CALL = 32;
+
+    // Counts the days of each condition group, e.g. "SUM(weather_id BETWEEN 200 AND 299)".
+    private static final String RAW_CONDITION_COUNTS =
+            conditionCount(200, 299) + ", " +
+            conditionCount(300, 399) + ", " +
+            conditionCount(500, 599) + ", " +
+            conditionCount(600, 699) + ", " +
+            conditionCount(700, 799) + ", " +
+            conditionCount(800, 800) + ", " +
+            conditionCount(801, 804) + ", " +
+            conditionCount(900, 999);
+
+    private static final String HISTORY_COLUMNS =
+            HistoryEntry.COLUMN_LOC_KEY + ", " +
+            HistoryEntry.COLUMN_PERIOD_TYPE + ", " +
+            HistoryEntry.COLUMN_PERIOD_START + ", " +
+            HistoryEntry.COLUMN_PERIOD_END + ", " +
+            HistoryEntry.COLUMN_DAY_COUNT + ", " +
+            HistoryEntry.COLUMN_MIN_TEMP + ", " +
+            HistoryEntry.COLUMN_MAX_TEMP + ", " +
+            HistoryEntry.COLUMN_AVG_MIN_TEMP + ", " +
+            HistoryEntry.COLUMN_AVG_MAX_TEMP + ", " +
+            HistoryEntry.COLUMN_WEATHER_ID + ", " +
+            HistoryEntry.COLUMN_THUNDERSTORM_DAYS + ", " +
+            HistoryEntry.COLUMN_DRIZZLE_DAYS + ", " +
+            HistoryEntry.COLUMN_RAIN_DAYS + ", " +
+            HistoryEntry.COLUMN_SNOW_DAYS + ", " +
+            HistoryEntry.COLUMN_ATMOSPHERE_DAYS + ", " +
+            HistoryEntry.COLUMN_CLEAR_DAYS + ", " +
+            HistoryEntry.COLUMN_CLOUDY_DAYS + ", " +
+            HistoryEntry.COLUMN_EXTREME_DAYS;
+
+    //weather.location_id = ? AND date >= ? AND date < ?
+    private static final String sRawPeriodSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+            WeatherEntry.COLUMN_DATE + " >= ? AND " +
+            WeatherEntry.COLUMN_DATE + " < ?";
+
+    //weather_history.location_id = ? AND period_type = week AND period_start >= ? AND period_start < ?
+    private static final String sWeeklyPeriodSelection =
+            HistoryEntry.COLUMN_LOC_KEY + " = ? AND " +
+            HistoryEntry.COLUMN_PERIOD_TYPE + " = " + HistoryEntry.PERIOD_WEEK + " AND " +
+            HistoryEntry.COLUMN_PERIOD_START + " >= ? AND " +
+            HistoryEntry.COLUMN_PERIOD_START + " < ?";
+
+    private static final String SQL_ROLL_UP_WEEK =
+            "INSERT OR REPLACE INTO " + HistoryEntry.TABLE_NAME + " (" + HISTORY_COLUMNS + ") " +
+            "SELECT ?, " + HistoryEntry.PERIOD_WEEK + ", ?, ?, COUNT(*), " +
+            "MIN(" + WeatherEntry.COLUMN_MIN_TEMP + "), MAX(" + WeatherEntry.COLUMN_MAX_TEMP + "), " +
+            "AVG(" + WeatherEntry.COLUMN_MIN_TEMP + "), AVG(" + WeatherEntry.COLUMN_MAX_TEMP + "), " +
+            "(SELECT " + WeatherEntry.COLUMN_WEATHER_ID + " FROM " + WeatherEntry.TABLE_NAME +
+            " WHERE " + sRawPeriodSelection +
+            " GROUP BY " + WeatherEntry.COLUMN_WEATHER_ID +
+            " ORDER BY COUNT(*) DESC, " + WeatherEntry.COLUMN_WEATHER_ID + " LIMIT 1), " +
+            RAW_CONDITION_COUNTS +
+            " FROM " + WeatherEntry.TABLE_NAME + " WHERE " + sRawPeriodSelection;
+
+    private static final String SQL_ROLL_UP_MONTH =
+            "INSERT OR REPLACE INTO " + HistoryEntry.TABLE_NAME + " (" + HISTORY_COLUMNS + ") " +
+            "SELECT ?, " + HistoryEntry.PERIOD_MONTH + ", ?, ?, SUM(" + HistoryEntry.COLUMN_DAY_COUNT + "), " +
+            "MIN(" + HistoryEntry.COLUMN_MIN_TEMP + "), MAX(" + HistoryEntry.COLUMN_MAX_TEMP + "), " +
+            weightedAverage(HistoryEntry.COLUMN_AVG_MIN_TEMP) + ", " +
+            weightedAverage(HistoryEntry.COLUMN_AVG_MAX_TEMP) + ", " +
+            "(SELECT " + HistoryEntry.COLUMN_WEATHER_ID + " FROM " + HistoryEntry.TABLE_NAME +
+            " WHERE " + sWeeklyPeriodSelection +
+            " GROUP BY " + HistoryEntry.COLUMN_WEATHER_ID +
+            " ORDER BY SUM(" + HistoryEntry.COLUMN_DAY_COUNT + ") DESC, " +
+            HistoryEntry.COLUMN_WEATHER_ID + " LIMIT 1), " +
+            "SUM(" + HistoryEntry.COLUMN_THUNDERSTORM_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_DRIZZLE_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_RAIN_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_SNOW_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_ATMOSPHERE_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_CLEAR_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_CLOUDY_DAYS + "), " +
+            "SUM(" + HistoryEntry.COLUMN_EXTREME_DAYS + ")" +
+            " FROM " + HistoryEntry.TABLE_NAME + " WHERE " + sWeeklyPeriodSelection;
+
+    private static String conditionCount(int from, int to) {
+        return "SUM(" + WeatherEntry.COLUMN_WEATHER_ID + " BETWEEN " + from + " AND " + to + ")";
+    }
+
+    private static String weightedAverage(String column) {
+        return "SUM(" + column + " * " + HistoryEntry.COLUMN_DAY_COUNT + ") / SUM(" +
+                HistoryEntry.COLUMN_DAY_COUNT + ")";
+    }
+
+    private WeatherHistoryCompactor() {
+    }
+
+    /**
+     * Compacts up to maxPeriods weeks or months that have fallen out of their retention window.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @return the number of periods written to the history table.  Less than maxPeriods means
+     * there is nothing left to compact.
+     */
+    static int compact(SQLiteDatabase db, long now, int maxPeriods) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        startOfDay(calendar);
+        calendar.add(Calendar.DAY_OF_MONTH, -RAW_HISTORY_DAYS);
+        long rawCutoff = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, -7 * WEEKLY_HISTORY_WEEKS);
+        long weeklyCutoff = calendar.getTimeInMillis();
+
+        int compacted = 0;
+        while (compacted < maxPeriods && compactOldestWeek(db, calendar, rawCutoff)) {
+            compacted++;
+        }
+        while (compacted < maxPeriods && compactOldestMonth(db, calendar, weeklyCutoff)) {
+            compacted++;
+        }
+        return compacted;
+    }
+
+    /**
+     * Rolls the week holding the oldest raw row up into a weekly row, if the whole week is
+     * older than the cutoff.
+     *
+     * @return false if there was no such week.
+     */
+    private static boolean compactOldestWeek(SQLiteDatabase db, Calendar calendar, long cutoff) {
+        long locationId;
+        long oldestDate;
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE},
+                WeatherEntry.COLUMN_DATE + " < ?", new String[]{Long.toString(cutoff)},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC", "1");
+        try {
+            if (!cursor.moveToFirst()) return false;
+            locationId = cursor.getLong(0);
+            oldestDate = cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+
+        calendar.setTimeInMillis(oldestDate);
+        startOfDay(calendar);
+        int daysIntoWeek = (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -daysIntoWeek);
+        long weekStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 7);
+        long weekEnd = calendar.getTimeInMillis();
+        // The rest of the week is still raw history, leave it alone until it's complete.
+        if (weekEnd > cutoff) return false;
+
+        String[] period = {Long.toString(locationId), Long.toString(weekStart), Long.toString(weekEnd)};
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_ROLL_UP_WEEK, new Object[]{
+                    locationId, weekStart, weekEnd,
+                    locationId, weekStart, weekEnd,
+                    locationId, weekStart, weekEnd});
+            db.delete(WeatherEntry.TABLE_NAME, sRawPeriodSelection, period);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return true;
+    }
+
+    /**
+     * Rolls the weekly rows of the month holding the oldest weekly row up into a monthly row,
+     * if every week starting in that month is older than the cutoff.
+     *
+     * @return false if there was no such month.
+     */
+    private static boolean compactOldestMonth(SQLiteDatabase db, Calendar calendar, long cutoff) {
+        long locationId;
+        long oldestStart;
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME,
+                new String[]{HistoryEntry.COLUMN_LOC_KEY, HistoryEntry.COLUMN_PERIOD_START},
+                HistoryEntry.COLUMN_PERIOD_TYPE + " = " + HistoryEntry.PERIOD_WEEK + " AND " +
+                        HistoryEntry.COLUMN_PERIOD_START + " < ?",
+                new String[]{Long.toString(cutoff)},
+                null, null, HistoryEntry.COLUMN_PERIOD_START + " ASC", "1");
+        try {
+            if (!cursor.moveToFirst()) return false;
+            locationId = cursor.getLong(0);
+            oldestStart = cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+
+        calendar.setTimeInMillis(oldestStart);
+        startOfDay(calendar);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        long monthStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.MONTH, 1);
+        long monthEnd = calendar.getTimeInMillis();
+        if (monthEnd > cutoff) return false;
+
+        String[] period = {Long.toString(locationId), Long.toString(monthStart), Long.toString(monthEnd)};
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_ROLL_UP_MONTH, new Object[]{
+                    locationId, monthStart, monthEnd,
+                    locationId, monthStart, monthEnd,
+                    locationId, monthStart, monthEnd});
+            db.delete(HistoryEntry.TABLE_NAME, sWeeklyPeriodSelection, period);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return true;
+    }
+
+    private static void startOfDay(Calendar calendar) {
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+    }
+}
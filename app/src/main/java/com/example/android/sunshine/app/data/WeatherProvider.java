@@ -16,26 +16,67 @@
 package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
 import android.content.ContentProvider;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashSet;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private WeatherQueryCache mQueryCache;
+    private ProviderMetrics mMetrics;
+    private final WeatherDbMaintenance mMaintenance = new WeatherDbMaintenance();
+    // Whether weather/{location} queries may be answered from the forecast table.
+    private volatile boolean mReadModelEnabled = true;
+    // Today's record per location setting, served by METHOD_TODAY.  One per location anyone
+    // asks about, which is the preferred one and maybe a couple more.
+    private final LruCache<String, TodayRecord> mTodayRecords = new LruCache<>(8);
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_STATS = 103;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAR = 301;
+    static final int LOCATION_SEARCH = 302;
+    static final int HISTORY = 400;
+    static final int HISTORY_WITH_LOCATION = 401;
+    static final int CHANGES = 500;
+
+    // The uri codes metrics are kept for, sorted, and how they are labelled.
+    private static final int[] METRIC_CODES = {
+            WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE, WEATHER_STATS,
+            LOCATION, LOCATION_NEAR, LOCATION_SEARCH,
+            HISTORY, HISTORY_WITH_LOCATION, CHANGES
+    };
+    private static final String[] METRIC_CODE_NAMES = {
+            "weather", "weather/*", "weather/*/#", "weather/*/stats",
+            "location", "location/near", "location/search",
+            "history", "history/*", "changes"
+    };
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sHistoryByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sForecastQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,6 +90,21 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        //The same rows without the join, see ForecastReadModel
+        sForecastQueryBuilder = new SQLiteQueryBuilder();
+        sForecastQueryBuilder.setTables(WeatherContract.ForecastEntry.TABLE_NAME);
+
+        sHistoryByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //weather_history INNER JOIN location ON weather_history.location_id = location._id
+        sHistoryByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HistoryEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HistoryEntry.TABLE_NAME +
+                        "." + WeatherContract.HistoryEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
     }
 
     //location.location_setting = ?
@@ -56,52 +112,158 @@ public class WeatherProvider extends ContentProvider {
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
-    //location.location_setting = ? AND date >= ?
+    //location.location_setting = ? AND julian_day >= ?
     private static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+                    WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY + " >= ? ";
+
+    //AND julian_day > ?
+    private static final String sAfterDateSelection =
+            "AND " + WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY + " > ? ";
+
+    // Pages are always in day order, whatever the caller asked for; it is what the keys are.
+    private static final String sDateOrder = WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY + " ASC";
 
-    //location.location_setting = ? AND date = ?
+    //location.location_setting = ? AND julian_day = ?
     private static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
-                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+                    WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY + " = ? ";
+
+    //forecast.location_setting = ?
+    private static final String sForecastSettingSelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    //forecast.location_setting = ? AND julian_day >= ?
+    private static final String sForecastSettingWithStartDateSelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY + " >= ? ";
+
+    //forecast.location_setting = ? AND julian_day = ?
+    private static final String sForecastSettingAndDaySelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY + " = ? ";
+
+    /**
+     * @return the projection to query the forecast table with, or null when the query has to
+     * go to the join.
+     */
+    private String[] getForecastProjection(String[] projection, String sortOrder) {
+        return mReadModelEnabled ? ForecastReadModel.getProjection(projection, sortOrder) : null;
+    }
 
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
-        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        return getWeatherByLocationSetting(
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(uri),
+                WeatherContract.WeatherEntry.getStartDateFromUri(uri),
+                WeatherContract.WeatherEntry.getAfterDateFromUri(uri),
+                WeatherContract.WeatherEntry.getLimitFromUri(uri),
+                projection, sortOrder);
+    }
+
+    /*
+        weather/{location}: the days from startDate on (every day when it is 0), after afterDate
+        when that is set, at most limit of them when that is set.
+     */
+    private Cursor getWeatherByLocationSetting(String locationSetting, long startDate,
+                                               long afterDate, int limit,
+                                               String[] projection, String sortOrder) {
+        String[] forecastProjection = getForecastProjection(projection, sortOrder);
+        boolean readModel = forecastProjection != null;
 
         String[] selectionArgs;
         String selection;
 
         if (startDate == 0) {
+            selection = readModel ? sForecastSettingSelection : sLocationSettingSelection;
+            selectionArgs = new String[]{locationSetting};
+        } else {
+            selectionArgs = new String[]{locationSetting,
+                    Integer.toString(WeatherContract.getJulianDay(startDate))};
+            selection = readModel ? sForecastSettingWithStartDateSelection
+                    : sLocationSettingWithStartDateSelection;
+        }
+
+        // A page: only the days after the last one the caller has, in date order, so the query
+        // is a seek on the (location, date) index instead of an OFFSET that reads and drops
+        // every earlier row.
+        if (afterDate != 0) {
+            selection += sAfterDateSelection;
+            String[] pageArgs = new String[selectionArgs.length + 1];
+            System.arraycopy(selectionArgs, 0, pageArgs, 0, selectionArgs.length);
+            pageArgs[selectionArgs.length] = Integer.toString(WeatherContract.getJulianDay(afterDate));
+            selectionArgs = pageArgs;
+        }
+        if (limit > 0) {
+            sortOrder = sDateOrder;
+        }
+
+        SQLiteQueryBuilder builder = readModel
+                ? sForecastQueryBuilder : sWeatherByLocationSettingQueryBuilder;
+        return builder.query(mOpenHelper.getReadableDatabase(),
+                readModel ? forecastProjection : projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder,
+                limit > 0 ? Integer.toString(limit) : null
+        );
+    }
+
+    //location.location_setting = ? AND period_type = ?
+    private static final String sLocationSettingWithPeriodSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_PERIOD_TYPE + " = ? ";
+
+    private Cursor getHistoryByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HistoryEntry.getLocationSettingFromUri(uri);
+        int periodType = WeatherContract.HistoryEntry.getPeriodTypeFromUri(uri);
+
+        String[] selectionArgs;
+        String selection;
+
+        if (periodType == 0) {
             selection = sLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
         } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+            selection = sLocationSettingWithPeriodSelection;
+            selectionArgs = new String[]{locationSetting, Integer.toString(periodType)};
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return sHistoryByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 selection,
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                sortOrder == null ? WeatherContract.HistoryEntry.COLUMN_PERIOD_START + " ASC" : sortOrder
         );
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
             Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
-        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
-
+        String day = Integer.toString(WeatherContract.getJulianDay(
+                WeatherContract.WeatherEntry.getDateFromUri(uri)));
+        String[] forecastProjection = getForecastProjection(projection, sortOrder);
+
+        if (forecastProjection != null) {
+            return sForecastQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                    forecastProjection,
+                    sForecastSettingAndDaySelection,
+                    new String[]{locationSetting, day},
+                    null,
+                    null,
+                    sortOrder
+            );
+        }
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
+                new String[]{locationSetting, day},
                 null,
                 null,
                 sortOrder
@@ -128,8 +290,19 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/" + WeatherContract.PATH_STATS,
+                WEATHER_STATS);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_NEAR,
+                LOCATION_NEAR);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_SEARCH,
+                LOCATION_SEARCH);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_CHANGES, CHANGES);
         return matcher;
     }
 
@@ -140,9 +313,43 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mQueryCache = new WeatherQueryCache(WeatherQueryCache.DEFAULT_MAX_ENTRIES);
+        // Copying a result into the cache needs Cursor.getType, which arrived in Honeycomb.
+        mQueryCache.setEnabled(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB);
+        mMetrics = new ProviderMetrics(METRIC_CODES, METRIC_CODE_NAMES);
+        // The day numbers written and queried follow the device's time zone, and today follows
+        // the clock.  The provider lives as long as the process, so this is the one place that
+        // needs to listen.
+        IntentFilter clockChanges = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        clockChanges.addAction(Intent.ACTION_DATE_CHANGED);
+        clockChanges.addAction(Intent.ACTION_TIME_CHANGED);
+        getContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                    WeatherContract.onTimeZoneChanged();
+                    mQueryCache.invalidateAll();
+                } else {
+                    WeatherContract.onDateChanged();
+                }
+            }
+        }, clockChanges);
         return true;
     }
 
+    // Used by the tests and benchmarks, which live in this package.
+    WeatherQueryCache getQueryCache() {
+        return mQueryCache;
+    }
+
+    ProviderMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    void setReadModelEnabled(boolean enabled) {
+        mReadModelEnabled = enabled;
+    }
+
     /*
         Students: Here's where you'll code the getType function that uses the UriMatcher.  You can
         test this by uncommenting testGetType in TestProvider.
@@ -162,8 +369,17 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_STATS:
+                return WeatherContract.StatsEntry.CONTENT_ITEM_TYPE;
             case LOCATION:
+            case LOCATION_NEAR:
+            case LOCATION_SEARCH:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case CHANGES:
+                return WeatherContract.ChangeEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -172,24 +388,105 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        final int match = sUriMatcher.match(uri);
+        final long start = mMetrics.start();
+        final WeatherQueryCache.Key cacheKey = mQueryCache.isEnabled() && isCacheable(match)
+                ? new WeatherQueryCache.Key(match, uri, projection, selection, selectionArgs, sortOrder)
+                : null;
+
+        Cursor retCursor;
+        CursorSnapshot snapshot = cacheKey == null ? null : mQueryCache.get(cacheKey);
+        if (snapshot != null) {
+            retCursor = snapshot.newCursor();
+        } else {
+            final long generation = mQueryCache.generation();
+            retCursor = queryDatabase(match, uri, projection, selection, selectionArgs, sortOrder);
+            if (cacheKey != null) {
+                snapshot = CursorSnapshot.copyOf(retCursor, WeatherQueryCache.MAX_ROWS_PER_ENTRY);
+                if (snapshot != null) {
+                    retCursor.close();
+                    mQueryCache.put(cacheKey, getTableForMatch(match),
+                            getLocationSettingForMatch(match, uri), snapshot, generation);
+                    retCursor = snapshot.newCursor();
+                } else {
+                    retCursor.moveToPosition(-1);
+                }
+            }
+        }
+        // New changes come from writes to any of the tables, which notify their own uris.
+        retCursor.setNotificationUri(getContext().getContentResolver(),
+                match == CHANGES ? WeatherContract.BASE_CONTENT_URI : uri);
+        // Counting the rows runs a lazy SQLiteCursor's query here rather than on first use, so
+        // the time recorded is the time the query really took.
+        mMetrics.record(ProviderMetrics.QUERY, match, start, start != 0 ? retCursor.getCount() : 0);
+        return retCursor;
+    }
+
+    private static boolean isCacheable(int match) {
+        switch (match) {
+            // Reading the changes records where the consumer is, so it always goes to the
+            // database.
+            case CHANGES:
+            // Searches are typed a letter at a time and nearby lookups follow the device's
+            // position, so each key is seldom asked for twice and would only push out the
+            // forecast queries that are.
+            case LOCATION_NEAR:
+            case LOCATION_SEARCH:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static String getTableForMatch(int match) {
+        switch (match) {
+            case LOCATION:
+                return WeatherContract.LocationEntry.TABLE_NAME;
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.TABLE_NAME;
+            default:
+                return WeatherContract.WeatherEntry.TABLE_NAME;
+        }
+    }
+
+    private static String getLocationSettingForMatch(int match, Uri uri) {
+        switch (match) {
+            case WEATHER_WITH_LOCATION:
+            case WEATHER_WITH_LOCATION_AND_DATE:
+            case WEATHER_STATS:
+            case HISTORY_WITH_LOCATION:
+                // weather/* and history/* both keep the location in the first path segment
+                return WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+            default:
+                return null;
+        }
+    }
+
+    private Cursor queryDatabase(int match, Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
-        Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
+                return getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
-                break;
+                return getWeatherByLocationSetting(uri, projection, sortOrder);
+            }
+            // "weather/*/stats"
+            case WEATHER_STATS: {
+                return WeatherStats.query(mOpenHelper.getReadableDatabase(), projection,
+                        WeatherContract.StatsEntry.getLocationSettingFromUri(uri),
+                        WeatherContract.StatsEntry.getFromDateFromUri(uri),
+                        WeatherContract.StatsEntry.getToDateFromUri(uri));
             }
             // "weather"
             case WEATHER: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
+                return mOpenHelper.getReadableDatabase().query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
                         selection,
@@ -198,11 +495,10 @@ public class WeatherProvider extends ContentProvider {
                         null,
                         sortOrder
                 );
-                break;
             }
             // "location"
             case LOCATION: {
-                retCursor = mOpenHelper.getReadableDatabase().query(
+                return mOpenHelper.getReadableDatabase().query(
                         WeatherContract.LocationEntry.TABLE_NAME,
                         projection,
                         selection,
@@ -211,14 +507,89 @@ public class WeatherProvider extends ContentProvider {
                         null,
                         sortOrder
                 );
-                break;
+            }
+            // "location/near"
+            case LOCATION_NEAR: {
+                double radius = WeatherContract.LocationEntry.getRadiusFromUri(uri);
+                return NearbyLocations.query(mOpenHelper.getReadableDatabase(), projection,
+                        WeatherContract.LocationEntry.getLatitudeFromUri(uri),
+                        WeatherContract.LocationEntry.getLongitudeFromUri(uri),
+                        radius > 0 ? radius : NearbyLocations.DEFAULT_RADIUS_KM,
+                        WeatherContract.LocationEntry.getLimitFromUri(uri));
+            }
+            // "location/search"
+            case LOCATION_SEARCH: {
+                return LocationSearchIndex.search(mOpenHelper.getReadableDatabase(), projection,
+                        WeatherContract.LocationEntry.getSearchQueryFromUri(uri),
+                        WeatherContract.LocationEntry.getLimitFromUri(uri));
+            }
+            // "history/*"
+            case HISTORY_WITH_LOCATION: {
+                return getHistoryByLocationSetting(uri, projection, sortOrder);
+            }
+            // "history"
+            case HISTORY: {
+                return mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+            }
+            // "changes"
+            case CHANGES: {
+                return ChangeLog.query(mOpenHelper.getWritableDatabase(), projection,
+                        WeatherContract.ChangeEntry.getSinceFromUri(uri),
+                        WeatherContract.ChangeEntry.getConsumerFromUri(uri));
             }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
-        return retCursor;
+    }
+
+    /**
+     * @return the location ids of the given weather rows, or null if any row doesn't carry one.
+     */
+    private static Set<Long> getLocationIds(ContentValues[] values) {
+        Set<Long> locationIds = new HashSet<>();
+        for (ContentValues value : values) {
+            Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+            if (locationId == null) {
+                return null;
+            }
+            locationIds.add(locationId);
+        }
+        return locationIds;
+    }
+
+    /**
+     * Drops the cached results a write to the weather table may have changed.  When the
+     * location ids of the written rows are known only the results for those locations are
+     * dropped.
+     */
+    private void invalidateWeather(SQLiteDatabase db, Set<Long> locationIds) {
+        if (locationIds == null) {
+            mQueryCache.invalidateWeather();
+            return;
+        }
+
+        Set<String> locationSettings = new HashSet<>();
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " IN (" + TextUtils.join(",", locationIds) + ")",
+                null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        mQueryCache.invalidateWeather(locationSettings);
     }
 
     /*
@@ -228,12 +599,25 @@ public class WeatherProvider extends ContentProvider {
     public Uri insert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final long start = mMetrics.start();
         Uri returnUri;
 
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                Set<Long> locationIds = getLocationIds(new ContentValues[]{values});
+                long _id;
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    WeatherStats.rebase(db);
+                    ChangeLog.truncate(db);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                invalidateWeather(db, locationIds);
+                refreshTodayRecords();
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -241,7 +625,20 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                long _id;
+                db.beginTransaction();
+                try {
+                    _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    if (_id > 0) {
+                        LocationSearchIndex.index(db, _id,
+                                values.getAsString(WeatherContract.LocationEntry.COLUMN_CITY_NAME),
+                                values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                mQueryCache.invalidateAll();
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
@@ -252,6 +649,7 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         getContext().getContentResolver().notifyChange(uri, null);
+        mMetrics.record(ProviderMetrics.INSERT, match, start, 1);
         return returnUri;
     }
 
@@ -259,6 +657,7 @@ public class WeatherProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final long start = mMetrics.start();
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
@@ -266,10 +665,18 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                mQueryCache.invalidateWeather();
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                LocationSearchIndex.removeDeleted(db);
+                mQueryCache.invalidateAll();
+                break;
+            case HISTORY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
+                mQueryCache.invalidateAll();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -278,14 +685,17 @@ public class WeatherProvider extends ContentProvider {
         if (rowsDeleted != 0) {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+        mMetrics.record(ProviderMetrics.DELETE, match, start, rowsDeleted);
         return rowsDeleted;
     }
 
     private void normalizeDate(ContentValues values) {
-        // normalize the date value
+        // normalize the date value, and store the day number queries compare
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
             long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.normalizeDate(dateValue));
+            int julianDay = WeatherContract.getJulianDay(dateValue);
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE, WeatherContract.getStartOfJulianDay(julianDay));
+            values.put(WeatherContract.WeatherEntry.COLUMN_JULIAN_DAY, julianDay);
         }
     }
 
@@ -294,6 +704,7 @@ public class WeatherProvider extends ContentProvider {
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
+        final long start = mMetrics.start();
         int rowsUpdated;
 
         switch (match) {
@@ -301,10 +712,21 @@ public class WeatherProvider extends ContentProvider {
                 normalizeDate(values);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                mQueryCache.invalidateWeather();
                 break;
             case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                db.beginTransaction();
+                try {
+                    // Found before the update, which may change what the selection matches.
+                    long[] ids = LocationSearchIndex.findIds(db, selection, selectionArgs);
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    LocationSearchIndex.index(db, ids);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                mQueryCache.invalidateAll();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -312,36 +734,182 @@ public class WeatherProvider extends ContentProvider {
         if (rowsUpdated != 0) {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+        mMetrics.record(ProviderMetrics.UPDATE, match, start, rowsUpdated);
         return rowsUpdated;
     }
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
-                }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                return insertWeather(values);
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /*
+        Stores the days, replacing those already stored for the same location and date, and
+        tells everyone who watches the weather.  bulkInsert on weather, and WeatherRepository's
+        upsertForecast, both come here.
+     */
+    int insertWeather(ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final long start = mMetrics.start();
+        Set<Long> locationIds = getLocationIds(values);
+        db.beginTransaction();
+        int returnCount = 0;
+        try {
+            for (ContentValues value : values) {
+                normalizeDate(value);
+                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+            WeatherStats.rebase(db);
+            // Every sync logs a change per day; keep the log from outgrowing its bound when
+            // nobody reads it.
+            ChangeLog.truncate(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidateWeather(db, locationIds);
+        refreshTodayRecords();
+        getContext().getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        mMetrics.record(ProviderMetrics.BULK_INSERT, WEATHER, start, returnCount);
+        return returnCount;
+    }
+
+    /*
+        The days stored for a location from startDate on, oldest first, as weather/{location}
+        with a start date returns them but without a uri to build and match.  For callers in
+        this process; see WeatherRepository.
+     */
+    Cursor queryForecast(String locationSetting, long startDate, String[] projection) {
+        final long start = mMetrics.start();
+        Cursor cursor = getWeatherByLocationSetting(locationSetting,
+                WeatherContract.normalizeDate(startDate), 0, 0, projection, sDateOrder);
+        cursor.setNotificationUri(getContext().getContentResolver(),
+                WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+        mMetrics.record(ProviderMetrics.QUERY, WEATHER_WITH_LOCATION, start,
+                start != 0 ? cursor.getCount() : 0);
+        return cursor;
+    }
+
+    // What METHOD_TODAY returns, without the bundle.  For callers in this process.
+    TodayWeather getToday(String locationSetting) {
+        return getTodayRecord(locationSetting).mToday;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_COMPACT_HISTORY.equals(method)) {
+            long now = arg != null ? Long.parseLong(arg) : System.currentTimeMillis();
+            int compacted = WeatherHistoryCompactor.compact(mOpenHelper.getWritableDatabase(),
+                    now, WeatherHistoryCompactor.MAX_PERIODS_PER_CALL);
+            if (compacted > 0) {
+                mQueryCache.invalidateAll();
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.WeatherEntry.CONTENT_URI, null);
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.HistoryEntry.CONTENT_URI, null);
+            }
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_COMPACTED_PERIODS, compacted);
+            return result;
+        }
+        if (WeatherContract.METHOD_METRICS.equals(method)) {
+            return mMetrics.snapshot(getContext().getPackageManager());
+        }
+        if (WeatherContract.METHOD_MAINTAIN_DATABASE.equals(method)) {
+            // Only the file's layout and the planner statistics change, not the data, so no
+            // cached result goes stale.
+            return mMaintenance.run(mOpenHelper.getWritableDatabase());
+        }
+        if (WeatherContract.METHOD_TODAY.equals(method)) {
+            if (arg == null) {
+                throw new IllegalArgumentException("No location setting for " + method);
+            }
+            TodayWeather today = getTodayRecord(arg).mToday;
+            return today == null ? null : today.toBundle();
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /*
+        Today's weather for a location, as METHOD_TODAY returns it.  A record stays good until
+        the next write, which moves the query cache on to a new generation, or until the day
+        changes.
+     */
+    private static final class TodayRecord {
+        final long mGeneration;
+        final int mJulianDay;
+        // null when nothing is stored for the location from that day on
+        final TodayWeather mToday;
+
+        TodayRecord(long generation, int julianDay, TodayWeather today) {
+            mGeneration = generation;
+            mJulianDay = julianDay;
+            mToday = today;
+        }
+    }
+
+    private TodayRecord getTodayRecord(String locationSetting) {
+        int today = WeatherContract.getTodayJulianDay();
+        TodayRecord record = mTodayRecords.get(locationSetting);
+        if (record != null && record.mJulianDay == today
+                && record.mGeneration == mQueryCache.generation()) {
+            return record;
+        }
+        return readTodayRecord(locationSetting, today);
+    }
+
+    // Reads the first day from today on, out of the forecast table unless it is turned off;
+    // one seek on an index either way.
+    private TodayRecord readTodayRecord(String locationSetting, int julianDay) {
+        // Taken before reading, so a write that lands meanwhile leaves the record stale.
+        long generation = mQueryCache.generation();
+        TodayWeather today = null;
+        String[] forecastProjection = getForecastProjection(TodayWeather.PROJECTION, sDateOrder);
+        String[] selectionArgs = {locationSetting, Integer.toString(julianDay)};
+        Cursor cursor = forecastProjection != null
+                ? sForecastQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                        forecastProjection, sForecastSettingWithStartDateSelection, selectionArgs,
+                        null, null, sDateOrder, "1")
+                : sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                        TodayWeather.PROJECTION, sLocationSettingWithStartDateSelection,
+                        selectionArgs, null, null, sDateOrder, "1");
+        try {
+            if (cursor.moveToFirst()) {
+                today = TodayWeather.fromCursor(cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+        TodayRecord record = new TodayRecord(generation, julianDay, today);
+        mTodayRecords.put(locationSetting, record);
+        return record;
+    }
+
+    // Rebuilds the records callers have asked for, so the reads that follow a sync (widgets,
+    // Muzei, the notification and the watch) find them ready.
+    private void refreshTodayRecords() {
+        int today = WeatherContract.getTodayJulianDay();
+        for (String locationSetting : mTodayRecords.snapshot().keySet()) {
+            readTodayRecord(locationSetting, today);
+        }
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println(mQueryCache);
+        mMetrics.dump(writer, getContext().getPackageManager());
+        mMaintenance.dump(writer, mOpenHelper.getReadableDatabase());
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Bounded cache of query results for {@link WeatherProvider}.
+ *
+ * The same handful of queries (today's row for the preferred location, the 14 day list) are run
+ * by the list, the widgets, Muzei and the notification.  Results are kept as immutable
+ * {@link CursorSnapshot}s keyed by the matched uri code, the uri itself, the projection, the
+ * selection and the sort order.  Entries are tagged with the table and location they were read
+ * from so a write only drops the results it can actually have changed.
+ */
+class WeatherQueryCache {
+
+    // Entries are small (a couple of weeks of rows at most), so a count based bound is enough.
+    static final int DEFAULT_MAX_ENTRIES = 32;
+    // Larger results are not worth holding on to; they are served straight from SQLite.
+    static final int MAX_ROWS_PER_ENTRY = 64;
+
+    private final LruCache<Key, Entry> mCache;
+    private volatile boolean mEnabled = true;
+
+    // Bumped on every invalidation.  A query only stores its result if no write happened while
+    // it was running, so a stale result can never be put back after it was invalidated.
+    private long mGeneration;
+    private long mInvalidationCount;
+
+    WeatherQueryCache(int maxEntries) {
+        mCache = new LruCache<>(maxEntries);
+    }
+
+    static final class Key {
+        private final int mMatch;
+        private final String mUri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+        private final int mHash;
+
+        Key(int match, Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+            mMatch = match;
+            mUri = uri.toString();
+            mProjection = projection;
+            mSelection = selection;
+            mSelectionArgs = selectionArgs;
+            mSortOrder = sortOrder;
+            int hash = match;
+            hash = 31 * hash + mUri.hashCode();
+            hash = 31 * hash + Arrays.hashCode(projection);
+            hash = 31 * hash + (selection == null ? 0 : selection.hashCode());
+            hash = 31 * hash + Arrays.hashCode(selectionArgs);
+            hash = 31 * hash + (sortOrder == null ? 0 : sortOrder.hashCode());
+            mHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mHash == other.mHash
+                    && mMatch == other.mMatch
+                    && mUri.equals(other.mUri)
+                    && Arrays.equals(mProjection, other.mProjection)
+                    && (mSelection == null ? other.mSelection == null : mSelection.equals(other.mSelection))
+                    && Arrays.equals(mSelectionArgs, other.mSelectionArgs)
+                    && (mSortOrder == null ? other.mSortOrder == null : mSortOrder.equals(other.mSortOrder));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    private static final class Entry {
+        final String mTable;
+        // null when the query was not restricted to a single location
+        final String mLocationSetting;
+        final CursorSnapshot mSnapshot;
+
+        Entry(String table, String locationSetting, CursorSnapshot snapshot) {
+            mTable = table;
+            mLocationSetting = locationSetting;
+            mSnapshot = snapshot;
+        }
+    }
+
+    void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            invalidateAll();
+        }
+    }
+
+    boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @return the generation to hand back to {@link #put} once the query has run.
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * @return the snapshot for this key, or null on a miss.
+     */
+    CursorSnapshot get(Key key) {
+        if (!mEnabled) return null;
+        Entry entry = mCache.get(key);
+        return entry == null ? null : entry.mSnapshot;
+    }
+
+    /**
+     * Stores a result read from the given table.
+     *
+     * @param locationSetting the location the query was restricted to, or null.
+     * @param generation the value of {@link #generation()} taken before the query ran.
+     */
+    void put(Key key, String table, String locationSetting, CursorSnapshot snapshot,
+             long generation) {
+        if (!mEnabled) return;
+        synchronized (this) {
+            if (generation != mGeneration) return;
+            mCache.put(key, new Entry(table, locationSetting, snapshot));
+        }
+    }
+
+    /**
+     * Drops every entry read from the weather table for one of the given locations, as well as
+     * every weather entry that was not restricted to a location.
+     */
+    synchronized void invalidateWeather(Collection<String> locationSettings) {
+        mGeneration++;
+        mInvalidationCount++;
+        for (Map.Entry<Key, Entry> e : mCache.snapshot().entrySet()) {
+            Entry entry = e.getValue();
+            if (WeatherContract.WeatherEntry.TABLE_NAME.equals(entry.mTable)
+                    && (entry.mLocationSetting == null
+                        || locationSettings.contains(entry.mLocationSetting))) {
+                mCache.remove(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops every entry read from the weather table.
+     */
+    synchronized void invalidateWeather() {
+        mGeneration++;
+        mInvalidationCount++;
+        for (Map.Entry<Key, Entry> e : mCache.snapshot().entrySet()) {
+            if (WeatherContract.WeatherEntry.TABLE_NAME.equals(e.getValue().mTable)) {
+                mCache.remove(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * Drops everything.  Location rows are joined into the weather queries, so any change to
+     * the location table lands here.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mInvalidationCount++;
+        // Remove entries one by one rather than evictAll() so that invalidations are not
+        // reported as capacity evictions.
+        for (Key key : mCache.snapshot().keySet()) {
+            mCache.remove(key);
+        }
+    }
+
+    int hitCount() {
+        return mCache.hitCount();
+    }
+
+    int missCount() {
+        return mCache.missCount();
+    }
+
+    int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    synchronized long invalidationCount() {
+        return mInvalidationCount;
+    }
+
+    int size() {
+        return mCache.size();
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherQueryCache[enabled=" + mEnabled + ", size=" + size()
+                + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount()
+                + ", invalidations=" + invalidationCount() + "]";
+    }
+}
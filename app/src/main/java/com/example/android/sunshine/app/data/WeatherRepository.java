@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Typed access to the weather data for code running in the app's own process: the sync
+ * adapter, the widgets and Muzei.
+ *
+ * Going through the ContentResolver costs a provider lookup and reference count, a uri to build
+ * and match, and a cursor wrapper per call, even when the provider lives in the same process.
+ * The repository holds on to the local {@link WeatherProvider} and calls it directly.  The
+ * provider does the writing, so its caches stay valid and observers are notified exactly as they
+ * are for the ContentResolver calls.
+ *
+ * Activities, loaders and anything that may run in another process keep using the
+ * ContentResolver and the uris in {@link WeatherContract}.
+ */
+public final class WeatherRepository {
+
+    private static WeatherRepository sInstance;
+
+    private final ContentResolver mResolver;
+    // null before Honeycomb, where the calls go through mResolver.
+    private final WeatherProvider mProvider;
+
+    private WeatherRepository(Context context) {
+        mResolver = context.getContentResolver();
+        mProvider = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? getLocalProvider(mResolver) : null;
+    }
+
+    public static synchronized WeatherRepository get(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /*
+        The client is only needed to reach the provider.  A provider declared in the app's own
+        process is installed when the process starts and stays for its lifetime, so holding it
+        needs no client reference, and the client is released right away.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static WeatherProvider getLocalProvider(ContentResolver resolver) {
+        ContentProviderClient client =
+                resolver.acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        if (client == null) {
+            return null;
+        }
+        try {
+            ContentProvider provider = client.getLocalContentProvider();
+            return provider instanceof WeatherProvider ? (WeatherProvider) provider : null;
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * @return the weather for the first stored day from today on at the given location, or
+     * null if there is none.
+     */
+    public TodayWeather todayFor(String locationSetting) {
+        if (mProvider != null) {
+            return mProvider.getToday(locationSetting);
+        }
+        return TodayWeather.load(mResolver, locationSetting);
+    }
+
+    /**
+     * @return the days stored for the location from fromDate on, oldest first, with the given
+     * columns of weather/{location}.  The cursor is notified when the weather changes.
+     */
+    public Cursor forecast(String locationSetting, long fromDate, String[] projection) {
+        if (mProvider != null) {
+            return mProvider.queryForecast(locationSetting, fromDate, projection);
+        }
+        return mResolver.query(WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, fromDate), projection, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    /**
+     * Stores the days, replacing any already stored for the same location and date, as a
+     * bulkInsert on {@link WeatherEntry#CONTENT_URI} does.
+     *
+     * @return the number of days stored.
+     */
+    public int upsertForecast(ContentValues[] values) {
+        if (mProvider != null) {
+            return mProvider.insertWeather(values);
+        }
+        return mResolver.bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+}
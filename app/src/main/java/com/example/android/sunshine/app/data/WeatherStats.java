@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.StatsEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregate statistics over a range of days, computed inside SQLite.
+ *
+ * Each location has a summary row over its days from today on.  Triggers on the weather table
+ * add every row written to it and take out every row removed, like the forecast table's, so the
+ * row stays current without aggregating the location again, whoever writes.  A query whose range
+ * takes in all of those days is answered from the row, together with an aggregate over the few
+ * days before today when the range reaches back that far.  Any other range is aggregated over
+ * the (location_id, julian_day) index.  Days are compared by their Julian day, as the forecast
+ * queries compare them.
+ *
+ * The row keeps the sum of each averaged column rather than its average, and the average is
+ * worked out from the sum and the day count when the row is read.  Adding and taking out days
+ * then only adds and subtracts, instead of rescaling a running average by each write.
+ */
+final class WeatherStats {
+
+    // How a column is aggregated, which decides how a row is added to the summary and taken out.
+    private static final int COUNT = 0;
+    private static final int MIN = 1;
+    private static final int MAX = 2;
+    private static final int AVG = 3;
+    private static final int DAYS = 4;
+
+    private static final class Aggregate {
+        final int mKind;
+        // The weather column aggregated; for DAYS the weather id, counted between mFrom and mTo.
+        final String mColumn;
+        final int mFrom;
+        final int mTo;
+
+        Aggregate(int kind, String column, int from, int to) {
+            mKind = kind;
+            mColumn = column;
+            mFrom = from;
+            mTo = to;
+        }
+
+        // The aggregate over the weather rows.
+        String sql() {
+            switch (mKind) {
+                case COUNT:
+                    return "COUNT(" + WeatherEntry.TABLE_NAME + "." + mColumn + ")";
+                case MIN:
+                    return "MIN(" + mColumn + ")";
+                case MAX:
+                    return "MAX(" + mColumn + ")";
+                case AVG:
+                    return "AVG(" + mColumn + ")";
+                default:
+                    // COUNT rather than SUM so an empty range reports 0 days instead of null.
+                    return "COUNT(CASE WHEN " + WeatherEntry.TABLE_NAME + "." + mColumn +
+                            " BETWEEN " + mFrom + " AND " + mTo + " THEN 1 END)";
+            }
+        }
+
+        // What the summary row keeps of it, aggregated over the weather rows.
+        String summarySql() {
+            return mKind == AVG ? "SUM(" + mColumn + ")" : sql();
+        }
+
+        // The summary column once the row is added; row formats a weather column of the row.
+        String added(String column, String row) {
+            String value = String.format(row, mColumn);
+            switch (mKind) {
+                case COUNT:
+                    return column + " + 1";
+                case MIN:
+                    return "CASE WHEN " + column + " IS NULL OR " + value + " < " + column +
+                            " THEN " + value + " ELSE " + column + " END";
+                case MAX:
+                    return "CASE WHEN " + column + " IS NULL OR " + value + " > " + column +
+                            " THEN " + value + " ELSE " + column + " END";
+                case AVG:
+                    return "IFNULL(" + column + ", 0) + " + value;
+                default:
+                    return column + " + " + isCounted(value);
+            }
+        }
+
+        // The summary column once the row is taken out.  A minimum or maximum the row held is
+        // looked up again among the location's other days, which only that row's removal needs.
+        String removed(String column, String row, String others) {
+            String value = String.format(row, mColumn);
+            switch (mKind) {
+                case COUNT:
+                    return column + " - 1";
+                case MIN:
+                    return "CASE WHEN " + value + " > " + column + " THEN " + column +
+                            " ELSE (SELECT MIN(" + mColumn + ")" + others + ") END";
+                case MAX:
+                    return "CASE WHEN " + value + " < " + column + " THEN " + column +
+                            " ELSE (SELECT MAX(" + mColumn + ")" + others + ") END";
+                case AVG:
+                    // Null once no day is left, as the sum over no rows is.
+                    return "CASE WHEN " + StatsEntry.COLUMN_DAY_COUNT + " > 1 THEN " + column +
+                            " - " + value + " END";
+                default:
+                    return column + " - " + isCounted(value);
+            }
+        }
+
+        private String isCounted(String weatherId) {
+            return "(CASE WHEN " + weatherId + " BETWEEN " + mFrom + " AND " + mTo +
+                    " THEN 1 ELSE 0 END)";
+        }
+
+        // This column over both of two disjoint sets of days, from its value and the day count
+        // of each.
+        Object merge(Object a, long countA, Object b, long countB) {
+            if (a == null) return b;
+            if (b == null) return a;
+            switch (mKind) {
+                case COUNT:
+                case DAYS:
+                    return (Long) a + (Long) b;
+                case MIN:
+                    return Math.min((Double) a, (Double) b);
+                case MAX:
+                    return Math.max((Double) a, (Double) b);
+                default:
+                    return ((Double) a * countA + (Double) b * countB) / (countA + countB);
+            }
+        }
+    }
+
+    // Stats column -> how it is aggregated, in the order the columns are returned.
+    private static final Map<String, Aggregate> AGGREGATES = new LinkedHashMap<>();
+    // Averaged stats column -> the summary column keeping its sum.
+    private static final Map<String, String> SUMS = new HashMap<>();
+
+    static {
+        AGGREGATES.put(StatsEntry.COLUMN_DAY_COUNT, new Aggregate(COUNT, WeatherEntry._ID, 0, 0));
+        AGGREGATES.put(StatsEntry.COLUMN_MIN_TEMP, new Aggregate(MIN, WeatherEntry.COLUMN_MIN_TEMP, 0, 0));
+        AGGREGATES.put(StatsEntry.COLUMN_MAX_TEMP, new Aggregate(MAX, WeatherEntry.COLUMN_MAX_TEMP, 0, 0));
+        putAvg(WeatherEntry.COLUMN_MIN_TEMP, StatsEntry.COLUMN_AVG_MIN_TEMP,
+                StatsEntry.COLUMN_SUM_MIN_TEMP);
+        putAvg(WeatherEntry.COLUMN_MAX_TEMP, StatsEntry.COLUMN_AVG_MAX_TEMP,
+                StatsEntry.COLUMN_SUM_MAX_TEMP);
+        putMinMaxAvg(WeatherEntry.COLUMN_HUMIDITY, StatsEntry.COLUMN_MIN_HUMIDITY,
+                StatsEntry.COLUMN_MAX_HUMIDITY, StatsEntry.COLUMN_AVG_HUMIDITY,
+                StatsEntry.COLUMN_SUM_HUMIDITY);
+        putMinMaxAvg(WeatherEntry.COLUMN_PRESSURE, StatsEntry.COLUMN_MIN_PRESSURE,
+                StatsEntry.COLUMN_MAX_PRESSURE, StatsEntry.COLUMN_AVG_PRESSURE,
+                StatsEntry.COLUMN_SUM_PRESSURE);
+        putMinMaxAvg(WeatherEntry.COLUMN_WIND_SPEED, StatsEntry.COLUMN_MIN_WIND_SPEED,
+                StatsEntry.COLUMN_MAX_WIND_SPEED, StatsEntry.COLUMN_AVG_WIND_SPEED,
+                StatsEntry.COLUMN_SUM_WIND_SPEED);
+        putConditionDays(StatsEntry.COLUMN_THUNDERSTORM_DAYS, 200, 299);
+        putConditionDays(StatsEntry.COLUMN_DRIZZLE_DAYS, 300, 399);
+        putConditionDays(StatsEntry.COLUMN_RAIN_DAYS, 500, 599);
+        putConditionDays(StatsEntry.COLUMN_SNOW_DAYS, 600, 699);
+        putConditionDays(StatsEntry.COLUMN_ATMOSPHERE_DAYS, 700, 799);
+        putConditionDays(StatsEntry.COLUMN_CLEAR_DAYS, 800, 800);
+        putConditionDays(StatsEntry.COLUMN_CLOUDY_DAYS, 801, 804);
+        putConditionDays(StatsEntry.COLUMN_EXTREME_DAYS, 900, 999);
+    }
+
+    private static void putMinMaxAvg(String column, String min, String max, String avg,
+                                     String sum) {
+        AGGREGATES.put(min, new Aggregate(MIN, column, 0, 0));
+        AGGREGATES.put(max, new Aggregate(MAX, column, 0, 0));
+        putAvg(column, avg, sum);
+    }
+
+    private static void putAvg(String column, String avg, String sum) {
+        AGGREGATES.put(avg, new Aggregate(AVG, column, 0, 0));
+        SUMS.put(avg, sum);
+    }
+
+    // Where the summary table keeps the stats column.
+    private static String summaryColumn(String column) {
+        String sum = SUMS.get(column);
+        return sum != null ? sum : column;
+    }
+
+    private static void putConditionDays(String column, int from, int to) {
+        AGGREGATES.put(column, new Aggregate(DAYS, WeatherEntry.COLUMN_WEATHER_ID, from, to));
+    }
+
+    private static final String[] TRIGGERS = {
+            "stats_weather_replace", "stats_weather_insert", "stats_weather_update",
+            "stats_weather_delete"
+    };
+
+    // How the triggers read a column of the row they add or take out, for String.format.
+    private static final String NEW_ROW = "NEW.%s";
+    private static final String OLD_ROW = "OLD.%s";
+    // The row an insert replaces: SQLite fires no delete trigger for it.
+    private static final String REPLACED_ROW = "(SELECT %s FROM " + WeatherEntry.TABLE_NAME +
+            " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = NEW." + WeatherEntry.COLUMN_LOC_KEY +
+            " AND " + WeatherEntry.COLUMN_DATE + " = NEW." + WeatherEntry.COLUMN_DATE + ")";
+
+    private static final String[] COLUMNS = AGGREGATES.keySet().toArray(new String[AGGREGATES.size()]);
+    private static final String[] SUMMARY_COLUMNS = new String[COLUMNS.length + 2];
+    // Where each stats column is in COLUMNS.
+    private static final Map<String, Integer> INDEXES = new HashMap<>();
+
+    private static final SQLiteQueryBuilder sRangeQueryBuilder;
+    private static final SQLiteQueryBuilder sSummaryQueryBuilder;
+    private static final String SQL_REBUILD;
+    private static final String SQL_FILL_AT_VERSION_5;
+
+    static {
+        SUMMARY_COLUMNS[0] = StatsEntry.COLUMN_FIRST_DAY;
+        SUMMARY_COLUMNS[1] = StatsEntry.COLUMN_LAST_DAY;
+        System.arraycopy(COLUMNS, 0, SUMMARY_COLUMNS, 2, COLUMNS.length);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            INDEXES.put(COLUMNS[i], i);
+        }
+
+        Map<String, String> rangeProjection = new LinkedHashMap<>();
+        Map<String, String> summaryProjection = new LinkedHashMap<>();
+        for (String column : new String[]{StatsEntry.COLUMN_FIRST_DAY, StatsEntry.COLUMN_LAST_DAY}) {
+            summaryProjection.put(column, StatsEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        StringBuilder columns = new StringBuilder();
+        StringBuilder aggregates = new StringBuilder();
+        StringBuilder columnsAtVersion5 = new StringBuilder();
+        StringBuilder aggregatesAtVersion5 = new StringBuilder();
+        for (Map.Entry<String, Aggregate> e : AGGREGATES.entrySet()) {
+            String column = e.getKey();
+            Aggregate aggregate = e.getValue();
+            String stored = StatsEntry.TABLE_NAME + "." + summaryColumn(column);
+            rangeProjection.put(column, aggregate.sql() + " AS " + column);
+            // A sum over no days divides by a day count of 0, which SQLite makes null.
+            summaryProjection.put(column, (aggregate.mKind == AVG
+                    ? stored + " / " + StatsEntry.TABLE_NAME + "." + StatsEntry.COLUMN_DAY_COUNT
+                    : stored) + " AS " + column);
+            columns.append(", ").append(summaryColumn(column));
+            aggregates.append(", ").append(aggregate.summarySql());
+            columnsAtVersion5.append(", ").append(column);
+            aggregatesAtVersion5.append(", ").append(aggregate.sql());
+        }
+
+        //weather INNER JOIN location ON weather.location_id = location._id
+        sRangeQueryBuilder = new SQLiteQueryBuilder();
+        sRangeQueryBuilder.setTables(WeatherEntry.TABLE_NAME + " INNER JOIN " +
+                LocationEntry.TABLE_NAME + " ON " + WeatherEntry.TABLE_NAME + "." +
+                WeatherEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+                LocationEntry._ID);
+        sRangeQueryBuilder.setProjectionMap(rangeProjection);
+
+        //weather_summary INNER JOIN location ON weather_summary.location_id = location._id
+        sSummaryQueryBuilder = new SQLiteQueryBuilder();
+        sSummaryQueryBuilder.setTables(StatsEntry.TABLE_NAME + " INNER JOIN " +
+                LocationEntry.TABLE_NAME + " ON " + StatsEntry.TABLE_NAME + "." +
+                StatsEntry.COLUMN_LOC_KEY + " = " + LocationEntry.TABLE_NAME + "." +
+                LocationEntry._ID);
+        sSummaryQueryBuilder.setProjectionMap(summaryProjection);
+
+        // Every location summarized from the given day on, also those with no days there yet.
+        SQL_REBUILD = rebuildSql(StatsEntry.COLUMN_FIRST_DAY, StatsEntry.COLUMN_LAST_DAY,
+                WeatherEntry.COLUMN_JULIAN_DAY, columns, aggregates);
+        // The weather rows had no Julian day yet, so the summary kept the first and last date,
+        // and it kept the averages themselves.
+        SQL_FILL_AT_VERSION_5 = rebuildSql(StatsEntry.COLUMN_FIRST_DATE,
+                StatsEntry.COLUMN_LAST_DATE, WeatherEntry.COLUMN_DATE, columnsAtVersion5,
+                aggregatesAtVersion5);
+    }
+
+    private static String rebuildSql(String firstColumn, String lastColumn, String dayColumn,
+                                     CharSequence columns, CharSequence aggregates) {
+        return "INSERT INTO " + StatsEntry.TABLE_NAME + " (" +
+                StatsEntry.COLUMN_LOC_KEY + ", " + firstColumn + ", " + lastColumn + columns +
+                ") " +
+                "SELECT " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID + ", ?, " +
+                "IFNULL(MAX(" + dayColumn + "), ? - 1)" + aggregates +
+                " FROM " + LocationEntry.TABLE_NAME + " LEFT JOIN " + WeatherEntry.TABLE_NAME +
+                " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+                LocationEntry.TABLE_NAME + "." + LocationEntry._ID +
+                " AND " + dayColumn + " >= ?" +
+                " GROUP BY " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID;
+    }
+
+    //location.location_setting = ? AND julian_day >= ? AND julian_day <= ?
+    private static final String sRangeSelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+            WeatherEntry.COLUMN_JULIAN_DAY + " >= ? AND " +
+            WeatherEntry.COLUMN_JULIAN_DAY + " <= ?";
+
+    //location.location_setting = ?
+    private static final String sSummarySelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    // Queries answered from a summary row, for tests.
+    private static final AtomicInteger sSummaryReads = new AtomicInteger();
+
+    private WeatherStats() {
+    }
+
+    /**
+     * Statistics for one location over the days from fromDate to toDate, both inclusive.
+     * Always returns exactly one row; over an empty range the day count is 0 and the other
+     * aggregates are null.
+     */
+    static Cursor query(SQLiteDatabase db, String[] projection, String locationSetting,
+                        long fromDate, long toDate) {
+        // The uri leaves out the ends of an open range as 0 and Long.MAX_VALUE, which have no
+        // day of their own.
+        int fromDay = fromDate <= 0 ? 0 : WeatherContract.getJulianDay(fromDate);
+        int toDay = toDate == Long.MAX_VALUE
+                ? Integer.MAX_VALUE : WeatherContract.getJulianDay(toDate);
+
+        String[] columns = projection != null ? projection : COLUMNS;
+        if (INDEXES.keySet().containsAll(Arrays.asList(columns))) {
+            Object[] stats = querySummary(db, locationSetting, fromDay, toDay);
+            if (stats != null) {
+                sSummaryReads.incrementAndGet();
+                MatrixCursor cursor = new MatrixCursor(columns, 1);
+                MatrixCursor.RowBuilder row = cursor.newRow();
+                for (String column : columns) {
+                    row.add(stats[INDEXES.get(column)]);
+                }
+                return cursor;
+            }
+        }
+
+        return sRangeQueryBuilder.query(db, projection, sRangeSelection,
+                rangeArgs(locationSetting, fromDay, toDay), null, null, null);
+    }
+
+    private static String[] rangeArgs(String locationSetting, int fromDay, int toDay) {
+        return new String[]{locationSetting, Integer.toString(fromDay), Integer.toString(toDay)};
+    }
+
+    /*
+        Every stats column over the range from the location's summary row, or null if the range
+        doesn't take in all the days the row covers.  The days stored before those are
+        aggregated over the index and merged in.
+     */
+    private static Object[] querySummary(SQLiteDatabase db, String locationSetting,
+                                         int fromDay, int toDay) {
+        Cursor summary = sSummaryQueryBuilder.query(db, SUMMARY_COLUMNS, sSummarySelection,
+                new String[]{locationSetting}, null, null, null);
+        try {
+            if (!summary.moveToFirst()) {
+                return null;
+            }
+            int firstDay = summary.getInt(0);
+            int lastDay = summary.getInt(1);
+            if (fromDay > firstDay || toDay < lastDay) {
+                return null;
+            }
+            Object[] stats = read(summary, 2);
+            if (fromDay < firstDay) {
+                Cursor before = sRangeQueryBuilder.query(db, COLUMNS, sRangeSelection,
+                        rangeArgs(locationSetting, fromDay, firstDay - 1), null, null, null);
+                try {
+                    before.moveToFirst();
+                    stats = merge(stats, read(before, 0));
+                } finally {
+                    before.close();
+                }
+            }
+            return stats;
+        } finally {
+            summary.close();
+        }
+    }
+
+    private static Object[] read(Cursor cursor, int offset) {
+        Object[] stats = new Object[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (cursor.isNull(offset + i)) {
+                continue;
+            }
+            int kind = AGGREGATES.get(COLUMNS[i]).mKind;
+            stats[i] = kind == COUNT || kind == DAYS
+                    ? (Object) cursor.getLong(offset + i) : (Object) cursor.getDouble(offset + i);
+        }
+        return stats;
+    }
+
+    private static Object[] merge(Object[] a, Object[] b) {
+        int count = INDEXES.get(StatsEntry.COLUMN_DAY_COUNT);
+        long countA = (Long) a[count];
+        long countB = (Long) b[count];
+        Object[] stats = new Object[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            stats[i] = AGGREGATES.get(COLUMNS[i]).merge(a[i], countA, b[i], countB);
+        }
+        return stats;
+    }
+
+    static int getSummaryReads() {
+        return sSummaryReads.get();
+    }
+
+    /**
+     * Creates the triggers that keep the summary rows in step with the weather table.
+     */
+    static void createTriggers(SQLiteDatabase db) {
+        // The replaced row goes first; the new one is added once it is stored.
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[0] + " BEFORE INSERT ON " +
+                WeatherEntry.TABLE_NAME + " WHEN EXISTS (SELECT 1 FROM " +
+                WeatherEntry.TABLE_NAME + " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = NEW." +
+                WeatherEntry.COLUMN_LOC_KEY + " AND " + WeatherEntry.COLUMN_DATE + " = NEW." +
+                WeatherEntry.COLUMN_DATE + ") BEGIN " +
+                removeRow(REPLACED_ROW, " AND " + WeatherEntry.COLUMN_DATE + " <> NEW." +
+                        WeatherEntry.COLUMN_DATE) + " END;");
+        // A location added since the last rebuild gets a summary from its first row's day on,
+        // unless days after it are already stored, which the summary would miss; rebase() takes
+        // those in.  Rows without a Julian day are added once it is filled in.
+        StringBuilder none = new StringBuilder();
+        StringBuilder zeros = new StringBuilder();
+        for (Map.Entry<String, Aggregate> e : AGGREGATES.entrySet()) {
+            int kind = e.getValue().mKind;
+            if (kind == COUNT || kind == DAYS) {
+                none.append(", ").append(e.getKey());
+                zeros.append(", 0");
+            }
+        }
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[1] + " AFTER INSERT ON " +
+                WeatherEntry.TABLE_NAME + " WHEN NEW." + WeatherEntry.COLUMN_JULIAN_DAY +
+                " IS NOT NULL BEGIN " +
+                "INSERT OR IGNORE INTO " + StatsEntry.TABLE_NAME + " (" +
+                StatsEntry.COLUMN_LOC_KEY + ", " + StatsEntry.COLUMN_FIRST_DAY + ", " +
+                StatsEntry.COLUMN_LAST_DAY + none + ")" +
+                " SELECT NEW." + WeatherEntry.COLUMN_LOC_KEY + ", NEW." +
+                WeatherEntry.COLUMN_JULIAN_DAY + ", NEW." + WeatherEntry.COLUMN_JULIAN_DAY +
+                " - 1" + zeros + " WHERE NOT EXISTS (SELECT 1 FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = NEW." + WeatherEntry.COLUMN_LOC_KEY +
+                " AND " + WeatherEntry.COLUMN_JULIAN_DAY + " >= NEW." +
+                WeatherEntry.COLUMN_JULIAN_DAY + " AND " + WeatherEntry._ID + " <> NEW." +
+                WeatherEntry._ID + "); " +
+                addRow(NEW_ROW) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[2] + " AFTER UPDATE ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " +
+                removeRow(OLD_ROW, "") + " " + addRow(NEW_ROW) + " END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGERS[3] + " AFTER DELETE ON " +
+                WeatherEntry.TABLE_NAME + " BEGIN " + removeRow(OLD_ROW, "") + " END;");
+    }
+
+    /**
+     * Drops the triggers, so that {@link #createTriggers} can create them again after the
+     * columns they read have changed.
+     */
+    static void dropTriggers(SQLiteDatabase db) {
+        for (String trigger : TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+        }
+    }
+
+    // Adds the row to the summary of its location, if the summary covers its day.
+    private static String addRow(String row) {
+        String day = String.format(row, WeatherEntry.COLUMN_JULIAN_DAY);
+        StringBuilder set = new StringBuilder(StatsEntry.COLUMN_LAST_DAY)
+                .append(" = MAX(").append(StatsEntry.COLUMN_LAST_DAY).append(", ")
+                .append(day).append(")");
+        for (Map.Entry<String, Aggregate> e : AGGREGATES.entrySet()) {
+            String column = summaryColumn(e.getKey());
+            set.append(", ").append(column).append(" = ")
+                    .append(e.getValue().added(column, row));
+        }
+        return "UPDATE " + StatsEntry.TABLE_NAME + " SET " + set + coveredBy(row) + ";";
+    }
+
+    // Takes the row out of the summary of its location, if the summary covers its day.  The
+    // summary's other days are those of its location and range that pass exclude.
+    private static String removeRow(String row, String exclude) {
+        String day = String.format(row, WeatherEntry.COLUMN_JULIAN_DAY);
+        String others = " FROM " + WeatherEntry.TABLE_NAME +
+                " WHERE " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " = " +
+                StatsEntry.TABLE_NAME + "." + StatsEntry.COLUMN_LOC_KEY +
+                " AND " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_JULIAN_DAY + " >= " +
+                StatsEntry.TABLE_NAME + "." + StatsEntry.COLUMN_FIRST_DAY + exclude;
+        StringBuilder set = new StringBuilder(StatsEntry.COLUMN_LAST_DAY)
+                .append(" = CASE WHEN ").append(day).append(" < ")
+                .append(StatsEntry.COLUMN_LAST_DAY).append(" THEN ")
+                .append(StatsEntry.COLUMN_LAST_DAY).append(" ELSE IFNULL((SELECT MAX(")
+                .append(WeatherEntry.COLUMN_JULIAN_DAY).append(")").append(others)
+                .append("), ").append(StatsEntry.COLUMN_FIRST_DAY).append(" - 1) END");
+        for (Map.Entry<String, Aggregate> e : AGGREGATES.entrySet()) {
+            String column = summaryColumn(e.getKey());
+            set.append(", ").append(column).append(" = ")
+                    .append(e.getValue().removed(column, row, others));
+        }
+        return "UPDATE " + StatsEntry.TABLE_NAME + " SET " + set + coveredBy(row) + ";";
+    }
+
+    private static String coveredBy(String row) {
+        return " WHERE " + StatsEntry.COLUMN_LOC_KEY + " = " +
+                String.format(row, WeatherEntry.COLUMN_LOC_KEY) + " AND " +
+                StatsEntry.COLUMN_FIRST_DAY + " <= " +
+                String.format(row, WeatherEntry.COLUMN_JULIAN_DAY);
+    }
+
+    /**
+     * Starts the summary rows at today once the day has turned, so they keep covering the days
+     * the forecast is asked for.  Cheap when they already do; best called inside the
+     * transaction that wrote the weather.
+     */
+    static void rebase(SQLiteDatabase db) {
+        int today = WeatherContract.getJulianDay(System.currentTimeMillis());
+        if (DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + StatsEntry.TABLE_NAME +
+                " WHERE " + StatsEntry.COLUMN_FIRST_DAY + " <> ?",
+                new String[]{Integer.toString(today)}) > 0) {
+            rebuild(db, today);
+        }
+    }
+
+    /**
+     * Recomputes every summary row from the given day on, for writes the triggers can't follow
+     * and for the migration that creates them.
+     */
+    static void rebuild(SQLiteDatabase db, int firstDay) {
+        db.beginTransaction();
+        try {
+            db.delete(StatsEntry.TABLE_NAME, null, null);
+            db.execSQL(SQL_REBUILD, new Object[]{firstDay, firstDay, firstDay});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Fills the summary table as version 5 of the database had it, from today's date on.  For
+     * the migration to that version only.
+     */
+    static void fillAtVersion5(SQLiteDatabase db) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        db.execSQL(SQL_FILL_AT_VERSION_5, new Object[]{today, today, today});
+    }
+}
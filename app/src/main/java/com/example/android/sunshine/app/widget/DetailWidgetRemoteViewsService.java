@@ -7,18 +7,17 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.ArtCache;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ColumnarCursor;
 import com.example.android.sunshine.app.data.WeatherContract;
-
-import java.util.concurrent.ExecutionException;
+import com.example.android.sunshine.app.data.WeatherRepository;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -41,6 +40,15 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_DESC = 3;
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
+    // the type of each column of the projection, for the copy the rows are read from
+    private static final int[] FORECAST_COLUMN_TYPES = {
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_LONG,
+            ColumnarCursor.TYPE_STRING,
+            ColumnarCursor.TYPE_DOUBLE,
+            ColumnarCursor.TYPE_DOUBLE
+    };
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
@@ -63,14 +71,19 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
-                        FORECAST_COLUMNS,
-                        null,
-                        null,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                Cursor result = WeatherRepository.get(DetailWidgetRemoteViewsService.this)
+                        .forecast(location, System.currentTimeMillis(), FORECAST_COLUMNS);
                 Binder.restoreCallingIdentity(identityToken);
+                // getViewAt() runs once per row on the host's binder threads; copy the rows into
+                // primitive columns now and let the cursor window go.
+                data = null;
+                if (result != null) {
+                    try {
+                        data = ColumnarCursor.copyOf(result, FORECAST_COLUMN_TYPES);
+                    } finally {
+                        result.close();
+                    }
+                }
             }
 
             @Override
@@ -96,19 +109,16 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+                SettingsSnapshot settings =
+                        SettingsSnapshot.get(DetailWidgetRemoteViewsService.this);
                 Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
+                if ( !settings.usingLocalGraphics() ) {
                     String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
                             DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
+                    // At the size the sync decoded it at, rather than the original; on failure
+                    // it falls back to the icon below.
+                    weatherArtImage = ArtCache.getBitmap(DetailWidgetRemoteViewsService.this,
+                            ArtCache.SURFACE_WIDGET, weatherArtResourceUrl);
                 }
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
@@ -134,8 +144,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                String locationSetting = settings.getLocation();
                 Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
                         locationSetting,
                         dateInMillis);
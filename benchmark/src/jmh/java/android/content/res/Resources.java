@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.content.res;
+
+import java.util.Map;
+
+/**
+ * Stands in for the platform's Resources, which needs the native asset manager, in the JVM
+ * benchmarks.  Serves the app's strings and a configuration, and nothing else.
+ */
+public class Resources {
+
+    private final Map<Integer, String> mStrings;
+    private final Configuration mConfiguration;
+
+    public Resources(Map<Integer, String> strings, Configuration configuration) {
+        mStrings = strings;
+        mConfiguration = configuration;
+    }
+
+    public String getString(int id) throws NotFoundException {
+        String string = mStrings.get(id);
+        if (string == null) {
+            throw new NotFoundException("String resource ID #0x" + Integer.toHexString(id));
+        }
+        return string;
+    }
+
+    public String getString(int id, Object... formatArgs) throws NotFoundException {
+        return String.format(mConfiguration.locale, getString(id), formatArgs);
+    }
+
+    public Configuration getConfiguration() {
+        return mConfiguration;
+    }
+
+    public static class NotFoundException extends RuntimeException {
+        public NotFoundException() {
+        }
+
+        public NotFoundException(String name) {
+            super(name);
+        }
+    }
+}
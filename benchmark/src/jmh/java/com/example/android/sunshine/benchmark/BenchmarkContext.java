@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import com.example.android.sunshine.app.R;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * A Context for the JVM benchmarks: the app's default strings in the default locale, and
+ * preferences held in memory.  Enough for the settings, conditions and formatting code, which
+ * only read strings and preferences.
+ */
+public class BenchmarkContext extends ContextWrapper {
+
+    private static final String PACKAGE_NAME = "com.example.android.sunshine.app";
+
+    private static BenchmarkContext sInstance;
+
+    private final Resources mResources;
+    private final Map<String, MemoryPreferences> mPreferences = new HashMap<>();
+
+    /**
+     * The app's code keeps the first Context it is given, as it does the application context
+     * on a device, so every benchmark in a JVM shares one.
+     */
+    public static synchronized BenchmarkContext get() {
+        if (sInstance == null) {
+            sInstance = new BenchmarkContext();
+        }
+        return sInstance;
+    }
+
+    private BenchmarkContext() {
+        super(null);
+        Configuration configuration = new Configuration();
+        configuration.locale = Locale.getDefault();
+        mResources = new Resources(loadStrings(), configuration);
+    }
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+
+    @Override
+    public BenchmarkContext getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        synchronized (mPreferences) {
+            MemoryPreferences prefs = mPreferences.get(name);
+            if (prefs == null) {
+                prefs = new MemoryPreferences();
+                mPreferences.put(name, prefs);
+            }
+            return prefs;
+        }
+    }
+
+    // The app's strings.xml, keyed by the ids in R.
+    private static Map<Integer, String> loadStrings() {
+        Map<String, String> byName = new HashMap<>();
+        InputStream in = BenchmarkContext.class.getResourceAsStream("/strings.xml");
+        if (in == null) {
+            throw new IllegalStateException("strings.xml isn't on the classpath");
+        }
+        try {
+            try {
+                NodeList strings = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                        .parse(in).getElementsByTagName("string");
+                for (int i = 0; i < strings.getLength(); i++) {
+                    Element string = (Element) strings.item(i);
+                    byName.put(string.getAttribute("name"), unescape(string.getTextContent()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Couldn't read strings.xml", e);
+        }
+
+        Map<Integer, String> byId = new HashMap<>();
+        for (Field field : R.string.class.getFields()) {
+            String string = byName.get(field.getName());
+            if (string == null) {
+                // From a library, which nothing benchmarked uses.
+                continue;
+            }
+            try {
+                byId.put(field.getInt(null), string);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return byId;
+    }
+
+    // What aapt does to a string's text: whitespace collapsed outside quotes, the quotes
+    // dropped, and backslash escapes replaced.
+    static String unescape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean quoted = false;
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                switch (next) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 < text.length()) {
+                            sb.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                            i += 4;
+                        }
+                        break;
+                    default:
+                        sb.append(next);
+                }
+                space = false;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                space = false;
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * SharedPreferences in memory, which tell their listeners of each change on the thread
+     * that commits it.
+     */
+    private static final class MemoryPreferences implements SharedPreferences {
+        private final Map<String, Object> mValues = new HashMap<>();
+        private final List<OnSharedPreferenceChangeListener> mListeners = new ArrayList<>();
+
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<>(mValues);
+        }
+
+        private synchronized Object get(String key, Object defValue) {
+            Object value = mValues.get(key);
+            return value != null ? value : defValue;
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return (String) get(key, defValue);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return (Set<String>) get(key, defValues);
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return (Integer) get(key, defValue);
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return (Long) get(key, defValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return (Float) get(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return (Boolean) get(key, defValue);
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new MemoryEditor();
+        }
+
+        @Override
+        public synchronized void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mListeners.add(listener);
+        }
+
+        @Override
+        public synchronized void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mListeners.remove(listener);
+        }
+
+        private final class MemoryEditor implements Editor {
+            // A null value removes the key.
+            private final Map<String, Object> mChanges = new HashMap<>();
+            private boolean mClear;
+
+            private Editor put(String key, Object value) {
+                mChanges.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putString(String key, String value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                return put(key, values == null ? null : new HashSet<>(values));
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor remove(String key) {
+                return put(key, null);
+            }
+
+            @Override
+            public Editor clear() {
+                mClear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                List<OnSharedPreferenceChangeListener> listeners;
+                synchronized (MemoryPreferences.this) {
+                    if (mClear) {
+                        mValues.clear();
+                    }
+                    for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                        if (change.getValue() == null) {
+                            mValues.remove(change.getKey());
+                        } else {
+                            mValues.put(change.getKey(), change.getValue());
+                        }
+                    }
+                    listeners = new ArrayList<>(mListeners);
+                }
+                for (String key : mChanges.keySet()) {
+                    for (OnSharedPreferenceChangeListener listener : listeners) {
+                        listener.onSharedPreferenceChanged(MemoryPreferences.this, key);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.app.WeatherConditions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The condition lookups of a list, widget or notification row.
+ */
+@State(Scope.Thread)
+public class ConditionsBenchmark {
+
+    // A mixed fortnight, including a code with no answer.
+    private static final int[] CODES = {
+            800, 801, 500, 501, 211, 300, 804, 600, 701, 781, 802, 502, 615, 999
+    };
+
+    private BenchmarkContext mContext;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mContext = BenchmarkContext.get();
+    }
+
+    private int nextCode() {
+        mNext = (mNext + 1) % CODES.length;
+        return CODES[mNext];
+    }
+
+    @Benchmark
+    public int iconResource() {
+        return WeatherConditions.getIconResource(nextCode());
+    }
+
+    @Benchmark
+    public int artResource() {
+        return WeatherConditions.getArtResource(nextCode());
+    }
+
+    @Benchmark
+    public String string() {
+        return WeatherConditions.getString(mContext, nextCode());
+    }
+
+    @Benchmark
+    public String artUrl() {
+        return WeatherConditions.getArtUrl(mContext, nextCode());
+    }
+}
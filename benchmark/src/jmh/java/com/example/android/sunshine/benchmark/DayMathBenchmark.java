@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The julian day arithmetic every row, query and sync goes through.
+ */
+@State(Scope.Thread)
+public class DayMathBenchmark {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private long[] mDates;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        // Two weeks of times of day, as a sync and a list see them.
+        mDates = new long[14];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < mDates.length; i++) {
+            mDates[i] = now + i * DAY_MILLIS + i * 3571000L;
+        }
+    }
+
+    private long nextDate() {
+        mNext = (mNext + 1) % mDates.length;
+        return mDates[mNext];
+    }
+
+    @Benchmark
+    public int julianDay() {
+        return WeatherContract.getJulianDay(nextDate());
+    }
+
+    @Benchmark
+    public long normalizeDate() {
+        return WeatherContract.normalizeDate(nextDate());
+    }
+
+    @Benchmark
+    public int todayJulianDay() {
+        return WeatherContract.getTodayJulianDay();
+    }
+
+    @Benchmark
+    public long startOfJulianDay() {
+        return WeatherContract.getStartOfJulianDay(WeatherContract.getJulianDay(nextDate()));
+    }
+}
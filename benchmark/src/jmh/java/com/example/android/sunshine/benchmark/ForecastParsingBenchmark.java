@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ForecastResponse;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parsing a sync's response, a recorded 14 day forecast, into the rows the provider stores.
+ */
+@State(Scope.Thread)
+public class ForecastParsingBenchmark {
+
+    private String mForecastJson;
+    private int mToday;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        InputStream in = ForecastParsingBenchmark.class.getResourceAsStream(
+                "/forecast_14_days.json");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            mForecastJson = out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+        mToday = WeatherContract.getTodayJulianDay();
+
+        ContentValues[] days = ForecastResponse.parse(mForecastJson, mToday).getDays();
+        if (days.length != 14) {
+            throw new IllegalStateException("Expected 14 days, parsed " + days.length);
+        }
+    }
+
+    @Benchmark
+    public ContentValues[] parse() throws JSONException {
+        return ForecastResponse.parse(mForecastJson, mToday).getDays();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.app.DayFormatter;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
+import com.example.android.sunshine.app.UnitsFormatter;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The temperature, wind and date strings of a row, and String.format, which is what the
+ * temperatures and winds cost before they were kept.
+ */
+@State(Scope.Thread)
+public class FormattingBenchmark {
+
+    private static final int ROWS = 14;
+
+    private BenchmarkContext mContext;
+    private double[] mTemperatures;
+    private float[] mWindSpeeds;
+    private float[] mWindDegrees;
+    private long[] mDates;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mContext = BenchmarkContext.get();
+        mTemperatures = new double[ROWS];
+        mWindSpeeds = new float[ROWS];
+        mWindDegrees = new float[ROWS];
+        mDates = new long[ROWS];
+        int today = WeatherContract.getTodayJulianDay();
+        for (int i = 0; i < ROWS; i++) {
+            mTemperatures[i] = -10.3 + 3.7 * i;
+            mWindSpeeds[i] = 1.2f + 2.9f * i;
+            mWindDegrees[i] = 27.5f * i;
+            mDates[i] = WeatherContract.getStartOfJulianDay(today + i);
+        }
+    }
+
+    private int nextRow() {
+        mNext = (mNext + 1) % ROWS;
+        return mNext;
+    }
+
+    @Benchmark
+    public String temperature() {
+        return UnitsFormatter.formatTemperature(mContext, mTemperatures[nextRow()]);
+    }
+
+    @Benchmark
+    public String temperatureFormat() {
+        // What Utility.formatTemperature did for each one.
+        double temperature = mTemperatures[nextRow()];
+        if (!SettingsSnapshot.get(mContext).isMetric()) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(mContext.getString(R.string.format_temperature), temperature);
+    }
+
+    @Benchmark
+    public String wind() {
+        int row = nextRow();
+        return UnitsFormatter.formatWind(mContext, mWindSpeeds[row], mWindDegrees[row]);
+    }
+
+    @Benchmark
+    public String dayName() {
+        return DayFormatter.format(mContext, mDates[nextRow()], DayFormatter.STYLE_DAY_NAME);
+    }
+
+    @Benchmark
+    public String friendlyDate() {
+        return DayFormatter.format(mContext, mDates[nextRow()], DayFormatter.STYLE_FRIENDLY);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+
+/**
+ * The provider's write and read paths over Robolectric's SQLite: a sync's 14 days stored in one
+ * bulk insert, one day stored on its own, and the forecast list read back with the query cache
+ * on and off.  In this package for the cache switch; run by ProviderBenchmarks.
+ */
+@State(Scope.Thread)
+public class WeatherProviderBenchmark {
+
+    private static final String LOCATION_SETTING = "94043";
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 14;
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    private WeatherProvider mProvider;
+    private ContentValues[] mDays;
+    private ContentValues mDay;
+    private Uri mListUri;
+
+    @Setup
+    public void setUp() {
+        mProvider = new WeatherProvider();
+        mProvider.attachInfo(RuntimeEnvironment.application, null);
+        mProvider.getQueryCache().setEnabled(cacheEnabled);
+        mProvider.delete(WeatherEntry.CONTENT_URI, null, null);
+        mProvider.delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 37.386);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -122.084);
+        long locationId = ContentUris.parseId(
+                mProvider.insert(LocationEntry.CONTENT_URI, location));
+
+        // The same two weeks every time, so each insert replaces the rows the last one wrote.
+        long today = System.currentTimeMillis();
+        mDays = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+            day.put(WeatherEntry.COLUMN_DATE, today + i * DAY_MILLIS);
+            day.put(WeatherEntry.COLUMN_DEGREES, 270.0);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 60.0 + i);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1013.0 - i);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 10.0 + i);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, i % 7 == 0 ? "Rain" : "Clear");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, i % 7 == 0 ? 500 : 800);
+            mDays[i] = day;
+        }
+        mDay = mDays[0];
+        mListUri = WeatherEntry.buildWeatherLocationWithStartDate(LOCATION_SETTING, today);
+
+        mProvider.bulkInsert(WeatherEntry.CONTENT_URI, mDays);
+    }
+
+    // Robolectric keeps every change the provider notifies; don't let them pile up.
+    @TearDown(Level.Iteration)
+    public void clearNotifications() {
+        Shadows.shadowOf(RuntimeEnvironment.application.getContentResolver())
+                .getNotifiedUris().clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Benchmark
+    public int bulkInsertSync() {
+        return mProvider.bulkInsert(WeatherEntry.CONTENT_URI, mDays);
+    }
+
+    @Benchmark
+    public Uri insertDay() {
+        return mProvider.insert(WeatherEntry.CONTENT_URI, mDay);
+    }
+
+    @Benchmark
+    public int queryForecastList() {
+        Cursor cursor = mProvider.query(mListUri, null, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import android.os.Build;
+
+import com.example.android.sunshine.app.data.WeatherProviderBenchmark;
+
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the provider benchmarks inside Robolectric's sandbox.  JMH can't fork into it, so the
+ * sandbox is set up the only way Robolectric offers, as a test, and JMH runs in that test's
+ * class loader with forks(0).
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class ProviderBenchmarks {
+
+    // The sandbox loads its own copy of this class, so the results file comes in as a system
+    // property rather than a static field.
+    private static final String RESULTS_FILE_PROPERTY = "benchmark.results";
+
+    public static void main(String[] args) {
+        Result result = JUnitCore.runClasses(ProviderBenchmarks.class);
+        for (Failure failure : result.getFailures()) {
+            System.err.println(failure.getTrace());
+        }
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+
+    @Test
+    public void run() throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(WeatherProviderBenchmark.class.getName())
+                .forks(0)
+                .mode(Mode.AverageTime)
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .resultFormat(ResultFormatType.JSON)
+                .result(System.getProperty(RESULTS_FILE_PROPERTY))
+                .build();
+        new Runner(options).run();
+    }
+}